@@ -0,0 +1,149 @@
+package me.relex.widget.waveform;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * 直接读取 {@link WaveFormCodec} 编码数据的 {@link WaveFormInfo}, 按块解码
+ *
+ * 只解码被访问到的块, 每个线程各自保留最近使用的几块, 块的数组在该线程内复用,
+ * 绘制可见区域时不需要解码整个文件, 也不需要加锁。
+ * 降采样层级从第 1 层起在堆中生成, 生成时依次解码全部块; 不希望占用堆时用
+ * {@link WaveFormCacheFile#mapWithLevels} 把各层写入文件后映射读回。
+ */
+public class EncodedWaveFormInfo extends WaveFormInfo {
+
+    // 每个线程保留的已解码块数, 至少能覆盖一屏或一个后台绘制的块
+    private static final int CACHED_CHUNKS = 4;
+
+    private final ByteBuffer mBuffer;
+    private final int mDataOffset;
+    private final int mChunkPixels;
+    private final int mChunkValues;
+    // 缓存槽位的数组大小, 不超过波形长度
+    private final int mSlotValues;
+    private final int mChunkCount;
+    private final boolean mIs8Bit;
+
+    // 各线程的已解码块; ChunkCache 不引用本实例, 本实例不再使用后各线程中的缓存随之回收
+    private final ThreadLocal<ChunkCache> mChunkCaches = new ThreadLocal<ChunkCache>() {
+        @Override protected ChunkCache initialValue() {
+            return new ChunkCache(Thread.currentThread(), getChannels() * 2);
+        }
+    };
+    // 最近一次读取的线程的缓存, 同一线程连续读取时不需要查找 ThreadLocal
+    private volatile ChunkCache mLastCache;
+
+    // 一个线程的已解码块, 只由 thread 访问
+    private static final class ChunkCache {
+        final Thread thread;
+        // 各槽位的块序号和解码结果, 依次轮流替换, 数组大小固定为 mSlotValues
+        final int[] indices = new int[CACHED_CHUNKS];
+        final short[][] values = new short[CACHED_CHUNKS][];
+        final int[] previous;
+        int lastSlot;
+        int nextSlot;
+
+        ChunkCache(Thread thread, int streams) {
+            this.thread = thread;
+            previous = new int[streams];
+            Arrays.fill(indices, -1);
+        }
+    }
+
+    // buffer 为完整的编码数据, 不会被复制
+    public EncodedWaveFormInfo(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (mBuffer.capacity() < WaveFormCodec.HEADER_SIZE) {
+            throw new EOFException();
+        }
+        mChunkCount = WaveFormCodec.parseHeader(mBuffer, this);
+        mChunkPixels = mBuffer.getInt(28);
+        long chunkValues = (long) mChunkPixels * getChannels() * 2;
+        if (chunkValues > Integer.MAX_VALUE) {
+            throw new IOException("Invalid encoded waveform header");
+        }
+        mChunkValues = (int) chunkValues;
+        mSlotValues = Math.min(mChunkPixels, getLength()) * getChannels() * 2;
+        mIs8Bit = getBits() == 8;
+        long dataOffset = WaveFormCodec.HEADER_SIZE + (mChunkCount + 1) * 4L;
+        if (dataOffset > mBuffer.capacity()) {
+            throw new EOFException();
+        }
+        mDataOffset = (int) dataOffset;
+        // 块偏移必须单调不减且都在数据范围内, 否则读取时会越界或得到负的块长度
+        int dataSize = mBuffer.capacity() - mDataOffset;
+        int previous = 0;
+        for (int chunk = 0; chunk <= mChunkCount; chunk++) {
+            int offset = chunkOffset(chunk);
+            if (offset < previous) {
+                throw new IOException("Invalid chunk index");
+            }
+            if (offset > dataSize) {
+                throw new EOFException();
+            }
+            previous = offset;
+        }
+    }
+
+    private int chunkOffset(int chunk) {
+        return mBuffer.getInt(WaveFormCodec.HEADER_SIZE + chunk * 4);
+    }
+
+    @Override public boolean hasPeaks() {
+        return true;
+    }
+
+    @Override protected int getPeak(int offset) {
+        ChunkCache cache = mLastCache;
+        if (cache == null || cache.thread != Thread.currentThread()) {
+            cache = mChunkCaches.get();
+            mLastCache = cache;
+        }
+        int index = offset / mChunkValues;
+        return chunk(cache, index)[offset - index * mChunkValues];
+    }
+
+    // 当前线程的第 index 块, 未缓存时解码到最早使用的槽位, 复用该槽位的数组
+    private short[] chunk(ChunkCache cache, int index) {
+        if (cache.indices[cache.lastSlot] == index) {
+            return cache.values[cache.lastSlot];
+        }
+        for (int slot = 0; slot < CACHED_CHUNKS; slot++) {
+            if (cache.indices[slot] == index) {
+                cache.lastSlot = slot;
+                return cache.values[slot];
+            }
+        }
+        int slot = cache.nextSlot;
+        cache.nextSlot = (slot + 1) % CACHED_CHUNKS;
+        if (cache.values[slot] == null) {
+            cache.values[slot] = new short[mSlotValues];
+        }
+        // 解码失败时槽位作废, 不留下写了一半的数据
+        cache.indices[slot] = -1;
+        decode(index, cache.values[slot], cache.previous);
+        cache.indices[slot] = index;
+        cache.lastSlot = slot;
+        return cache.values[slot];
+    }
+
+    // 解码第 index 块到 values 开头, 末块只填满实际的点数
+    private void decode(int index, short[] values, int[] previous) {
+        int pixels = Math.min(mChunkPixels, getLength() - index * mChunkPixels);
+        try {
+            WaveFormCodec.decodeChunk(mBuffer, mDataOffset + chunkOffset(index),
+                    mDataOffset + chunkOffset(index + 1), mIs8Bit, getChannels() * 2,
+                    pixels * getChannels() * 2, values, 0, previous);
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupt chunk " + index, e);
+        }
+    }
+
+    @Override public boolean isReadOnly() {
+        return true;
+    }
+}
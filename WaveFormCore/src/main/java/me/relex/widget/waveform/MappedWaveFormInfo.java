@@ -0,0 +1,82 @@
+package me.relex.widget.waveform;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * 通过 {@link FileChannel#map} 映射 .dat 文件的 {@link WaveFormInfo}
+ *
+ * 峰值数据不进入 Java 堆, 绘制时只会读到可见区域对应的页, 堆占用与录音长度无关。
+ * 只使用绝对位置读取, 同一个实例可以同时交给多个 View 使用。
+ * 映射的 .dat 没有降采样层级, 缩放时从第 1 层起在堆中生成 (最多为原始数据的一半);
+ * 不希望占用堆时用 {@link WaveFormCacheFile#mapWithLevels} 把各层写入文件后映射读回。
+ */
+public class MappedWaveFormInfo extends WaveFormInfo {
+
+    private final ByteBuffer mBuffer;
+    private final int mDataOffset;
+    private final boolean mIs8Bit;
+
+    public static MappedWaveFormInfo map(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            // 映射在 channel 关闭后依然有效
+            return new MappedWaveFormInfo(
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    // buffer 为完整的 .dat 文件内容, 可传入已有的映射以便共享
+    public MappedWaveFormInfo(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (mBuffer.capacity() < WaveFormReader.HEADER_SIZE_V1) {
+            throw new EOFException();
+        }
+        mDataOffset = WaveFormReader.parseHeader(mBuffer, this);
+        mIs8Bit = getBits() == 8;
+
+        long dataSize = (long) getLength() * getChannels() * 2 * (mIs8Bit ? 1 : 2);
+        if (mDataOffset + dataSize > mBuffer.capacity()) {
+            throw new EOFException();
+        }
+    }
+
+    // buffer 中 dataOffset 开始为峰值数据, 格式与 .dat 的数据部分相同; buffer 须为 little-endian
+    MappedWaveFormInfo(ByteBuffer buffer, int dataOffset, int sampleRate, int samplesPerPixel,
+            int bits, int channels, int length) throws EOFException {
+        mBuffer = buffer;
+        mDataOffset = dataOffset;
+        setSample_rate(sampleRate);
+        setSamples_per_pixel(samplesPerPixel);
+        setBits(bits);
+        setChannels(channels);
+        setLength(length);
+        mIs8Bit = bits == 8;
+
+        long dataSize = (long) length * channels * 2 * (mIs8Bit ? 1 : 2);
+        if (dataOffset + dataSize > mBuffer.capacity()) {
+            throw new EOFException();
+        }
+    }
+
+    @Override public boolean hasPeaks() {
+        return true;
+    }
+
+    @Override protected int getPeak(int offset) {
+        return mIs8Bit ? mBuffer.get(mDataOffset + offset)
+                : mBuffer.getShort(mDataOffset + (offset << 1));
+    }
+
+    @Override public boolean isReadOnly() {
+        return true;
+    }
+}
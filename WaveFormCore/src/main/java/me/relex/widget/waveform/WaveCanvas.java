@@ -0,0 +1,10 @@
+package me.relex.widget.waveform;
+
+/**
+ * {@link WaveColumnRenderer} 的输出目标, Android 上由 Canvas 实现, 也可以是图片或测试用的空实现
+ */
+public interface WaveCanvas {
+
+    // lines 中每 4 个值为一条线段 (x0, y0, x1, y1), 与 Canvas.drawLines 相同
+    void drawLines(float[] lines, int offset, int count);
+}
@@ -0,0 +1,150 @@
+package me.relex.widget.waveform;
+
+/**
+ * 把可见范围内的峰值转换成每列一条竖线, 不依赖 Android
+ *
+ * 缓冲区按列数预分配并复用, 尺寸不变时每帧不再分配内存
+ */
+public final class WaveColumnRenderer {
+
+    // 多声道时每列取所有声道的最小 / 最大值, 画成一条
+    public static final int CHANNEL_MODE_MERGED = 0;
+    // 每个声道一条横向分道, 从上到下依次排列
+    public static final int CHANNEL_MODE_LANES = 1;
+
+    private int mChannelMode = CHANNEL_MODE_MERGED;
+    private float[] mLines = new float[0];
+    private int mCount;
+    private int mColumns;
+    // 当前列每条分道的 min/max
+    private int[] mMins = new int[1];
+    private int[] mMaxs = new int[1];
+
+    public void setChannelMode(int channelMode) {
+        mChannelMode = channelMode;
+    }
+
+    public int getChannelMode() {
+        return mChannelMode;
+    }
+
+    // 开始新的一帧, columns 为本帧最多的列数
+    public void begin(int columns) {
+        if (mLines.length < columns * 4) {
+            mLines = new float[columns * 4];
+        }
+        mCount = 0;
+        mColumns = 0;
+    }
+
+    // 收集缩放比例 scale 下, 绝对横坐标 [startX, startX + width) 的波形, 列坐标从 0 开始
+    public void addWave(WaveFormInfo info, float scale, double startX, int width, int height) {
+        // 缩小时改用降采样层级, 每列最多遍历 2 个点
+        addWave(info, WaveFormInfo.levelForScale(scale), scale, startX, width, height);
+    }
+
+    public void addWave(WaveFormInfo info, int level, float scale, double startX, int width,
+            int height) {
+        addWave(info, info.getLevel(level), scale, startX, width, height);
+    }
+
+    // data 为 info 已生成的某一层级, 主线程用 WaveFormInfo.peekLevel 取得, 不在绘制时生成
+    public void addWave(WaveFormInfo info, WaveFormInfo data, float scale, double startX,
+            int width, int height) {
+        float dataScale = scale * data.getSamples_per_pixel() / info.getSamples_per_pixel();
+
+        int dataLength = data.getLength();
+        boolean is8Bit = data.getBits() == 8;
+        int channels = data.getChannels();
+        int lanes = mChannelMode == CHANNEL_MODE_LANES ? channels : 1;
+        if (mMins.length < lanes) {
+            mMins = new int[lanes];
+            mMaxs = new int[lanes];
+        }
+
+        // 改变 x 的 叠加值，放大或缩小波形
+
+        int dataPixel = (int) (startX / dataScale);
+        float axisX = (float) (dataPixel * (double) dataScale - startX);
+        int finalAxisX = -1;
+
+        begin(width * lanes);
+        while (axisX < width) {
+            if (dataPixel < 0 || dataPixel >= dataLength) {
+                break;
+            }
+
+            // 落在同一列的点合并 min/max, 而不是丢弃; 每个点的各声道只读取一次
+            int nearestAxisX = axisX < 0 ? 0 : (int) axisX;
+            boolean newColumn = nearestAxisX != finalAxisX;
+            if (newColumn) {
+                if (finalAxisX >= 0) {
+                    addColumn(finalAxisX, lanes, is8Bit, height);
+                }
+                finalAxisX = nearestAxisX;
+            }
+            for (int channel = 0; channel < channels; channel++) {
+                int lane = lanes == 1 ? 0 : channel;
+                int min = data.getMin(channel, dataPixel);
+                int max = data.getMax(channel, dataPixel);
+                if (newColumn && (lanes > 1 || channel == 0)) {
+                    mMins[lane] = min;
+                    mMaxs[lane] = max;
+                } else {
+                    mMins[lane] = Math.min(mMins[lane], min);
+                    mMaxs[lane] = Math.max(mMaxs[lane], max);
+                }
+            }
+
+            axisX += dataScale;
+            dataPixel++;
+        }
+        if (finalAxisX >= 0) {
+            addColumn(finalAxisX, lanes, is8Bit, height);
+        }
+    }
+
+    // 每条分道高度为 height / lanes, 单条分道时即整个高度
+    private void addColumn(int axisX, int lanes, boolean is8Bit, int height) {
+        mColumns++;
+        for (int lane = 0; lane < lanes; lane++) {
+            int top = lane * height / lanes;
+            int laneHeight = (lane + 1) * height / lanes - top;
+            add(axisX, top + peakToY(mMins[lane], is8Bit, laneHeight),
+                    top + peakToY(mMaxs[lane], is8Bit, laneHeight));
+        }
+    }
+
+    // 峰值映射到纵坐标, 最小值在底部, 最大值在顶部
+    public static int peakToY(int peak, boolean is8Bit, int height) {
+        int value = (is8Bit ? peak * 256 : peak) + 32768;
+        return height - value * height / 65536;
+    }
+
+    public void add(float x, float startY, float endY) {
+        float[] lines = mLines;
+        int i = mCount;
+        lines[i] = x;
+        lines[i + 1] = startY;
+        lines[i + 2] = x;
+        lines[i + 3] = endY;
+        mCount += 4;
+    }
+
+    // 已收集的坐标个数, 每条竖线 4 个
+    public int getCount() {
+        return mCount;
+    }
+
+    // addWave 收集的列数, 分道模式下一列包含多条竖线
+    public int getColumnCount() {
+        return mColumns;
+    }
+
+    public void draw(WaveCanvas canvas) {
+        if (mCount == 0) {
+            return;
+        }
+        canvas.drawLines(mLines, 0, mCount);
+    }
+}
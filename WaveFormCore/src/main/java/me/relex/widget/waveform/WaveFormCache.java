@@ -0,0 +1,283 @@
+package me.relex.widget.waveform;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 按来源 URI 和修改时间缓存解析后的波形: 内存中保留最近使用的实例, 磁盘上保存 {@link WaveFormCacheFile}
+ *
+ * 两级都按字节数 LRU 淘汰。磁盘上的使用顺序记录在文件修改时间中, 重启后依然有效。
+ * 内存中的实例来自文件映射, 占用按文件大小计算。
+ * 每个文件在本进程中第一次打开时校验全部峰值, 会读取整个文件, 应在后台线程中调用。
+ */
+public class WaveFormCache {
+
+    public interface Loader {
+        // 缓存未命中时调用, 如读取 .dat 或由 PCM 生成
+        WaveFormInfo load() throws IOException;
+    }
+
+    private static final String SUFFIX = ".wfc";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File mDirectory;
+    private final long mMaxDiskBytes;
+    private final long mMaxMemoryBytes;
+
+    // 文件名 -> 文件大小, 按使用顺序排列, 只由 touch 调整; 其他查询不影响顺序
+    private final LinkedHashMap<String, Long> mDiskEntries = new LinkedHashMap<>();
+    private final LinkedHashMap<String, WaveFormInfo> mMemoryEntries =
+            new LinkedHashMap<>(16, 0.75f, true);
+    // 本进程中已校验过峰值的文件, 包括本进程写入的
+    private final HashSet<String> mVerified = new HashSet<>();
+    // 正在由 get(uri, lastModified, loader) 加载的文件, 同一文件的并发请求等待同一次加载
+    private final HashMap<String, FutureTask<WaveFormInfo>> mLoading = new HashMap<>();
+    private long mDiskBytes;
+    private long mMemoryBytes;
+
+    public WaveFormCache(File directory, long maxDiskBytes, long maxMemoryBytes) {
+        mDirectory = directory;
+        mMaxDiskBytes = maxDiskBytes;
+        mMaxMemoryBytes = maxMemoryBytes;
+        loadDiskEntries();
+    }
+
+    private void loadDiskEntries() {
+        mDirectory.mkdirs();
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(SUFFIX)) {
+                mDiskEntries.put(name, file.length());
+                mDiskBytes += file.length();
+            } else if (name.endsWith(TEMP_SUFFIX)) {
+                // 上次写入未完成
+                file.delete();
+            }
+        }
+    }
+
+    // 未命中返回 null; 缓存文件损坏时删除并返回 null
+    public synchronized WaveFormInfo get(String uri, long lastModified) {
+        return getEntry(fileName(uri, lastModified));
+    }
+
+    private synchronized WaveFormInfo getEntry(String name) {
+        WaveFormInfo info = mMemoryEntries.get(name);
+        if (info != null) {
+            // 内存命中同样更新磁盘上的使用顺序, 重启后按修改时间恢复
+            touch(name);
+            return info;
+        }
+        Long size = mDiskEntries.get(name);
+        if (size == null) {
+            return null;
+        }
+        File file = new File(mDirectory, name);
+        try {
+            // 上次进程写入的文件可能在写入后损坏, 第一次打开时校验全部峰值
+            info = WaveFormCacheFile.read(file, !mVerified.contains(name));
+        } catch (IOException e) {
+            removeFile(name);
+            return null;
+        }
+        mVerified.add(name);
+        touch(name);
+        putMemory(name, info, size);
+        return info;
+    }
+
+    /**
+     * 写入缓存并返回映射后的实例 (带全部降采样层级), 之后应使用返回的实例
+     */
+    public WaveFormInfo put(String uri, long lastModified, WaveFormInfo info)
+            throws IOException {
+        String name = fileName(uri, lastModified);
+        // 先写临时文件再重命名, 不会读到写了一半的文件
+        File temp = File.createTempFile("waveform", TEMP_SUFFIX, mDirectory);
+        File file = new File(mDirectory, name);
+        try {
+            WaveFormCacheFile.write(info, temp, true);
+            synchronized (this) {
+                if (!temp.renameTo(file)) {
+                    throw new IOException("Cannot rename " + temp + " to " + file);
+                }
+                WaveFormInfo mapped = WaveFormCacheFile.read(file);
+                long size = file.length();
+                mMemoryBytes -= removeMemory(name);
+                Long oldSize = mDiskEntries.remove(name);
+                mDiskEntries.put(name, size);
+                mDiskBytes += size - (oldSize != null ? oldSize : 0);
+                mVerified.add(name);
+                putMemory(name, mapped, size);
+                trimDisk();
+                return mapped;
+            }
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * 命中时直接返回, 否则调用 loader 并写入缓存; 写入失败时仍返回加载结果。
+     * 同一文件同时只加载一次, 其他线程等待并得到同一结果
+     */
+    public WaveFormInfo get(final String uri, final long lastModified, final Loader loader)
+            throws IOException {
+        final String name = fileName(uri, lastModified);
+        FutureTask<WaveFormInfo> task;
+        boolean owner = false;
+        synchronized (this) {
+            WaveFormInfo info = getEntry(name);
+            if (info != null) {
+                return info;
+            }
+            task = mLoading.get(name);
+            if (task == null) {
+                task = new FutureTask<>(new Callable<WaveFormInfo>() {
+                    @Override public WaveFormInfo call() throws IOException {
+                        WaveFormInfo loaded = loader.load();
+                        try {
+                            return put(uri, lastModified, loaded);
+                        } catch (IOException e) {
+                            return loaded;
+                        }
+                    }
+                });
+                mLoading.put(name, task);
+                owner = true;
+            }
+        }
+        if (owner) {
+            try {
+                task.run();
+            } finally {
+                synchronized (this) {
+                    mLoading.remove(name);
+                }
+            }
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    public synchronized void remove(String uri, long lastModified) {
+        removeFile(fileName(uri, lastModified));
+    }
+
+    public synchronized void clear() {
+        for (String name : mDiskEntries.keySet().toArray(new String[mDiskEntries.size()])) {
+            removeFile(name);
+        }
+    }
+
+    // 标记为最近使用: 移到 mDiskEntries 末尾, 并更新文件修改时间供重启后恢复顺序
+    private void touch(String name) {
+        Long size = mDiskEntries.remove(name);
+        if (size != null) {
+            mDiskEntries.put(name, size);
+        }
+        new File(mDirectory, name).setLastModified(System.currentTimeMillis());
+    }
+
+    private void putMemory(String name, WaveFormInfo info, long size) {
+        mMemoryEntries.put(name, info);
+        mMemoryBytes += size;
+        Iterator<Map.Entry<String, WaveFormInfo>> iterator =
+                mMemoryEntries.entrySet().iterator();
+        while (mMemoryBytes > mMaxMemoryBytes && iterator.hasNext()) {
+            String eldest = iterator.next().getKey();
+            iterator.remove();
+            Long eldestSize = mDiskEntries.get(eldest);
+            mMemoryBytes -= eldestSize != null ? eldestSize : 0;
+        }
+    }
+
+    // 返回释放的内存字节数
+    private long removeMemory(String name) {
+        if (mMemoryEntries.remove(name) == null) {
+            return 0;
+        }
+        Long size = mDiskEntries.get(name);
+        return size != null ? size : 0;
+    }
+
+    private void removeFile(String name) {
+        mMemoryBytes -= removeMemory(name);
+        Long size = mDiskEntries.remove(name);
+        if (size != null) {
+            mDiskBytes -= size;
+        }
+        mVerified.remove(name);
+        new File(mDirectory, name).delete();
+    }
+
+    private void trimDisk() {
+        Iterator<Map.Entry<String, Long>> iterator = mDiskEntries.entrySet().iterator();
+        while (mDiskBytes > mMaxDiskBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            String name = eldest.getKey();
+            iterator.remove();
+            mDiskBytes -= eldest.getValue();
+            mVerified.remove(name);
+            // 已映射的实例不受删除影响, 内存中的也一并移除以免超出磁盘上限后仍被使用
+            if (mMemoryEntries.remove(name) != null) {
+                mMemoryBytes -= eldest.getValue();
+            }
+            new File(mDirectory, name).delete();
+        }
+    }
+
+    private static String fileName(String uri, long lastModified) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest((uri + '\n' + lastModified).getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder(hash.length * 2 + SUFFIX.length());
+            for (byte b : hash) {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return builder.append(SUFFIX).toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package me.relex.widget.waveform;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * 解析后的 {@link WaveFormInfo} 的本地缓存格式, 可附带全部降采样层级
+ *
+ * 全部为 little-endian:
+ * <pre>
+ * 0   int magic "WFC2", 与 version 一致
+ * 4   int version
+ * 8   int sample_rate
+ * 12  int samples_per_pixel
+ * 16  int bits (8 / 16)
+ * 20  int length
+ * 24  int channels
+ * 28  int level_count, 至少为 1 (原始数据)
+ * 32  int checksum, 前 32 字节和层级表的 CRC32
+ * 36  int 保留
+ * 40  level_count 个 (int offset, int length, int crc, int 保留),
+ *     第 k 层 samples_per_pixel 为原始的 2^k 倍, crc 为该层峰值的 CRC32
+ * 之后为各层峰值, 与 .dat 数据部分格式相同, 起始位置按 8 字节对齐
+ * </pre>
+ * 读取时映射整个文件, 各层直接从映射读取, 不复制到 Java 堆。
+ * 打开时只校验文件头和层级表, 不读取峰值; 峰值的校验值按需用 {@link #read(File, boolean)} 检查。
+ */
+public class WaveFormCacheFile {
+
+    public static final int VERSION = 2;
+
+    // "WFC2"
+    private static final int MAGIC = 0x32434657;
+    static final int HEADER_SIZE = 40;
+    private static final int LEVEL_ENTRY_SIZE = 16;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // 降采样层级的写入缓冲区, 每层一个
+    private static final int LEVEL_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * @param withLevels 同时写入全部降采样层级; 各层由原始数据逐点合并后直接写入文件,
+     *                   不在堆中生成, 适用于映射或按块解码的数据
+     */
+    public static void write(WaveFormInfo info, File file, boolean withLevels)
+            throws IOException {
+        int channels = info.getChannels();
+        boolean is8Bit = info.getBits() == 8;
+        int bytesPerValue = is8Bit ? 1 : 2;
+
+        // 各层长度, 直到只剩一个点
+        int count = 1;
+        if (withLevels && info.hasPeaks()) {
+            for (int length = info.getLength(); length > 1; length = (length + 1) / 2) {
+                count++;
+            }
+        }
+        int[] lengths = new int[count];
+        lengths[0] = info.getLength();
+        for (int i = 1; i < count; i++) {
+            lengths[i] = (lengths[i - 1] + 1) / 2;
+        }
+
+        int tableSize = count * LEVEL_ENTRY_SIZE;
+        int[] offsets = new int[count];
+        long position = align(HEADER_SIZE + tableSize);
+        for (int i = 0; i < count; i++) {
+            offsets[i] = (int) position;
+            position = align(position + (long) lengths[i] * channels * 2 * bytesPerValue);
+            if (position > Integer.MAX_VALUE) {
+                throw new IOException("Waveform too large");
+            }
+        }
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            channel.truncate(0);
+
+            // 每层一个输出, 各自计算校验值
+            Output[] outputs = new Output[count];
+            for (int i = 0; i < count; i++) {
+                outputs[i] = new Output(channel, offsets[i],
+                        i == 0 ? BUFFER_SIZE : LEVEL_BUFFER_SIZE);
+            }
+            writePeaks(info, is8Bit, outputs);
+            for (Output output : outputs) {
+                output.flush();
+            }
+            randomAccessFile.setLength(position);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + tableSize)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(info.getSample_rate());
+            header.putInt(info.getSamples_per_pixel());
+            header.putInt(info.getBits());
+            header.putInt(info.getLength());
+            header.putInt(channels);
+            header.putInt(count);
+            header.putInt(0);
+            header.putInt(0);
+            for (int i = 0; i < count; i++) {
+                header.putInt(offsets[i]);
+                header.putInt(lengths[i]);
+                header.putInt((int) outputs[i].crc.getValue());
+                header.putInt(0);
+            }
+            header.putInt(32, headerChecksum(header, count));
+            header.rewind();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * 写入带全部层级的缓存文件并映射读回, 用于没有降采样层级的映射数据, 如 {@link MappedWaveFormInfo#map} 的 .dat
+     */
+    public static MappedWaveFormInfo mapWithLevels(WaveFormInfo info, File file)
+            throws IOException {
+        write(info, file, true);
+        return read(file);
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    // 顺序读取第 0 层; 第 k 层的每个点由第 k - 1 层相邻两个点合并 (min 取最小, max 取最大),
+    // 末尾落单的点单独成为一个点, 与 WaveFormInfo 的降采样一致。每层只保留一个待合并的点
+    private static void writePeaks(WaveFormInfo info, boolean is8Bit, Output[] outputs)
+            throws IOException {
+        int count = outputs.length;
+        int values = info.getChannels() * 2;
+        int length = info.getLength();
+        int[] pixel = new int[values];
+        int[] pending = new int[count * values];
+        boolean[] hasPending = new boolean[count];
+
+        for (int i = 0; i < length; i++) {
+            for (int v = 0; v < values; v++) {
+                pixel[v] = info.getPeak(i * values + v);
+            }
+            emit(0, pixel, is8Bit, outputs, pending, hasPending);
+        }
+        for (int level = 1; level < count; level++) {
+            if (hasPending[level]) {
+                hasPending[level] = false;
+                System.arraycopy(pending, level * values, pixel, 0, values);
+                emit(level, pixel, is8Bit, outputs, pending, hasPending);
+            }
+        }
+    }
+
+    // 写入 level 层的一个点, 并逐层向上合并; pixel 会被修改
+    private static void emit(int level, int[] pixel, boolean is8Bit, Output[] outputs,
+            int[] pending, boolean[] hasPending) throws IOException {
+        int values = pixel.length;
+        while (true) {
+            Output output = outputs[level];
+            for (int v = 0; v < values; v++) {
+                if (is8Bit) {
+                    output.put((byte) pixel[v]);
+                } else {
+                    output.putShort((short) pixel[v]);
+                }
+            }
+            int next = level + 1;
+            if (next >= outputs.length) {
+                return;
+            }
+            int base = next * values;
+            if (!hasPending[next]) {
+                System.arraycopy(pixel, 0, pending, base, values);
+                hasPending[next] = true;
+                return;
+            }
+            hasPending[next] = false;
+            for (int v = 0; v < values; v += 2) {
+                pixel[v] = Math.min(pending[base + v], pixel[v]);
+                pixel[v + 1] = Math.max(pending[base + v + 1], pixel[v + 1]);
+            }
+            level = next;
+        }
+    }
+
+    // 从 position 开始写入 channel, 不依赖 channel 的当前位置, 多个输出可以交替写入;
+    // 经过缓冲区时计算 CRC32, flush 之后才计入
+    private static final class Output {
+        private final FileChannel mChannel;
+        private final ByteBuffer mBuffer;
+        final CRC32 crc = new CRC32();
+        // 缓冲区开头在文件中的位置
+        private long mPosition;
+
+        Output(FileChannel channel, long position, int bufferSize) {
+            mChannel = channel;
+            mPosition = position;
+            mBuffer = ByteBuffer.allocate(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        void put(byte value) throws IOException {
+            ensure(1);
+            mBuffer.put(value);
+        }
+
+        void putShort(short value) throws IOException {
+            ensure(2);
+            mBuffer.putShort(value);
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (mBuffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            crc.update(mBuffer.array(), 0, mBuffer.position());
+            mBuffer.flip();
+            while (mBuffer.hasRemaining()) {
+                mPosition += mChannel.write(mBuffer, mPosition);
+            }
+            mBuffer.clear();
+        }
+    }
+
+    /**
+     * 映射缓存文件并校验文件头, 返回的对象已带有文件中的全部层级; 不读取峰值, 与文件大小无关
+     */
+    public static MappedWaveFormInfo read(File file) throws IOException {
+        return read(file, false);
+    }
+
+    /**
+     * @param verifyPeaks 同时校验全部峰值, 会读取整个文件, 适合在后台线程中检查
+     */
+    public static MappedWaveFormInfo read(File file, boolean verifyPeaks) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            // 映射在 channel 关闭后依然有效
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()),
+                    verifyPeaks);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    public static MappedWaveFormInfo read(ByteBuffer source) throws IOException {
+        return read(source, false);
+    }
+
+    public static MappedWaveFormInfo read(ByteBuffer source, boolean verifyPeaks)
+            throws IOException {
+        ByteBuffer buffer = source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int size = buffer.capacity();
+        if (size < HEADER_SIZE) {
+            throw new EOFException();
+        }
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a waveform cache file");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported waveform cache version: " + version);
+        }
+        int sampleRate = buffer.getInt(8);
+        int samplesPerPixel = buffer.getInt(12);
+        int bits = buffer.getInt(16);
+        int length = buffer.getInt(20);
+        int channels = buffer.getInt(24);
+        int levelCount = buffer.getInt(28);
+        if (sampleRate <= 0 || samplesPerPixel <= 0 || (bits != 8 && bits != 16)
+                || channels <= 0 || levelCount <= 0 || levelCount > 31
+                || HEADER_SIZE + levelCount * LEVEL_ENTRY_SIZE > size) {
+            throw new IOException("Invalid waveform cache header");
+        }
+        if (buffer.getInt(32) != headerChecksum(buffer, levelCount)) {
+            throw new IOException("Waveform cache checksum mismatch");
+        }
+        if (buffer.getInt(HEADER_SIZE + 4) != length) {
+            throw new IOException("Waveform cache length mismatch");
+        }
+
+        int bytesPerValue = bits == 8 ? 1 : 2;
+        MappedWaveFormInfo[] levels = new MappedWaveFormInfo[levelCount];
+        for (int i = 0; i < levelCount; i++) {
+            int entry = HEADER_SIZE + i * LEVEL_ENTRY_SIZE;
+            int offset = buffer.getInt(entry);
+            int levelLength = buffer.getInt(entry + 4);
+            if (offset < HEADER_SIZE + levelCount * LEVEL_ENTRY_SIZE || levelLength < 0) {
+                throw new IOException("Invalid waveform cache level");
+            }
+            // 构造时检查数据不超出文件
+            levels[i] = new MappedWaveFormInfo(buffer, offset, sampleRate, samplesPerPixel << i,
+                    bits, channels, levelLength);
+            if (verifyPeaks) {
+                int end = (int) (offset + (long) levelLength * channels * 2 * bytesPerValue);
+                if (buffer.getInt(entry + 8) != checksum(buffer, offset, end)) {
+                    throw new IOException("Waveform cache level " + i + " checksum mismatch");
+                }
+            }
+        }
+        if (levelCount > 1) {
+            levels[0].setLevels(levels);
+        }
+        return levels[0];
+    }
+
+    // 前 32 字节 (不含校验值本身) 和层级表
+    private static int headerChecksum(ByteBuffer buffer, int levelCount) {
+        CRC32 crc = new CRC32();
+        byte[] bytes = new byte[Math.max(32, levelCount * LEVEL_ENTRY_SIZE)];
+        ByteBuffer source = buffer.duplicate();
+        source.position(0);
+        source.get(bytes, 0, 32);
+        crc.update(bytes, 0, 32);
+        source.position(HEADER_SIZE);
+        source.get(bytes, 0, levelCount * LEVEL_ENTRY_SIZE);
+        crc.update(bytes, 0, levelCount * LEVEL_ENTRY_SIZE);
+        return (int) crc.getValue();
+    }
+
+    // 按块复制到数组计算, CRC32.update(ByteBuffer) 需要 API 26
+    private static int checksum(ByteBuffer buffer, int from, int to) {
+        CRC32 crc = new CRC32();
+        byte[] block = new byte[Math.min(BUFFER_SIZE, Math.max(to - from, 0))];
+        ByteBuffer source = buffer.duplicate();
+        source.position(from);
+        source.limit(to);
+        while (source.hasRemaining()) {
+            int count = Math.min(block.length, source.remaining());
+            source.get(block, 0, count);
+            crc.update(block, 0, count);
+        }
+        return (int) crc.getValue();
+    }
+}
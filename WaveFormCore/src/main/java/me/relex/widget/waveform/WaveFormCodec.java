@@ -0,0 +1,310 @@
+package me.relex.widget.waveform;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * 峰值的压缩编码, 用于存储和传输
+ *
+ * 每个像素点按声道存放 min/max, 每个值与上一个像素点同位置的值做差, 差值经 zig-zag 后:
+ * 16 位数据写成 varint (每字节 7 位); 8 位数据写成半字节, 0 ~ 14 直接存放,
+ * 15 为转义, 后跟两个半字节的原始值。
+ * 数据按 chunk_pixels 个像素点分块, 每块重新开始做差, 可按块索引单独解码。
+ *
+ * 头部全部为 little-endian:
+ * <pre>
+ * 0   int magic "WFZ1"
+ * 4   int version
+ * 8   int sample_rate
+ * 12  int samples_per_pixel
+ * 16  int bits (8 / 16)
+ * 20  int channels
+ * 24  int length
+ * 28  int chunk_pixels
+ * 32  int chunk_count
+ * 36  chunk_count + 1 个 int, 各块相对数据起始位置的偏移, 最后一个为数据总长度
+ * </pre>
+ */
+public class WaveFormCodec {
+
+    public static final int VERSION = 1;
+    public static final int DEFAULT_CHUNK_PIXELS = 4096;
+
+    // "WFZ1"
+    private static final int MAGIC = 0x315a4657;
+    static final int HEADER_SIZE = 36;
+
+    private static final int NIBBLE_ESCAPE = 15;
+
+    public static byte[] encode(WaveFormInfo info) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            encode(info, DEFAULT_CHUNK_PIXELS, outputStream);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return outputStream.toByteArray();
+    }
+
+    public static void encode(WaveFormInfo info, int chunkPixels, OutputStream outputStream)
+            throws IOException {
+        if (chunkPixels <= 0) {
+            throw new IllegalArgumentException();
+        }
+        int length = info.hasPeaks() ? info.getLength() : 0;
+        int channels = info.getChannels();
+        boolean is8Bit = info.getBits() == 8;
+        int streams = channels * 2;
+        int chunkCount = (length + chunkPixels - 1) / chunkPixels;
+
+        // 各块先编码到同一个缓冲区, 记录偏移后再与头部一起写出
+        ChunkOutput data = new ChunkOutput();
+        int[] offsets = new int[chunkCount + 1];
+        int[] previous = new int[streams];
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            offsets[chunk] = data.size();
+            int firstPixel = chunk * chunkPixels;
+            int values = Math.min(chunkPixels, length - firstPixel) * streams;
+            int firstValue = firstPixel * streams;
+            for (int i = 0; i < streams; i++) {
+                previous[i] = 0;
+            }
+            for (int i = 0; i < values; i++) {
+                int value = info.getPeak(firstValue + i);
+                int stream = i % streams;
+                int zigZag = zigZag(value - previous[stream]);
+                previous[stream] = value;
+                if (is8Bit) {
+                    if (zigZag < NIBBLE_ESCAPE) {
+                        data.writeNibble(zigZag);
+                    } else {
+                        data.writeNibble(NIBBLE_ESCAPE);
+                        data.writeNibble((value >> 4) & 0xf);
+                        data.writeNibble(value & 0xf);
+                    }
+                } else {
+                    data.writeVarint(zigZag);
+                }
+            }
+            // 每块按整字节结束
+            data.alignNibble();
+        }
+        offsets[chunkCount] = data.size();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + offsets.length * 4)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(info.getSample_rate());
+        header.putInt(info.getSamples_per_pixel());
+        header.putInt(info.getBits());
+        header.putInt(channels);
+        header.putInt(length);
+        header.putInt(chunkPixels);
+        header.putInt(chunkCount);
+        for (int offset : offsets) {
+            header.putInt(offset);
+        }
+        outputStream.write(header.array());
+        data.writeTo(outputStream);
+    }
+
+    /**
+     * 流式解码到 primitive 存储, 每次只读入一块的编码数据
+     */
+    public static WaveFormInfo decode(InputStream inputStream) throws IOException {
+        byte[] headerBytes = new byte[HEADER_SIZE];
+        readFully(inputStream, headerBytes, HEADER_SIZE);
+        ByteBuffer header = ByteBuffer.wrap(headerBytes).order(ByteOrder.LITTLE_ENDIAN);
+        WaveFormInfo info = new WaveFormInfo();
+        int chunkCount = parseHeader(header, info);
+        int chunkPixels = header.getInt(28);
+
+        byte[] indexBytes = new byte[(chunkCount + 1) * 4];
+        readFully(inputStream, indexBytes, indexBytes.length);
+        ByteBuffer index = ByteBuffer.wrap(indexBytes).order(ByteOrder.LITTLE_ENDIAN);
+
+        int length = info.getLength();
+        int streams = info.getChannels() * 2;
+        boolean is8Bit = info.getBits() == 8;
+        byte[] bytePeaks = is8Bit ? new byte[length * streams] : null;
+        short[] shortPeaks = is8Bit ? null : new short[length * streams];
+        short[] values = is8Bit ? new short[Math.min(chunkPixels, length) * streams] : null;
+
+        byte[] chunkBytes = new byte[0];
+        int[] previous = new int[streams];
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            int size = index.getInt((chunk + 1) * 4) - index.getInt(chunk * 4);
+            if (size < 0) {
+                throw new IOException("Invalid chunk index");
+            }
+            if (chunkBytes.length < size) {
+                chunkBytes = new byte[size];
+            }
+            readFully(inputStream, chunkBytes, size);
+            int firstValue = chunk * chunkPixels * streams;
+            int count = Math.min(chunkPixels, length - chunk * chunkPixels) * streams;
+            if (is8Bit) {
+                decodeChunk(ByteBuffer.wrap(chunkBytes, 0, size), 0, size, true, streams, count,
+                        values, 0, previous);
+                for (int i = 0; i < count; i++) {
+                    bytePeaks[firstValue + i] = (byte) values[i];
+                }
+            } else {
+                decodeChunk(ByteBuffer.wrap(chunkBytes, 0, size), 0, size, false, streams, count,
+                        shortPeaks, firstValue, previous);
+            }
+        }
+        if (is8Bit) {
+            info.setPeaks(bytePeaks);
+        } else {
+            info.setPeaks(shortPeaks);
+        }
+        return info;
+    }
+
+    // 解析头部到 info (不含峰值), 返回块数
+    static int parseHeader(ByteBuffer header, WaveFormInfo info) throws IOException {
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("Not an encoded waveform");
+        }
+        int version = header.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported encoded waveform version: " + version);
+        }
+        int sampleRate = header.getInt(8);
+        int samplesPerPixel = header.getInt(12);
+        int bits = header.getInt(16);
+        int channels = header.getInt(20);
+        int length = header.getInt(24);
+        int chunkPixels = header.getInt(28);
+        int chunkCount = header.getInt(32);
+        if (sampleRate <= 0 || samplesPerPixel <= 0 || (bits != 8 && bits != 16)
+                || channels <= 0 || length < 0 || chunkPixels <= 0
+                || chunkCount != (int) (((long) length + chunkPixels - 1) / chunkPixels)) {
+            throw new IOException("Invalid encoded waveform header");
+        }
+        info.setSample_rate(sampleRate);
+        info.setSamples_per_pixel(samplesPerPixel);
+        info.setBits(bits);
+        info.setChannels(channels);
+        info.setLength(length);
+        return chunkCount;
+    }
+
+    /**
+     * 解码一块: 从 src 的 [position, end) 读取 count 个值, 写入 out[outOffset] 开始的位置
+     *
+     * 只使用绝对位置读取, 多个线程可共用同一个 src; previous 为至少 streams 个元素的临时数组
+     */
+    static void decodeChunk(ByteBuffer src, int position, int end, boolean is8Bit, int streams,
+            int count, short[] out, int outOffset, int[] previous) throws IOException {
+        Arrays.fill(previous, 0, streams, 0);
+        int stream = 0;
+        if (is8Bit) {
+            // 半字节位置, 每字节高 4 位在前
+            long nibble = (long) position * 2;
+            long nibbleEnd = (long) end * 2;
+            for (int i = 0; i < count; i++) {
+                if (nibble >= nibbleEnd) {
+                    throw new EOFException();
+                }
+                int zigZag = readNibble(src, nibble++);
+                int value;
+                if (zigZag == NIBBLE_ESCAPE) {
+                    if (nibble + 2 > nibbleEnd) {
+                        throw new EOFException();
+                    }
+                    value = (byte) ((readNibble(src, nibble) << 4) | readNibble(src, nibble + 1));
+                    nibble += 2;
+                } else {
+                    value = previous[stream] + unZigZag(zigZag);
+                }
+                previous[stream] = value;
+                out[outOffset + i] = (short) value;
+                if (++stream == streams) {
+                    stream = 0;
+                }
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                int zigZag = 0;
+                int shift = 0;
+                int b;
+                do {
+                    if (position >= end) {
+                        throw new EOFException();
+                    }
+                    b = src.get(position++);
+                    zigZag |= (b & 0x7f) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0 && shift < 35);
+                int value = previous[stream] + unZigZag(zigZag);
+                previous[stream] = value;
+                out[outOffset + i] = (short) value;
+                if (++stream == streams) {
+                    stream = 0;
+                }
+            }
+        }
+    }
+
+    private static int readNibble(ByteBuffer src, long nibble) {
+        int b = src.get((int) (nibble >> 1));
+        return (nibble & 1) == 0 ? (b >> 4) & 0xf : b & 0xf;
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void readFully(InputStream inputStream, byte[] buffer, int count)
+            throws IOException {
+        int offset = 0;
+        while (offset < count) {
+            int read = inputStream.read(buffer, offset, count - offset);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            offset += read;
+        }
+    }
+
+    // 可按半字节写入的字节缓冲区
+    private static final class ChunkOutput extends ByteArrayOutputStream {
+        private int mPendingNibble = -1;
+
+        void writeNibble(int nibble) {
+            if (mPendingNibble < 0) {
+                mPendingNibble = nibble;
+            } else {
+                write((mPendingNibble << 4) | nibble);
+                mPendingNibble = -1;
+            }
+        }
+
+        void alignNibble() {
+            if (mPendingNibble >= 0) {
+                writeNibble(0);
+            }
+        }
+
+        void writeVarint(int value) {
+            while ((value & ~0x7f) != 0) {
+                write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package me.relex.widget.waveform;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * 从 PCM 数据 (little-endian, 多声道交错) 生成 min/max 峰值
+ *
+ * 8 位为无符号, 16 / 24 位为有符号, float 取值 [-1, 1]。
+ * 峰值先统一到 16 位范围, 输出 8 位时再右移 8 位, 与 audiowaveform 一致。
+ */
+public class WaveFormGenerator {
+
+    public static final int FORMAT_PCM_8 = 1;
+    public static final int FORMAT_PCM_16 = 2;
+    public static final int FORMAT_PCM_24 = 3;
+    public static final int FORMAT_PCM_FLOAT = 4;
+
+    // 每次读取约 64KB, 按整像素对齐
+    private static final int BLOCK_SIZE = 64 * 1024;
+    // 并行时每个任务至少处理的像素数
+    private static final int MIN_PIXELS_PER_TASK = 4096;
+
+    private final int mSampleRate;
+    private final int mChannels;
+    private final int mFormat;
+    private final int mBytesPerSample;
+    private final int mSamplesPerPixel;
+    private final int mOutputBits;
+
+    public WaveFormGenerator(int sampleRate, int channels, int format, int samplesPerPixel,
+            int outputBits) {
+        if (sampleRate <= 0 || channels <= 0 || samplesPerPixel <= 0) {
+            throw new IllegalArgumentException();
+        }
+        if (outputBits != 8 && outputBits != 16) {
+            throw new IllegalArgumentException("outputBits must be 8 or 16");
+        }
+        mSampleRate = sampleRate;
+        mChannels = channels;
+        mFormat = format;
+        mBytesPerSample = bytesPerSample(format);
+        mSamplesPerPixel = samplesPerPixel;
+        mOutputBits = outputBits;
+    }
+
+    private static int bytesPerSample(int format) {
+        switch (format) {
+            case FORMAT_PCM_8:
+                return 1;
+            case FORMAT_PCM_16:
+                return 2;
+            case FORMAT_PCM_24:
+                return 3;
+            case FORMAT_PCM_FLOAT:
+                return 4;
+            default:
+                throw new IllegalArgumentException("Unsupported format: " + format);
+        }
+    }
+
+    private int frameSize() {
+        return mBytesPerSample * mChannels;
+    }
+
+    // 按块读取, 每块只复用同一个缓冲区
+    public WaveFormInfo generate(InputStream inputStream) throws IOException {
+        int pixelSize = frameSize() * mSamplesPerPixel;
+        int pixelsPerBlock = Math.max(1, BLOCK_SIZE / pixelSize);
+        byte[] block = new byte[pixelsPerBlock * pixelSize];
+        ByteBuffer buffer = ByteBuffer.wrap(block).order(ByteOrder.LITTLE_ENDIAN);
+
+        short[] peaks = new short[pixelsPerBlock * mChannels * 2];
+        int length = 0;
+        while (true) {
+            int read = readBlock(inputStream, block);
+            int frames = read / frameSize();
+            if (frames == 0) {
+                break;
+            }
+            int pixels = (frames + mSamplesPerPixel - 1) / mSamplesPerPixel;
+            int required = (length + pixels) * mChannels * 2;
+            if (required > peaks.length) {
+                short[] grown = new short[Math.max(required, peaks.length * 2)];
+                System.arraycopy(peaks, 0, grown, 0, length * mChannels * 2);
+                peaks = grown;
+            }
+            computePeaks(buffer, frames, 0, pixels, peaks, length);
+            length += pixels;
+            if (read < block.length) {
+                break;
+            }
+        }
+        return createInfo(peaks, length);
+    }
+
+    public WaveFormInfo generate(ByteBuffer buffer) {
+        ByteBuffer source = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        int frames = source.remaining() / frameSize();
+        int length = (frames + mSamplesPerPixel - 1) / mSamplesPerPixel;
+        short[] peaks = new short[length * mChannels * 2];
+        computePeaks(source, frames, 0, length, peaks, 0);
+        return createInfo(peaks, length);
+    }
+
+    /**
+     * 长文件并行生成: 按像素切分为多个任务提交到 executor, 每个任务写入结果中互不重叠的一段
+     *
+     * 切分点与像素边界对齐, 各段结果无需再合并
+     */
+    public WaveFormInfo generate(ByteBuffer buffer, ExecutorService executor)
+            throws InterruptedException {
+        final ByteBuffer source = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        final int frames = source.remaining() / frameSize();
+        int length = (frames + mSamplesPerPixel - 1) / mSamplesPerPixel;
+        final short[] peaks = new short[length * mChannels * 2];
+
+        int tasks = Math.max(1, Math.min(length / MIN_PIXELS_PER_TASK,
+                Runtime.getRuntime().availableProcessors() * 4));
+        int pixelsPerTask = (length + tasks - 1) / tasks;
+
+        List<Future<Void>> futures = new ArrayList<>(tasks);
+        for (int first = 0; first < length; first += pixelsPerTask) {
+            final int firstPixel = first;
+            final int pixels = Math.min(pixelsPerTask, length - first);
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override public Void call() {
+                    computePeaks(source, frames, firstPixel, pixels, peaks, firstPixel);
+                    return null;
+                }
+            }));
+        }
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return createInfo(peaks, length);
+    }
+
+    // 计算 [firstPixel, firstPixel + pixels) 的峰值, 写入 peaks 中第 outPixel 个像素开始的位置
+    // 只使用绝对位置读取, 多个线程可共用同一个 buffer
+    private void computePeaks(ByteBuffer buffer, int frames, int firstPixel, int pixels,
+            short[] peaks, int outPixel) {
+        int channels = mChannels;
+        int bytesPerSample = mBytesPerSample;
+        int frameSize = frameSize();
+        int out = outPixel * channels * 2;
+
+        for (int pixel = firstPixel; pixel < firstPixel + pixels; pixel++) {
+            int startFrame = pixel * mSamplesPerPixel;
+            int endFrame = Math.min(startFrame + mSamplesPerPixel, frames);
+            for (int channel = 0; channel < channels; channel++) {
+                int min = Short.MAX_VALUE;
+                int max = Short.MIN_VALUE;
+                int position = startFrame * frameSize + channel * bytesPerSample;
+                for (int frame = startFrame; frame < endFrame; frame++) {
+                    int sample = readSample(buffer, position);
+                    if (sample < min) {
+                        min = sample;
+                    }
+                    if (sample > max) {
+                        max = sample;
+                    }
+                    position += frameSize;
+                }
+                if (mOutputBits == 8) {
+                    min >>= 8;
+                    max >>= 8;
+                }
+                peaks[out++] = (short) min;
+                peaks[out++] = (short) max;
+            }
+        }
+    }
+
+    // 读取一个采样并转换到 16 位范围
+    private int readSample(ByteBuffer buffer, int position) {
+        switch (mFormat) {
+            case FORMAT_PCM_8:
+                return ((buffer.get(position) & 0xff) - 128) << 8;
+            case FORMAT_PCM_16:
+                return buffer.getShort(position);
+            case FORMAT_PCM_24:
+                return buffer.getShort(position + 1);
+            default: {
+                float value = buffer.getFloat(position) * 32767f;
+                if (value > Short.MAX_VALUE) {
+                    return Short.MAX_VALUE;
+                } else if (value < Short.MIN_VALUE) {
+                    return Short.MIN_VALUE;
+                }
+                return (int) value;
+            }
+        }
+    }
+
+    private WaveFormInfo createInfo(short[] peaks, int length) {
+        WaveFormInfo info = new WaveFormInfo();
+        info.setSample_rate(mSampleRate);
+        info.setSamples_per_pixel(mSamplesPerPixel);
+        info.setBits(mOutputBits);
+        info.setChannels(mChannels);
+
+        int count = length * mChannels * 2;
+        if (mOutputBits == 8) {
+            byte[] bytePeaks = new byte[count];
+            for (int i = 0; i < count; i++) {
+                bytePeaks[i] = (byte) peaks[i];
+            }
+            info.setPeaks(bytePeaks);
+        } else if (peaks.length == count) {
+            info.setPeaks(peaks);
+        } else {
+            short[] shortPeaks = new short[count];
+            System.arraycopy(peaks, 0, shortPeaks, 0, count);
+            info.setPeaks(shortPeaks);
+        }
+        return info;
+    }
+
+    // 尽量读满 block, 返回实际读取的字节数
+    private static int readBlock(InputStream inputStream, byte[] block) throws IOException {
+        int offset = 0;
+        while (offset < block.length) {
+            int read = inputStream.read(block, offset, block.length - offset);
+            if (read < 0) {
+                break;
+            }
+            offset += read;
+        }
+        return offset;
+    }
+}
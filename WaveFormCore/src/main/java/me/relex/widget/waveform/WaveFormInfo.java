@@ -0,0 +1,395 @@
+package me.relex.widget.waveform;
+
+import java.util.AbstractList;
+import java.util.List;
+
+public class WaveFormInfo {
+
+    //采样率（每秒采样数)
+    private int sample_rate;
+    //每像素点的采样数
+    private int samples_per_pixel;
+    private int bits;
+    //像素长度，data长度一半; 峰值在堆中时以 mPeaks.length 为准
+    private int length;
+    //声道数, 每个像素点按声道顺序存放 min/max
+    private int channels = 1;
+
+    // 堆中的峰值与长度, 整体替换后发布; 读线程取一次快照即可得到一致的数组和长度
+    private volatile Peaks mPeaks;
+
+    // 降采样层级, mLevels[k] 的 samples_per_pixel 为自身的 2^k 倍, mLevels[0] 即自身;
+    // 在锁内生成, 每生成一层整体替换数组后发布, peekLevel 不加锁读取
+    private volatile WaveFormInfo[] mLevels;
+
+    public int getSample_rate() {
+        return sample_rate;
+    }
+
+    public void setSample_rate(int sample_rate) {
+        this.sample_rate = sample_rate;
+    }
+
+    public int getSamples_per_pixel() {
+        return samples_per_pixel;
+    }
+
+    public void setSamples_per_pixel(int samples_per_pixel) {
+        this.samples_per_pixel = samples_per_pixel;
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    public void setBits(int bits) {
+        this.bits = bits;
+    }
+
+    public int getLength() {
+        Peaks peaks = mPeaks;
+        return peaks != null ? peaks.length : length;
+    }
+
+    public void setLength(int length) {
+        this.length = length;
+        Peaks peaks = mPeaks;
+        if (peaks != null) {
+            mPeaks = new Peaks(peaks.bytes, peaks.shorts, length);
+        }
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    // 需在 setPeaks 之前设置
+    public void setChannels(int channels) {
+        this.channels = channels;
+    }
+
+    // 第 index 个像素点的最小值 (第一声道)
+    public int getMin(int index) {
+        return getMin(0, index);
+    }
+
+    // 第 index 个像素点的最大值 (第一声道)
+    public int getMax(int index) {
+        return getMax(0, index);
+    }
+
+    public int getMin(int channel, int index) {
+        return getPeak((index * channels + channel) << 1);
+    }
+
+    public int getMax(int channel, int index) {
+        return getPeak(((index * channels + channel) << 1) + 1);
+    }
+
+    public boolean hasPeaks() {
+        return mPeaks != null;
+    }
+
+    // 峰值是否保存在 Java 堆中; 映射或按块解码的子类为 false
+    public boolean isInMemory() {
+        return mPeaks != null;
+    }
+
+    // 峰值不能修改 (setPeaks / setData / appendPeaks), 如映射或按块解码的子类;
+    // 录音等需要追加数据时使用普通的 WaveFormInfo
+    public boolean isReadOnly() {
+        return false;
+    }
+
+    private void checkWritable() {
+        if (isReadOnly()) {
+            throw new IllegalStateException(
+                    getClass().getSimpleName() + " is read-only, append to a WaveFormInfo");
+        }
+    }
+
+    // offset 为 min/max 交错序列中的下标
+    protected int getPeak(int offset) {
+        Peaks peaks = mPeaks;
+        return peaks.bytes != null ? peaks.bytes[offset] : peaks.shorts[offset];
+    }
+
+    public void setPeaks(byte[] peaks) {
+        checkWritable();
+        mLevels = null;
+        length = peaks.length / (2 * channels);
+        mPeaks = new Peaks(peaks, null, length);
+    }
+
+    public void setPeaks(short[] peaks) {
+        checkWritable();
+        mLevels = null;
+        length = peaks.length / (2 * channels);
+        mPeaks = new Peaks(null, peaks, length);
+    }
+
+    /**
+     * @deprecated 每个采样都会装箱, 请使用 {@link #getMin(int)} / {@link #getMax(int)}
+     */
+    @Deprecated public List<Integer> getData() {
+        if (!hasPeaks()) {
+            return null;
+        }
+        return new AbstractList<Integer>() {
+            @Override public Integer get(int location) {
+                return getPeak(location);
+            }
+
+            @Override public int size() {
+                return getLength() * channels * 2;
+            }
+        };
+    }
+
+    // 兼容 List 数据(如 JSON 解析结果), 转为 primitive 存储
+    public void setData(List<Integer> data) {
+        checkWritable();
+        mLevels = null;
+        if (data == null) {
+            mPeaks = null;
+            return;
+        }
+        int size = data.size();
+        if (bits == 8) {
+            byte[] peaks = new byte[size];
+            int i = 0;
+            for (Integer value : data) {
+                peaks[i++] = value.byteValue();
+            }
+            mPeaks = new Peaks(peaks, null, length);
+        } else {
+            // bits 未知时也按 16 位存储, 8 位数值同样放得下
+            short[] peaks = new short[size];
+            int i = 0;
+            for (Integer value : data) {
+                peaks[i++] = value.shortValue();
+            }
+            mPeaks = new Peaks(null, peaks, length);
+        }
+    }
+
+    // 缩放比例 scale 下合适的层级: 该层级每个像素点宽度在 (0.5, 1] 之间, 即每列最多 2 个点
+    public static int levelForScale(float scale) {
+        int level = 0;
+        while (scale > 0 && scale * 2 <= 1f) {
+            scale *= 2;
+            level++;
+        }
+        return level;
+    }
+
+    // 获取第 level 层降采样数据, 按需生成; 超出最粗层级时返回最粗层级
+    // 已有的层级 (如缓存文件中的层级) 直接使用; 不在堆中的数据缺少层级时, 从第 1 层起在堆中生成,
+    // 第 1 层只有原始数据的一半, 之后每层再减半
+    public synchronized WaveFormInfo getLevel(int level) {
+        if (level <= 0 || !hasPeaks()) {
+            return this;
+        }
+        WaveFormInfo[] levels = mLevels;
+        if (levels == null) {
+            levels = new WaveFormInfo[] { this };
+        }
+        while (levels.length <= level) {
+            WaveFormInfo coarsest = levels[levels.length - 1];
+            if (coarsest.getLength() <= 1) {
+                return coarsest;
+            }
+            levels = addLevel(levels, coarsest.downsample());
+        }
+        return levels[level];
+    }
+
+    /**
+     * 不生成也不等待生成中的层级, 可在主线程调用
+     *
+     * @return 已生成的 [minLevel, maxLevel] 中最粗的一层; 全部层级已生成但不足 minLevel 层时
+     * 返回最粗层级; 都没有时返回 null
+     */
+    public WaveFormInfo peekLevel(int minLevel, int maxLevel) {
+        WaveFormInfo[] levels = mLevels;
+        if (levels == null) {
+            levels = new WaveFormInfo[] { this };
+        }
+        int level = Math.min(Math.max(maxLevel, 0), levels.length - 1);
+        if (level >= minLevel || !hasPeaks() || levels[levels.length - 1].getLength() <= 1) {
+            return levels[level];
+        }
+        return null;
+    }
+
+    // 全部降采样层级是否已生成, 即 peekLevel 总能返回所需的层级
+    public boolean hasAllLevels() {
+        WaveFormInfo[] levels = mLevels;
+        WaveFormInfo coarsest = levels == null ? this : levels[levels.length - 1];
+        return !hasPeaks() || coarsest.getLength() <= 1;
+    }
+
+    // 在末尾加一层并发布
+    private WaveFormInfo[] addLevel(WaveFormInfo[] levels, WaveFormInfo level) {
+        WaveFormInfo[] grown = new WaveFormInfo[levels.length + 1];
+        System.arraycopy(levels, 0, grown, 0, levels.length);
+        grown[levels.length] = level;
+        mLevels = grown;
+        return grown;
+    }
+
+    // 生成全部降采样层级, 直到只剩 1 个点; 可在后台线程预先调用, 避免绘制时生成
+    // 不希望在堆中生成层级的映射数据可先用 WaveFormCacheFile.mapWithLevels 把各层写入文件
+    public void buildLevels() {
+        int level = 0;
+        for (int n = getLength(); n > 1; n = (n + 1) / 2) {
+            level++;
+        }
+        getLevel(level);
+    }
+
+    // 设置已有的降采样层级 (如从缓存文件读出), levels[0] 须为自身
+    synchronized void setLevels(WaveFormInfo[] levels) {
+        mLevels = levels;
+    }
+
+    private WaveFormInfo downsample() {
+        WaveFormInfo level = new WaveFormInfo();
+        level.sample_rate = sample_rate;
+        level.samples_per_pixel = samples_per_pixel * 2;
+        level.bits = bits;
+        level.channels = channels;
+        level.mergeFrom(this, 0);
+        return level;
+    }
+
+    // 由上一层 parent 重新计算本层 fromPixel 之后的像素点
+    // 相邻两个点合并为一个: min 取最小, max 取最大
+    // parent 不在堆中 (映射或按块解码) 时通过 getPeak 顺序读取
+    private void mergeFrom(WaveFormInfo parent, int fromPixel) {
+        Peaks source = parent.mPeaks;
+        int parentLength = source != null ? source.length : parent.getLength();
+        int newLength = (parentLength + 1) / 2;
+        Peaks peaks = ensureCapacity(newLength * channels * 2);
+
+        int offset = fromPixel * channels * 2;
+        for (int i = fromPixel; i < newLength; i++) {
+            int first = i * 2;
+            int second = Math.min(first + 1, parentLength - 1);
+            for (int channel = 0; channel < channels; channel++) {
+                int firstOffset = (first * channels + channel) << 1;
+                int secondOffset = (second * channels + channel) << 1;
+                int min = Math.min(parent.peakAt(source, firstOffset),
+                        parent.peakAt(source, secondOffset));
+                int max = Math.max(parent.peakAt(source, firstOffset + 1),
+                        parent.peakAt(source, secondOffset + 1));
+                if (peaks.bytes != null) {
+                    peaks.bytes[offset++] = (byte) min;
+                    peaks.bytes[offset++] = (byte) max;
+                } else {
+                    peaks.shorts[offset++] = (short) min;
+                    peaks.shorts[offset++] = (short) max;
+                }
+            }
+        }
+        publish(peaks, newLength);
+    }
+
+    private int peakAt(Peaks snapshot, int offset) {
+        return snapshot != null ? snapshot.get(offset) : getPeak(offset);
+    }
+
+    // 返回至少能放下 count 个值的存储, 不足时按倍数扩容到新数组; 此时尚未发布
+    // 写入已发布数组中 length 之后的位置不影响读线程, 它们只读取快照长度以内的数据
+    private Peaks ensureCapacity(int count) {
+        Peaks peaks = mPeaks;
+        int used = peaks == null ? 0 : peaks.length * channels * 2;
+        // 已有存储时沿用其类型, 否则按 bits 选择
+        if (peaks != null ? peaks.bytes != null : bits == 8) {
+            byte[] old = peaks == null ? null : peaks.bytes;
+            if (old == null || old.length < count) {
+                int capacity = old == null ? 0 : old.length * 2;
+                byte[] grown = new byte[Math.max(count, capacity)];
+                if (old != null) {
+                    System.arraycopy(old, 0, grown, 0, used);
+                }
+                return new Peaks(grown, null, peaks == null ? 0 : peaks.length);
+            }
+        } else {
+            short[] old = peaks == null ? null : peaks.shorts;
+            if (old == null || old.length < count) {
+                int capacity = old == null ? 0 : old.length * 2;
+                short[] grown = new short[Math.max(count, capacity)];
+                if (old != null) {
+                    System.arraycopy(old, 0, grown, 0, used);
+                }
+                return new Peaks(null, grown, peaks == null ? 0 : peaks.length);
+            }
+        }
+        return peaks;
+    }
+
+    // 数据写完后再整体发布新的快照
+    private void publish(Peaks peaks, int newLength) {
+        length = newLength;
+        mPeaks = new Peaks(peaks.bytes, peaks.shorts, newLength);
+    }
+
+    /**
+     * 在末尾追加 pixels 个像素点, 用于录音时实时显示
+     *
+     * peaks 与存储格式一致 (每个像素点按声道顺序存放 min/max), 8 位数据会截断为 byte。
+     * 存储按倍数扩容, 已生成的降采样层级只重新计算末尾受影响的部分。
+     * 可与读线程并发: 数组和长度作为一个快照发布, 读线程看到的长度不会超出对应数组已写入的部分。
+     *
+     * @throws IllegalStateException {@link #isReadOnly()} 的实例, 如映射的文件
+     */
+    public synchronized void appendPeaks(short[] peaks, int offset, int pixels) {
+        checkWritable();
+        int oldLength = getLength();
+        Peaks target = ensureCapacity((oldLength + pixels) * channels * 2);
+        int start = oldLength * channels * 2;
+        int count = pixels * channels * 2;
+        if (target.bytes != null) {
+            for (int i = 0; i < count; i++) {
+                target.bytes[start + i] = (byte) peaks[offset + i];
+            }
+        } else {
+            System.arraycopy(peaks, offset, target.shorts, start, count);
+        }
+        publish(target, oldLength + pixels);
+
+        WaveFormInfo[] levels = mLevels;
+        if (levels != null) {
+            boolean complete = levels[levels.length - 1].getLength() <= 1;
+            int fromPixel = oldLength;
+            for (int i = 1; i < levels.length; i++) {
+                // 上一层的最后一个点可能只合并了一半, 需要重新计算
+                fromPixel /= 2;
+                levels[i].mergeFrom(levels[i - 1], fromPixel);
+            }
+            // 原本已生成全部层级时, 继续补齐到只剩 1 个点, 保持 hasAllLevels
+            while (complete && levels[levels.length - 1].getLength() > 1) {
+                levels = addLevel(levels, levels[levels.length - 1].downsample());
+            }
+        }
+    }
+
+    // 不可变的 (数组, 长度) 快照, bytes 与 shorts 只有一个非空
+    // min/max 交错存储, 8 位数据用 byte[], 16 位数据用 short[]
+    private final static class Peaks {
+        final byte[] bytes;
+        final short[] shorts;
+        final int length;
+
+        Peaks(byte[] bytes, short[] shorts, int length) {
+            this.bytes = bytes;
+            this.shorts = shorts;
+            this.length = length;
+        }
+
+        int get(int offset) {
+            return bytes != null ? bytes[offset] : shorts[offset];
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package me.relex.widget.waveform;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * 读取 audiowaveform 生成的二进制 .dat 文件 (version 1 / 2, 8 / 16 位, 多声道)
+ *
+ * 数据直接写入 {@link WaveFormInfo} 的 primitive 存储, 不经过 JSON 和装箱
+ */
+public class WaveFormReader {
+
+    public static final int VERSION_1 = 1;
+    public static final int VERSION_2 = 2;
+
+    // flags 第 0 位: 0 = 16 位, 1 = 8 位
+    private static final int FLAG_8_BIT = 0x1;
+
+    static final int HEADER_SIZE_V1 = 20;
+    static final int HEADER_SIZE_V2 = 24;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    public static WaveFormInfo read(File file) throws IOException {
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            return read(inputStream.getChannel());
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    public static WaveFormInfo read(InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        ByteBuffer header = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+
+        readFully(inputStream, buffer, 0, HEADER_SIZE_V1);
+        if (header.getInt(0) == VERSION_2) {
+            readFully(inputStream, buffer, HEADER_SIZE_V1, HEADER_SIZE_V2 - HEADER_SIZE_V1);
+        }
+        WaveFormInfo info = new WaveFormInfo();
+        parseHeader(header, info);
+
+        int count = info.getLength() * info.getChannels() * 2;
+        if (info.getBits() == 8) {
+            byte[] peaks = new byte[count];
+            readFully(inputStream, peaks, 0, count);
+            info.setPeaks(peaks);
+        } else {
+            short[] peaks = new short[count];
+            int position = 0;
+            while (position < count) {
+                int shorts = Math.min(count - position, BUFFER_SIZE / 2);
+                readFully(inputStream, buffer, 0, shorts * 2);
+                for (int i = 0; i < shorts; i++) {
+                    peaks[position++] =
+                            (short) ((buffer[i * 2] & 0xff) | (buffer[i * 2 + 1] << 8));
+                }
+            }
+            info.setPeaks(peaks);
+        }
+        return info;
+    }
+
+    public static WaveFormInfo read(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.limit(HEADER_SIZE_V1);
+        readFully(channel, buffer);
+        if (buffer.getInt(0) == VERSION_2) {
+            buffer.limit(HEADER_SIZE_V2);
+            readFully(channel, buffer);
+        }
+        WaveFormInfo info = new WaveFormInfo();
+        parseHeader(buffer, info);
+
+        int count = info.getLength() * info.getChannels() * 2;
+        if (info.getBits() == 8) {
+            byte[] peaks = new byte[count];
+            readFully(channel, ByteBuffer.wrap(peaks));
+            info.setPeaks(peaks);
+        } else {
+            short[] peaks = new short[count];
+            int position = 0;
+            while (position < count) {
+                int shorts = Math.min(count - position, BUFFER_SIZE / 2);
+                buffer.clear();
+                buffer.limit(shorts * 2);
+                readFully(channel, buffer);
+                buffer.flip();
+                buffer.asShortBuffer().get(peaks, position, shorts);
+                position += shorts;
+            }
+            info.setPeaks(peaks);
+        }
+        return info;
+    }
+
+    // 返回 header 长度
+    static int parseHeader(ByteBuffer header, WaveFormInfo info) throws IOException {
+        int version = header.getInt(0);
+        if (version != VERSION_1 && version != VERSION_2) {
+            throw new IOException("Unsupported waveform version: " + version);
+        }
+        int flags = header.getInt(4);
+        int sampleRate = header.getInt(8);
+        int samplesPerPixel = header.getInt(12);
+        int length = header.getInt(16);
+        int channels = version == VERSION_2 ? header.getInt(20) : 1;
+
+        if (sampleRate <= 0 || samplesPerPixel <= 0 || length < 0 || channels <= 0) {
+            throw new IOException("Invalid waveform header");
+        }
+
+        info.setSample_rate(sampleRate);
+        info.setSamples_per_pixel(samplesPerPixel);
+        info.setBits((flags & FLAG_8_BIT) != 0 ? 8 : 16);
+        info.setChannels(channels);
+        info.setLength(length);
+        return version == VERSION_2 ? HEADER_SIZE_V2 : HEADER_SIZE_V1;
+    }
+
+    private static void readFully(InputStream inputStream, byte[] buffer, int offset, int count)
+            throws IOException {
+        while (count > 0) {
+            int read = inputStream.read(buffer, offset, count);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            offset += read;
+            count -= read;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+}
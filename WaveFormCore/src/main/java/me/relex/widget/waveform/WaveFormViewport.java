@@ -0,0 +1,219 @@
+package me.relex.widget.waveform;
+
+/**
+ * 视口: 起始时间、缩放比例及其边界, 以及时间与列坐标之间的换算, 不依赖 Android
+ *
+ * WaveFormView 和 WaveFormThumbView 各持有一个, 也可以直接用于离线渲染和 benchmark。
+ * 缩放比例 1 表示一个数据点对应一列, 最小比例为整个波形恰好铺满宽度。
+ */
+public class WaveFormViewport {
+
+    private WaveFormInfo mInfo;
+    private int mWidth;
+    private double mTotalSecond = 0d;
+    private double mStartSecond = 0d;
+    private float mScale = 1f;
+    private float mMinScale = 1f;
+    private float mMaxScale = 3f;
+
+    // 缩放手势开始时记录的锚点时间
+    private double mScaleAnchorSecond;
+    private boolean mResetScaleAnchor;
+
+    public void setWave(WaveFormInfo info) {
+        mInfo = info;
+        notifyLengthChanged();
+    }
+
+    public WaveFormInfo getWave() {
+        return mInfo;
+    }
+
+    // 数据长度变化后 (如录音时追加) 更新总时长和最小缩放比例
+    public void notifyLengthChanged() {
+        if (mInfo == null) {
+            return;
+        }
+        mTotalSecond = WaveUtil.dataPixelsToSecond(mInfo.getLength(), mInfo.getSample_rate(),
+                mInfo.getSamples_per_pixel());
+        computeMinScale();
+    }
+
+    public void setWidth(int width) {
+        mWidth = width;
+        computeMinScale();
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    private void computeMinScale() {
+        if (mInfo == null || mWidth <= 0 || mInfo.getLength() <= 0) {
+            return;
+        }
+        mMinScale = (float) mWidth / mInfo.getLength();
+        mScale = clampScale(mScale);
+    }
+
+    public void setMaxScale(float maxScale) {
+        mMaxScale = maxScale;
+    }
+
+    public float getMaxScale() {
+        return mMaxScale;
+    }
+
+    // 整个波形恰好铺满宽度时的缩放比例
+    public float getMinScale() {
+        return mMinScale;
+    }
+
+    public float getScale() {
+        return mScale;
+    }
+
+    public double getStartSecond() {
+        return mStartSecond;
+    }
+
+    public double getEndSecond() {
+        return mStartSecond + getViewSeconds();
+    }
+
+    public double getTotalSecond() {
+        return mTotalSecond;
+    }
+
+    // 当前宽度和缩放比例下可显示的时长
+    public double getViewSeconds() {
+        if (mInfo == null) {
+            return 0d;
+        }
+        return WaveUtil.pixelsToSeconds(mWidth, mInfo.getSample_rate(),
+                mInfo.getSamples_per_pixel(), mScale);
+    }
+
+    // 返回 true 表示起始时间有变化
+    public boolean setStartSecond(double startSecond) {
+        double lastStartSecond = mStartSecond;
+        mStartSecond = clampStartSecond(startSecond);
+        return mStartSecond != lastStartSecond;
+    }
+
+    // 水平滚动 pixels 列, 正值向后
+    public boolean scrollBy(float pixels) {
+        if (mInfo == null || pixels == 0) {
+            return false;
+        }
+        return setStartSecond(mStartSecond + WaveUtil.pixelsToSeconds(pixels,
+                mInfo.getSample_rate(), mInfo.getSamples_per_pixel(), mScale));
+    }
+
+    // 返回 true 表示缩放比例有变化, 起始时间随之限制在范围内
+    public boolean setScale(float scale) {
+        float tempScale = clampScale(scale);
+        if (tempScale == mScale) {
+            return false;
+        }
+        mScale = tempScale;
+        mStartSecond = clampStartSecond(mStartSecond);
+        return true;
+    }
+
+    public void beginScale() {
+        mResetScaleAnchor = true;
+    }
+
+    // 以 focusX 列为焦点缩放, 焦点位置的时间保持不动
+    public boolean scaleBy(float scaleFactor, float focusX) {
+        if (mInfo == null) {
+            return false;
+        }
+        float tempScale = clampScale(mScale * scaleFactor);
+        if (tempScale == mScale) {
+            return false;
+        }
+        mScale = tempScale;
+        float dx = focusX - (focusX - 0) * mScale;
+        double ds = WaveUtil.pixelsToSeconds(dx, mInfo.getSample_rate(),
+                mInfo.getSamples_per_pixel(), mScale);
+        if (mResetScaleAnchor) {
+            mScaleAnchorSecond = mStartSecond + ds;
+            mResetScaleAnchor = false;
+        }
+        mStartSecond = clampStartSecond(mScaleAnchorSecond - ds);
+        return true;
+    }
+
+    public void endScale() {
+        mStartSecond = clampStartSecond(mStartSecond);
+    }
+
+    public double clampStartSecond(double startSecond) {
+        return clampStartSecond(startSecond, getViewSeconds());
+    }
+
+    // 起始时间限制在 [0, 总时长 - viewSeconds]
+    public double clampStartSecond(double startSecond, double viewSeconds) {
+        if (startSecond + viewSeconds > mTotalSecond) {
+            startSecond = mTotalSecond - viewSeconds;
+        }
+        if (startSecond < 0) {
+            startSecond = 0d;
+        }
+        return startSecond;
+    }
+
+    public float clampScale(float scale) {
+        if (scale < mMinScale) {
+            scale = mMinScale;
+        } else if (scale > mMaxScale) {
+            scale = mMaxScale;
+        }
+        return scale;
+    }
+
+    // 视口左边缘在缩放比例 scale 下的绝对横坐标
+    public double getStartX(float scale) {
+        if (mInfo == null) {
+            return 0d;
+        }
+        return mStartSecond * mInfo.getSample_rate() / mInfo.getSamples_per_pixel() * scale;
+    }
+
+    public double getStartX() {
+        return getStartX(mScale);
+    }
+
+    // 整个波形在当前缩放比例下的宽度
+    public int getTotalPixels() {
+        return mInfo == null ? 0 : (int) (mInfo.getLength() * mScale);
+    }
+
+    // 时间在视口中的列坐标, 可以超出 [0, width)
+    public float secondToX(double second) {
+        if (mInfo == null) {
+            return 0f;
+        }
+        return (float) ((second - mStartSecond) * mInfo.getSample_rate()
+                / mInfo.getSamples_per_pixel() * mScale);
+    }
+
+    public double xToSecond(float x) {
+        if (mInfo == null) {
+            return 0d;
+        }
+        return mStartSecond + WaveUtil.pixelsToSeconds(x, mInfo.getSample_rate(),
+                mInfo.getSamples_per_pixel(), mScale);
+    }
+
+    // 把当前视口的波形输出到 canvas 的 [0, width)
+    public void draw(WaveColumnRenderer renderer, int height, WaveCanvas canvas) {
+        if (mInfo == null || mWidth <= 0 || height <= 0) {
+            return;
+        }
+        renderer.addWave(mInfo, mScale, getStartX(), mWidth, height);
+        renderer.draw(canvas);
+    }
+}
@@ -0,0 +1,285 @@
+package me.relex.widget.waveform;
+
+import java.util.Arrays;
+
+/**
+ * 波形区间统计索引: 任意像素区间 [from, to) 的最小值、最大值、振幅之和, 以及查找下一段高于阈值的区域
+ *
+ * 像素点按 BLOCK_SIZE 分块, 每块记录最小值、最大值和振幅前缀和, 块的最小 / 最大值再建 sparse table。
+ * 查询时两端不满一块的部分直接读取数据 (最多 2 * BLOCK_SIZE 个点), 中间的整块 O(1) 查表,
+ * 额外内存约为数据点数 * 8 / BLOCK_SIZE * log2(块数) 字节。
+ * 多声道时合并所有声道, 振幅为 max(-min, max)。
+ * 数据在末尾追加后调用 {@link #update}, 只统计新增的块并更新 sparse table 中受影响的项, 存储按倍数扩容。
+ */
+public final class WaveRangeIndex {
+
+    public static final int BLOCK_SIZE = 64;
+
+    private final WaveFormInfo mInfo;
+    private final int mChannels;
+    private int mLength;
+    // mMinTable[k][b] 为第 b 块起 2^k 块的最小值; 各数组容量可能大于有效项数
+    private int[][] mMinTable = new int[1][0];
+    private int[][] mMaxTable = new int[1][0];
+    // mBlockSums[b] 为前 b 块的振幅之和
+    private long[] mBlockSums = new long[1];
+    // 每块内振幅的最小值, 用于跳过整块都高于阈值的部分
+    private int[] mBlockQuietest = new int[0];
+
+    private WaveRangeIndex(WaveFormInfo info) {
+        mInfo = info;
+        mChannels = info.getChannels();
+        mLength = info.getLength();
+        computeBlocks(0);
+    }
+
+    // 遍历一次数据建立索引, 数据很长时建议在后台线程调用
+    public static WaveRangeIndex build(WaveFormInfo info) {
+        return new WaveRangeIndex(info);
+    }
+
+    /**
+     * 数据在末尾追加后更新索引, 从原来不满的末块开始重新统计, 耗时与新增的点数成正比;
+     * 数据变短 (重新设置) 时重新建立
+     */
+    public void update() {
+        int length = mInfo.getLength();
+        if (length == mLength) {
+            return;
+        }
+        int firstBlock = length > mLength ? mLength / BLOCK_SIZE : 0;
+        mLength = length;
+        computeBlocks(firstBlock);
+    }
+
+    // 重新统计 firstBlock 及之后的块, 并更新覆盖这些块的 sparse table 项
+    private void computeBlocks(int firstBlock) {
+        int blockCount = (mLength + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int[] mins = mMinTable[0] = grow(mMinTable[0], blockCount);
+        int[] maxs = mMaxTable[0] = grow(mMaxTable[0], blockCount);
+        mBlockQuietest = grow(mBlockQuietest, blockCount);
+        if (mBlockSums.length < blockCount + 1) {
+            mBlockSums = Arrays.copyOf(mBlockSums,
+                    Math.max(blockCount + 1, mBlockSums.length * 2));
+        }
+
+        long sum = mBlockSums[firstBlock];
+        for (int block = firstBlock; block < blockCount; block++) {
+            int from = block * BLOCK_SIZE;
+            int to = Math.min(from + BLOCK_SIZE, mLength);
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            int quietest = Integer.MAX_VALUE;
+            for (int i = from; i < to; i++) {
+                int pixelMin = pixelMin(i);
+                int pixelMax = pixelMax(i);
+                int amplitude = Math.max(-pixelMin, pixelMax);
+                min = Math.min(min, pixelMin);
+                max = Math.max(max, pixelMax);
+                quietest = Math.min(quietest, amplitude);
+                sum += amplitude;
+            }
+            mBlockQuietest[block] = quietest;
+            mins[block] = min;
+            maxs[block] = max;
+            mBlockSums[block + 1] = sum;
+        }
+
+        int levels = 1;
+        while ((1 << levels) <= blockCount) {
+            levels++;
+        }
+        if (mMinTable.length < levels) {
+            mMinTable = Arrays.copyOf(mMinTable, levels);
+            mMaxTable = Arrays.copyOf(mMaxTable, levels);
+        }
+        for (int k = 1; k < levels; k++) {
+            int half = 1 << (k - 1);
+            int count = blockCount - (1 << k) + 1;
+            int[] lowerMins = mMinTable[k - 1];
+            int[] lowerMaxs = mMaxTable[k - 1];
+            mins = mMinTable[k] = grow(mMinTable[k], count);
+            maxs = mMaxTable[k] = grow(mMaxTable[k], count);
+            // 第 b 项覆盖 [b, b + 2^k) 块, 只有包含 firstBlock 及之后的项需要更新
+            for (int b = Math.max(0, firstBlock - (1 << k) + 1); b < count; b++) {
+                mins[b] = Math.min(lowerMins[b], lowerMins[b + half]);
+                maxs[b] = Math.max(lowerMaxs[b], lowerMaxs[b + half]);
+            }
+        }
+    }
+
+    // 容量不足 count 时按倍数扩容
+    private static int[] grow(int[] array, int count) {
+        if (array == null) {
+            return new int[count];
+        }
+        if (array.length >= count) {
+            return array;
+        }
+        return Arrays.copyOf(array, Math.max(count, array.length * 2));
+    }
+
+    public WaveFormInfo getInfo() {
+        return mInfo;
+    }
+
+    public int getLength() {
+        return mLength;
+    }
+
+    // 时间所在的像素点, 限制在 [0, length] 内; 容许浮点误差, secondAt 的结果换算回来是同一个点
+    public int pixelAt(double second) {
+        double pixel = second * mInfo.getSample_rate() / mInfo.getSamples_per_pixel();
+        return (int) Math.max(0, Math.min(Math.floor(pixel + 1e-6), mLength));
+    }
+
+    public double secondAt(int pixel) {
+        return WaveUtil.dataPixelsToSecond(pixel, mInfo.getSample_rate(),
+                mInfo.getSamples_per_pixel());
+    }
+
+    // [from, to) 内的最小值, 区间为空时返回 0
+    public int getMin(int from, int to) {
+        from = Math.max(from, 0);
+        to = Math.min(to, mLength);
+        if (from >= to) {
+            return 0;
+        }
+        int min = Integer.MAX_VALUE;
+        int firstBlock = from / BLOCK_SIZE + 1;
+        int lastBlock = to / BLOCK_SIZE;
+        if (firstBlock >= lastBlock) {
+            for (int i = from; i < to; i++) {
+                min = Math.min(min, pixelMin(i));
+            }
+            return min;
+        }
+        for (int i = from, end = firstBlock * BLOCK_SIZE; i < end; i++) {
+            min = Math.min(min, pixelMin(i));
+        }
+        for (int i = lastBlock * BLOCK_SIZE; i < to; i++) {
+            min = Math.min(min, pixelMin(i));
+        }
+        int k = log2(lastBlock - firstBlock);
+        int[] table = mMinTable[k];
+        min = Math.min(min, table[firstBlock]);
+        return Math.min(min, table[lastBlock - (1 << k)]);
+    }
+
+    // [from, to) 内的最大值, 区间为空时返回 0
+    public int getMax(int from, int to) {
+        from = Math.max(from, 0);
+        to = Math.min(to, mLength);
+        if (from >= to) {
+            return 0;
+        }
+        int max = Integer.MIN_VALUE;
+        int firstBlock = from / BLOCK_SIZE + 1;
+        int lastBlock = to / BLOCK_SIZE;
+        if (firstBlock >= lastBlock) {
+            for (int i = from; i < to; i++) {
+                max = Math.max(max, pixelMax(i));
+            }
+            return max;
+        }
+        for (int i = from, end = firstBlock * BLOCK_SIZE; i < end; i++) {
+            max = Math.max(max, pixelMax(i));
+        }
+        for (int i = lastBlock * BLOCK_SIZE; i < to; i++) {
+            max = Math.max(max, pixelMax(i));
+        }
+        int k = log2(lastBlock - firstBlock);
+        int[] table = mMaxTable[k];
+        max = Math.max(max, table[firstBlock]);
+        return Math.max(max, table[lastBlock - (1 << k)]);
+    }
+
+    // [from, to) 内的最大振幅
+    public int getPeak(int from, int to) {
+        return Math.max(-getMin(from, to), getMax(from, to));
+    }
+
+    // [from, to) 内各点振幅之和
+    public long getSum(int from, int to) {
+        from = Math.max(from, 0);
+        to = Math.min(to, mLength);
+        if (from >= to) {
+            return 0;
+        }
+        return prefixSum(to) - prefixSum(from);
+    }
+
+    // [from, to) 内的平均振幅, 区间为空时返回 0
+    public double getAverage(int from, int to) {
+        from = Math.max(from, 0);
+        to = Math.min(to, mLength);
+        return from >= to ? 0 : (double) getSum(from, to) / (to - from);
+    }
+
+    // from 及之后第一个振幅不低于 threshold 的点, 没有时返回 -1
+    public int nextAbove(int from, int threshold) {
+        for (int i = Math.max(from, 0); i < mLength; ) {
+            int block = i / BLOCK_SIZE;
+            if (-mMinTable[0][block] < threshold && mMaxTable[0][block] < threshold) {
+                // 整块都低于阈值
+                i = (block + 1) * BLOCK_SIZE;
+                continue;
+            }
+            if (amplitude(i) >= threshold) {
+                return i;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    // from 及之后第一个振幅低于 threshold 的点, 没有时返回 length
+    public int nextBelow(int from, int threshold) {
+        for (int i = Math.max(from, 0); i < mLength; ) {
+            int block = i / BLOCK_SIZE;
+            if (mBlockQuietest[block] >= threshold) {
+                // 整块都不低于阈值
+                i = (block + 1) * BLOCK_SIZE;
+                continue;
+            }
+            if (amplitude(i) < threshold) {
+                return i;
+            }
+            i++;
+        }
+        return mLength;
+    }
+
+    private long prefixSum(int pixel) {
+        int block = pixel / BLOCK_SIZE;
+        long sum = mBlockSums[block];
+        for (int i = block * BLOCK_SIZE; i < pixel; i++) {
+            sum += amplitude(i);
+        }
+        return sum;
+    }
+
+    private int amplitude(int pixel) {
+        return Math.max(-pixelMin(pixel), pixelMax(pixel));
+    }
+
+    private int pixelMin(int pixel) {
+        int min = mInfo.getMin(0, pixel);
+        for (int channel = 1; channel < mChannels; channel++) {
+            min = Math.min(min, mInfo.getMin(channel, pixel));
+        }
+        return min;
+    }
+
+    private int pixelMax(int pixel) {
+        int max = mInfo.getMax(0, pixel);
+        for (int channel = 1; channel < mChannels; channel++) {
+            max = Math.max(max, mInfo.getMax(channel, pixel));
+        }
+        return max;
+    }
+
+    private static int log2(int value) {
+        return 31 - Integer.numberOfLeadingZeros(value);
+    }
+}
@@ -0,0 +1,52 @@
+package me.relex.widget.waveform;
+
+/**
+ * 波形上的一个区域 [start, end] (秒), 起止相同时为标记
+ *
+ * 起止时间只能通过 {@link WaveRegionStore#setRange} 修改, 以便更新索引
+ */
+public final class WaveRegion {
+
+    private double mStart;
+    private double mEnd;
+    private final int mColor;
+    private final Object mTag;
+
+    // color 为 ARGB, 区域通常使用半透明颜色
+    public WaveRegion(double start, double end, int color, Object tag) {
+        mStart = Math.min(start, end);
+        mEnd = Math.max(start, end);
+        mColor = color;
+        mTag = tag;
+    }
+
+    public static WaveRegion marker(double second, int color, Object tag) {
+        return new WaveRegion(second, second, color, tag);
+    }
+
+    public double getStart() {
+        return mStart;
+    }
+
+    public double getEnd() {
+        return mEnd;
+    }
+
+    public int getColor() {
+        return mColor;
+    }
+
+    // 调用方附加的数据, 如字幕文本或章节标题
+    public Object getTag() {
+        return mTag;
+    }
+
+    public boolean isMarker() {
+        return mStart == mEnd;
+    }
+
+    void setRange(double start, double end) {
+        mStart = Math.min(start, end);
+        mEnd = Math.max(start, end);
+    }
+}
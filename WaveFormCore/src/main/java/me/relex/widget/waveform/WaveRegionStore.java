@@ -0,0 +1,328 @@
+package me.relex.widget.waveform;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * 区域和标记的集合, 按区间建立索引: 查询与时间段相交的区域为 O(log n + 命中数)
+ *
+ * 区域按起点排序, 在排序后的数组上建一棵记录子树最大终点的线段树。查询 [start, end] 时,
+ * 只在起点不晚于 end 的前缀中查找, 并跳过最大终点早于 start 的子树。
+ * setRange 只更新该区域的叶子和祖先, 起点越过相邻区域时逐个交换, 拖动时为 O(log n);
+ * add / remove 在数组中移动后面的区域, 不重新排序; addAll / removeAll / clear 在下一次查询时重建。
+ * 批量修改放在 beginBatch / endBatch 之间只通知一次。
+ * 只能在主线程使用。
+ */
+public final class WaveRegionStore {
+
+    public interface Listener {
+        void onRegionsChanged(WaveRegionStore store);
+    }
+
+    public static final int EDGE_NONE = 0;
+    public static final int EDGE_START = 1;
+    public static final int EDGE_END = 2;
+
+    private static final WaveRegion[] EMPTY = new WaveRegion[0];
+
+    private static final Comparator<WaveRegion> START_ORDER = new Comparator<WaveRegion>() {
+        @Override public int compare(WaveRegion lhs, WaveRegion rhs) {
+            return Double.compare(lhs.getStart(), rhs.getStart());
+        }
+    };
+
+    private final ArrayList<WaveRegion> mRegions = new ArrayList<>();
+    private final ArrayList<Listener> mListeners = new ArrayList<>();
+    private int mBatchDepth;
+    private boolean mChangedInBatch;
+
+    // 索引: 按起点排序的区域, 以及叶子为各区域终点的最大值线段树;
+    // 数组容量为叶子数, 前 mSize 个有效
+    private boolean mDirty;
+    private WaveRegion[] mSorted = EMPTY;
+    private double[] mStarts = new double[0];
+    private double[] mMaxEnds = new double[0];
+    private int mLeafCount;
+    private int mSize;
+
+    private final ArrayList<WaveRegion> mHits = new ArrayList<>();
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    public void add(WaveRegion region) {
+        mRegions.add(region);
+        if (!mDirty && mSize < mLeafCount) {
+            int index = upperBound(region.getStart());
+            System.arraycopy(mSorted, index, mSorted, index + 1, mSize - index);
+            System.arraycopy(mStarts, index, mStarts, index + 1, mSize - index);
+            mSorted[index] = region;
+            mStarts[index] = region.getStart();
+            mSize++;
+            updateLeaves(index, mSize);
+        } else {
+            mDirty = true;
+        }
+        changed();
+    }
+
+    public void addAll(Collection<? extends WaveRegion> regions) {
+        mRegions.addAll(regions);
+        mDirty = true;
+        changed();
+    }
+
+    public boolean remove(WaveRegion region) {
+        if (!mRegions.remove(region)) {
+            return false;
+        }
+        int index = mDirty ? -1 : indexOf(region);
+        if (index >= 0) {
+            int oldSize = mSize;
+            mSize--;
+            System.arraycopy(mSorted, index + 1, mSorted, index, mSize - index);
+            System.arraycopy(mStarts, index + 1, mStarts, index, mSize - index);
+            mSorted[mSize] = null;
+            updateLeaves(index, oldSize);
+        } else {
+            mDirty = true;
+        }
+        changed();
+        return true;
+    }
+
+    public void removeAll(Collection<? extends WaveRegion> regions) {
+        if (mRegions.removeAll(new HashSet<>(regions))) {
+            mDirty = true;
+            changed();
+        }
+    }
+
+    public void clear() {
+        mRegions.clear();
+        mDirty = true;
+        changed();
+    }
+
+    // 修改区域的起止时间, start 晚于 end 时交换
+    public void setRange(WaveRegion region, double start, double end) {
+        int from = mDirty ? -1 : indexOf(region);
+        region.setRange(start, end);
+        if (from >= 0) {
+            // 起点越过相邻区域时逐个后移/前移, 保持有序
+            double newStart = region.getStart();
+            int to = from;
+            while (to > 0 && mStarts[to - 1] > newStart) {
+                mSorted[to] = mSorted[to - 1];
+                mStarts[to] = mStarts[to - 1];
+                to--;
+            }
+            while (to + 1 < mSize && mStarts[to + 1] < newStart) {
+                mSorted[to] = mSorted[to + 1];
+                mStarts[to] = mStarts[to + 1];
+                to++;
+            }
+            mSorted[to] = region;
+            mStarts[to] = newStart;
+            updateLeaves(Math.min(from, to), Math.max(from, to) + 1);
+        }
+        changed();
+    }
+
+    public int size() {
+        return mRegions.size();
+    }
+
+    // 之后的修改只在最外层的 endBatch 时通知一次
+    public void beginBatch() {
+        mBatchDepth++;
+    }
+
+    public void endBatch() {
+        if (mBatchDepth > 0 && --mBatchDepth == 0 && mChangedInBatch) {
+            mChangedInBatch = false;
+            notifyChanged();
+        }
+    }
+
+    /**
+     * 把与 [start, end] 相交 (包括端点相接) 的区域按起点顺序追加到 out
+     *
+     * @return 追加的个数
+     */
+    public int query(double start, double end, List<WaveRegion> out) {
+        ensureIndex();
+        int count = upperBound(end);
+        if (count == 0) {
+            return 0;
+        }
+        int size = out.size();
+        collect(1, 0, mLeafCount, count, start, out);
+        return out.size() - size;
+    }
+
+    /**
+     * 点击位置 second 处的区域: 优先边缘在 tolerance 内且最近的区域 (含标记),
+     * 否则为包含该位置的最短区域; 没有时返回 null
+     */
+    public WaveRegion findAt(double second, double tolerance) {
+        ArrayList<WaveRegion> hits = mHits;
+        hits.clear();
+        query(second - tolerance, second + tolerance, hits);
+
+        WaveRegion nearestEdge = null;
+        double nearestDistance = tolerance;
+        WaveRegion shortest = null;
+        for (int i = 0, size = hits.size(); i < size; i++) {
+            WaveRegion region = hits.get(i);
+            double distance = Math.min(Math.abs(second - region.getStart()),
+                    Math.abs(second - region.getEnd()));
+            if (distance <= nearestDistance) {
+                nearestDistance = distance;
+                nearestEdge = region;
+            }
+            if (region.getStart() <= second && second <= region.getEnd()
+                    && (shortest == null || region.getEnd() - region.getStart()
+                    < shortest.getEnd() - shortest.getStart())) {
+                shortest = region;
+            }
+        }
+        hits.clear();
+        return nearestEdge != null ? nearestEdge : shortest;
+    }
+
+    // second 靠近区域的哪一端, 标记返回 EDGE_START
+    public static int edgeAt(WaveRegion region, double second, double tolerance) {
+        double toStart = Math.abs(second - region.getStart());
+        double toEnd = Math.abs(second - region.getEnd());
+        if (Math.min(toStart, toEnd) > tolerance) {
+            return EDGE_NONE;
+        }
+        return toStart <= toEnd ? EDGE_START : EDGE_END;
+    }
+
+    // 通知监听者; 索引需要整体重建时调用方先设置 mDirty
+    private void changed() {
+        if (mBatchDepth > 0) {
+            mChangedInBatch = true;
+        } else {
+            notifyChanged();
+        }
+    }
+
+    private void notifyChanged() {
+        for (int i = mListeners.size() - 1; i >= 0; i--) {
+            mListeners.get(i).onRegionsChanged(this);
+        }
+    }
+
+    private void ensureIndex() {
+        if (!mDirty) {
+            return;
+        }
+        mDirty = false;
+        int size = mRegions.size();
+        // 至少留一个空位, 之后的 add 可以直接插入
+        int leafCount = 1;
+        while (leafCount <= size) {
+            leafCount <<= 1;
+        }
+        WaveRegion[] sorted = mRegions.toArray(new WaveRegion[leafCount]);
+        Arrays.sort(sorted, 0, size, START_ORDER);
+        double[] starts = new double[leafCount];
+        double[] maxEnds = new double[leafCount * 2];
+        Arrays.fill(maxEnds, Double.NEGATIVE_INFINITY);
+        for (int i = 0; i < size; i++) {
+            starts[i] = sorted[i].getStart();
+            maxEnds[leafCount + i] = sorted[i].getEnd();
+        }
+        for (int node = leafCount - 1; node >= 1; node--) {
+            maxEnds[node] = Math.max(maxEnds[node * 2], maxEnds[node * 2 + 1]);
+        }
+        mSorted = sorted;
+        mStarts = starts;
+        mMaxEnds = maxEnds;
+        mLeafCount = leafCount;
+        mSize = size;
+    }
+
+    // 重新计算叶子 [from, to) 的终点及其祖先, 超出 mSize 的叶子为空
+    private void updateLeaves(int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        double[] maxEnds = mMaxEnds;
+        for (int i = from; i < to; i++) {
+            maxEnds[mLeafCount + i] = i < mSize ? mSorted[i].getEnd() : Double.NEGATIVE_INFINITY;
+        }
+        int low = (mLeafCount + from) >>> 1;
+        int high = (mLeafCount + to - 1) >>> 1;
+        while (low >= 1) {
+            for (int node = low; node <= high; node++) {
+                maxEnds[node] = Math.max(maxEnds[node * 2], maxEnds[node * 2 + 1]);
+            }
+            low >>>= 1;
+            high >>>= 1;
+        }
+    }
+
+    // region 在 mSorted 中的下标, 不在其中时返回 -1
+    private int indexOf(WaveRegion region) {
+        double start = region.getStart();
+        int low = 0;
+        int high = mSize;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mStarts[mid] < start) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < mSize && mStarts[i] == start; i++) {
+            if (mSorted[i] == region) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // 起点不晚于 second 的区域个数
+    private int upperBound(double second) {
+        int low = 0;
+        int high = mSize;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mStarts[mid] <= second) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // 节点 node 覆盖 [from, to), 收集下标小于 count 且终点不早于 start 的区域
+    private void collect(int node, int from, int to, int count, double start,
+            List<WaveRegion> out) {
+        if (from >= count || mMaxEnds[node] < start) {
+            return;
+        }
+        if (to - from == 1) {
+            out.add(mSorted[from]);
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        collect(node * 2, from, mid, count, start, out);
+        collect(node * 2 + 1, mid, to, count, start, out);
+    }
+}
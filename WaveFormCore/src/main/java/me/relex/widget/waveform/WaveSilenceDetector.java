@@ -0,0 +1,304 @@
+package me.relex.widget.waveform;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * 静音检测: 找出振幅低于阈值且不短于最短时长的区间, 用于按静音自动分段或跳过静音
+ *
+ * 数据按 CHUNK_PIXELS 分段并行处理, 各段的结果在边界处拼接。
+ * 第一次检测时并行计算每个点的振幅 (所有声道合并) 和每 64 个点的最小 / 最大振幅, 之后:
+ * 改变阈值只重新扫描, 整块高于或低于阈值的部分不逐点比较; 只改变最短时长时直接复用上次的扫描结果;
+ * 数据在末尾追加后只计算新增部分的振幅。额外内存约为每个点 2 字节。
+ */
+public final class WaveSilenceDetector {
+
+    public static final int CHUNK_PIXELS = 64 * 1024;
+
+    private static final int BLOCK_SIZE = 64;
+
+    private final WaveFormInfo mInfo;
+    private int mLength;
+    // 每个点的振幅 max(-min, max), 以及每块内振幅的最小 / 最大值
+    private char[] mAmplitudes = new char[0];
+    private char[] mBlockMins = new char[0];
+    private char[] mBlockMaxs = new char[0];
+
+    // 上一次阈值下的全部静音段 (未按最短时长过滤), [start, end) 成对存放
+    private int mLastThreshold = -1;
+    private int mLastLength;
+    private Runs mLastRuns;
+
+    public WaveSilenceDetector(WaveFormInfo info) {
+        mInfo = info;
+    }
+
+    /**
+     * @param threshold 相对满刻度的振幅, 0 ~ 1, 低于该值视为静音
+     * @param minSeconds 静音段的最短时长
+     * @param executor 并行执行各段, 为 null 时在当前线程依次执行
+     */
+    public synchronized Result detect(float threshold, double minSeconds,
+            ExecutorService executor) throws InterruptedException {
+        int fullScale = mInfo.getBits() == 8 ? 128 : 32768;
+        int level = (int) Math.ceil(threshold * fullScale);
+        updateAmplitudes(executor);
+
+        if (level != mLastThreshold || mLength != mLastLength || mLastRuns == null) {
+            mLastRuns = scan(level, executor);
+            mLastThreshold = level;
+            mLastLength = mLength;
+        }
+
+        int minPixels = (int) Math.ceil(
+                minSeconds * mInfo.getSample_rate() / mInfo.getSamples_per_pixel());
+        Runs runs = mLastRuns;
+        Runs silences = new Runs();
+        for (int i = 0; i < runs.size; i += 2) {
+            if (runs.data[i + 1] - runs.data[i] >= Math.max(minPixels, 1)) {
+                silences.add(runs.data[i], runs.data[i + 1]);
+            }
+        }
+        return new Result(silences, mInfo.getSample_rate(), mInfo.getSamples_per_pixel());
+    }
+
+    // 计算 [mLength, length) 的振幅; 从所在块的起点开始, 以便重新统计不满的末块
+    private void updateAmplitudes(ExecutorService executor) throws InterruptedException {
+        final int length = mInfo.getLength();
+        if (length == mLength) {
+            return;
+        }
+        int from = mLength / BLOCK_SIZE * BLOCK_SIZE;
+        if (mAmplitudes.length < length) {
+            // 按倍数扩容, 录音时逐次追加不必每次复制全部振幅
+            int capacity = Math.max(length, mAmplitudes.length * 2);
+            int blocks = (capacity + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            char[] amplitudes = new char[capacity];
+            char[] blockMins = new char[blocks];
+            char[] blockMaxs = new char[blocks];
+            System.arraycopy(mAmplitudes, 0, amplitudes, 0, from);
+            System.arraycopy(mBlockMins, 0, blockMins, 0, from / BLOCK_SIZE);
+            System.arraycopy(mBlockMaxs, 0, blockMaxs, 0, from / BLOCK_SIZE);
+            mAmplitudes = amplitudes;
+            mBlockMins = blockMins;
+            mBlockMaxs = blockMaxs;
+        }
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int start = from; start < length; start += CHUNK_PIXELS) {
+            final int chunkStart = start;
+            final int chunkEnd = Math.min(start + CHUNK_PIXELS, length);
+            tasks.add(new Callable<Void>() {
+                @Override public Void call() {
+                    computeAmplitudes(chunkStart, chunkEnd);
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks, executor);
+        mLength = length;
+    }
+
+    // 各段写入互不重叠的下标范围, 段的起点与块对齐
+    private void computeAmplitudes(int from, int to) {
+        WaveFormInfo info = mInfo;
+        int channels = info.getChannels();
+        char[] amplitudes = mAmplitudes;
+        for (int blockStart = from; blockStart < to; blockStart += BLOCK_SIZE) {
+            int blockEnd = Math.min(blockStart + BLOCK_SIZE, to);
+            int blockMin = Integer.MAX_VALUE;
+            int blockMax = 0;
+            for (int i = blockStart; i < blockEnd; i++) {
+                int amplitude = 0;
+                for (int channel = 0; channel < channels; channel++) {
+                    amplitude = Math.max(amplitude, Math.max(-info.getMin(channel, i),
+                            info.getMax(channel, i)));
+                }
+                amplitudes[i] = (char) amplitude;
+                blockMin = Math.min(blockMin, amplitude);
+                blockMax = Math.max(blockMax, amplitude);
+            }
+            mBlockMins[blockStart / BLOCK_SIZE] = (char) blockMin;
+            mBlockMaxs[blockStart / BLOCK_SIZE] = (char) blockMax;
+        }
+    }
+
+    private Runs scan(final int level, ExecutorService executor) throws InterruptedException {
+        List<Callable<Runs>> tasks = new ArrayList<>();
+        for (int start = 0; start < mLength; start += CHUNK_PIXELS) {
+            final int chunkStart = start;
+            final int chunkEnd = Math.min(start + CHUNK_PIXELS, mLength);
+            tasks.add(new Callable<Runs>() {
+                @Override public Runs call() {
+                    return scanChunk(chunkStart, chunkEnd, level);
+                }
+            });
+        }
+        List<Runs> chunks = invokeAll(tasks, executor);
+
+        // 拼接: 上一段的静音延续到本段起点时合并为一段
+        Runs runs = new Runs();
+        for (Runs chunk : chunks) {
+            int i = 0;
+            if (chunk.size > 0 && runs.size > 0 && runs.data[runs.size - 1] == chunk.data[0]) {
+                runs.data[runs.size - 1] = chunk.data[1];
+                i = 2;
+            }
+            for (; i < chunk.size; i += 2) {
+                runs.add(chunk.data[i], chunk.data[i + 1]);
+            }
+        }
+        return runs;
+    }
+
+    private Runs scanChunk(int from, int to, int level) {
+        Runs runs = new Runs();
+        char[] amplitudes = mAmplitudes;
+        int runStart = -1;
+        for (int blockStart = from; blockStart < to; blockStart += BLOCK_SIZE) {
+            int block = blockStart / BLOCK_SIZE;
+            if (mBlockMaxs[block] < level) {
+                // 整块静音
+                if (runStart < 0) {
+                    runStart = blockStart;
+                }
+                continue;
+            }
+            if (mBlockMins[block] >= level) {
+                // 整块都不是静音
+                if (runStart >= 0) {
+                    runs.add(runStart, blockStart);
+                    runStart = -1;
+                }
+                continue;
+            }
+            int blockEnd = Math.min(blockStart + BLOCK_SIZE, to);
+            for (int i = blockStart; i < blockEnd; i++) {
+                if (amplitudes[i] < level) {
+                    if (runStart < 0) {
+                        runStart = i;
+                    }
+                } else if (runStart >= 0) {
+                    runs.add(runStart, i);
+                    runStart = -1;
+                }
+            }
+        }
+        if (runStart >= 0) {
+            runs.add(runStart, to);
+        }
+        return runs;
+    }
+
+    private static <T> List<T> invokeAll(List<Callable<T>> tasks, ExecutorService executor)
+            throws InterruptedException {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (executor == null) {
+            for (Callable<T> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (Exception e) {
+                    throw rethrow(e);
+                }
+            }
+            return results;
+        }
+        for (Future<T> future : executor.invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                throw rethrow(e.getCause());
+            }
+        }
+        return results;
+    }
+
+    // 任务只会抛出运行时异常
+    private static RuntimeException rethrow(Throwable throwable) {
+        if (throwable instanceof RuntimeException) {
+            throw (RuntimeException) throwable;
+        }
+        if (throwable instanceof Error) {
+            throw (Error) throwable;
+        }
+        throw new IllegalStateException(throwable);
+    }
+
+    // 成对存放的 [start, end)
+    private static final class Runs {
+        int[] data = new int[16];
+        int size;
+
+        void add(int start, int end) {
+            if (size + 2 > data.length) {
+                int[] grown = new int[data.length * 2];
+                System.arraycopy(data, 0, grown, 0, size);
+                data = grown;
+            }
+            data[size++] = start;
+            data[size++] = end;
+        }
+    }
+
+    /**
+     * 一次检测的静音段, 按时间顺序
+     */
+    public static final class Result {
+
+        private final int[] mRuns;
+        private final int mCount;
+        private final int mSampleRate;
+        private final int mSamplesPerPixel;
+
+        Result(Runs runs, int sampleRate, int samplesPerPixel) {
+            mRuns = runs.data;
+            mCount = runs.size / 2;
+            mSampleRate = sampleRate;
+            mSamplesPerPixel = samplesPerPixel;
+        }
+
+        public int size() {
+            return mCount;
+        }
+
+        public int getStartPixel(int index) {
+            return mRuns[index * 2];
+        }
+
+        // 不包含
+        public int getEndPixel(int index) {
+            return mRuns[index * 2 + 1];
+        }
+
+        public double getStart(int index) {
+            return WaveUtil.dataPixelsToSecond(getStartPixel(index), mSampleRate,
+                    mSamplesPerPixel);
+        }
+
+        public double getEnd(int index) {
+            return WaveUtil.dataPixelsToSecond(getEndPixel(index), mSampleRate,
+                    mSamplesPerPixel);
+        }
+
+        public double getTotalSeconds() {
+            long pixels = 0;
+            for (int i = 0; i < mCount; i++) {
+                pixels += getEndPixel(i) - getStartPixel(i);
+            }
+            return WaveUtil.dataPixelsToSecond((int) Math.min(pixels, Integer.MAX_VALUE),
+                    mSampleRate, mSamplesPerPixel);
+        }
+
+        // 转换为区域, 加入 WaveRegionStore 后在视图中显示为阴影
+        public List<WaveRegion> toRegions(int color, Object tag) {
+            List<WaveRegion> regions = new ArrayList<>(mCount);
+            for (int i = 0; i < mCount; i++) {
+                regions.add(new WaveRegion(getStart(i), getEnd(i), color, tag));
+            }
+            return regions;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package me.relex.widget.waveform;
+
+/**
+ * 时间轴刻度: 计算刻度间隔, 把刻度时间格式化到可复用的 char[], 不分配对象
+ */
+public final class WaveTimeLabels {
+
+    // "12s"
+    public static final int FORMAT_SECONDS = 0;
+    // "1:05"
+    public static final int FORMAT_MINUTES = 1;
+    // "1:02:05"
+    public static final int FORMAT_HOURS = 2;
+
+    // 格式化结果的最大长度, 足够存放 int 范围内的 h:mm:ss
+    public static final int MAX_LENGTH = 16;
+
+    private static final int[] SECOND_STEPS = { 1, 2, 5, 10, 20, 30 }; //  秒数间隔区间
+
+    private WaveTimeLabels() {
+    }
+
+    // 按总时长选择格式, 同一个波形的刻度使用同一种格式
+    public static int formatFor(double totalSeconds) {
+        if (totalSeconds >= 3600) {
+            return FORMAT_HOURS;
+        } else if (totalSeconds >= 60) {
+            return FORMAT_MINUTES;
+        }
+        return FORMAT_SECONDS;
+    }
+
+    /**
+     * 计算刻度的时间间隔: 在 1s, 2s, 5s, 10s, 20s, 30s (及其分钟、小时倍数) 中,
+     * 选择相邻刻度距离不小于 minSpace 像素的最小间隔
+     */
+    public static int intervalSeconds(int sampleRate, int samplesPerPixel, float scale,
+            int minSpace) {
+        int baseSecs = 1; // seconds
+        int index = 0;
+        while (true) {
+            int second = baseSecs * SECOND_STEPS[index];
+            int pixels = WaveUtil.secondsToPixels(second, sampleRate, samplesPerPixel, scale);
+            if (pixels >= minSpace || baseSecs > Integer.MAX_VALUE / 60 / 30) {
+                // Spacing OK
+                return second;
+            }
+            if (++index == SECOND_STEPS.length) {
+                baseSecs *= 60; // seconds -> minutes -> hours
+                index = 0;
+            }
+        }
+    }
+
+    /**
+     * 把 second 按 format 写入 buffer, 返回字符数; buffer 长度不小于 {@link #MAX_LENGTH}
+     */
+    public static int format(int second, int format, char[] buffer) {
+        int length = 0;
+        if (second < 0) {
+            buffer[length++] = '-';
+            second = -second;
+        }
+        if (format == FORMAT_SECONDS) {
+            length = appendInt(buffer, length, second);
+            buffer[length++] = 's';
+            return length;
+        }
+        int minutes = second / 60;
+        if (format == FORMAT_HOURS) {
+            length = appendInt(buffer, length, minutes / 60);
+            buffer[length++] = ':';
+            length = appendTwoDigits(buffer, length, minutes % 60);
+        } else {
+            length = appendInt(buffer, length, minutes);
+        }
+        buffer[length++] = ':';
+        return appendTwoDigits(buffer, length, second % 60);
+    }
+
+    private static int appendInt(char[] buffer, int offset, int value) {
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return offset + digits;
+    }
+
+    private static int appendTwoDigits(char[] buffer, int offset, int value) {
+        buffer[offset] = (char) ('0' + value / 10);
+        buffer[offset + 1] = (char) ('0' + value % 10);
+        return offset + 2;
+    }
+}
@@ -0,0 +1,158 @@
+package me.relex.widget.waveform;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * src/test/resources/wav 下的测试音频: 8000 Hz, 1050 帧
+ *
+ * 第 0 帧为正满刻度 (float 为 2.0, 超出范围), 第 1 帧为负满刻度 (float 为 -0.5),
+ * 之后到第 100 帧为静音 (16 位立体声的第二声道为 1000), 其余为 440 Hz 正弦波
+ */
+final class WavFixture {
+
+    final int sampleRate;
+    final int channels;
+    final int bits;
+    final boolean isFloat;
+    // data 块内容
+    final ByteBuffer data;
+
+    private WavFixture(int sampleRate, int channels, int bits, boolean isFloat, ByteBuffer data) {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.bits = bits;
+        this.isFloat = isFloat;
+        this.data = data;
+    }
+
+    static WavFixture load(String name) throws IOException {
+        InputStream inputStream = WavFixture.class.getResourceAsStream("/wav/" + name);
+        if (inputStream == null) {
+            throw new IOException("Missing fixture " + name);
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = inputStream.read(buffer)) > 0) {
+                outputStream.write(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(outputStream.toByteArray())
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        int formatTag = 0;
+        int channels = 0;
+        int sampleRate = 0;
+        int bits = 0;
+        // 跳过 "RIFF" size "WAVE", 之后按块查找 fmt 和 data
+        int position = 12;
+        while (position + 8 <= buffer.limit()) {
+            int id = buffer.getInt(position);
+            int size = buffer.getInt(position + 4);
+            int body = position + 8;
+            if (id == 0x20746d66) {
+                // "fmt "
+                formatTag = buffer.getShort(body) & 0xffff;
+                channels = buffer.getShort(body + 2);
+                sampleRate = buffer.getInt(body + 4);
+                bits = buffer.getShort(body + 14);
+            } else if (id == 0x61746164) {
+                // "data"
+                buffer.position(body);
+                buffer.limit(body + size);
+                return new WavFixture(sampleRate, channels, bits, formatTag == 3,
+                        buffer.slice().order(ByteOrder.LITTLE_ENDIAN));
+            }
+            position = body + size + (size & 1);
+        }
+        throw new IOException("No data chunk in " + name);
+    }
+
+    int format() {
+        if (isFloat) {
+            return WaveFormGenerator.FORMAT_PCM_FLOAT;
+        }
+        switch (bits) {
+            case 8:
+                return WaveFormGenerator.FORMAT_PCM_8;
+            case 16:
+                return WaveFormGenerator.FORMAT_PCM_16;
+            default:
+                return WaveFormGenerator.FORMAT_PCM_24;
+        }
+    }
+
+    int frames() {
+        return data.remaining() / (channels * bits / 8);
+    }
+
+    // 由 WaveFormGenerator 生成峰值, samplesPerPixel 为 1 时每帧一个像素点
+    static WaveFormInfo peaks(String name, int samplesPerPixel, int outputBits)
+            throws IOException {
+        WavFixture wav = load(name);
+        return new WaveFormGenerator(wav.sampleRate, wav.channels, wav.format(), samplesPerPixel,
+                outputBits).generate(wav.data);
+    }
+
+    // 前 length 个像素点的副本, 存储格式与 info 相同
+    static WaveFormInfo head(WaveFormInfo info, int length) {
+        WaveFormInfo head = new WaveFormInfo();
+        head.setSample_rate(info.getSample_rate());
+        head.setSamples_per_pixel(info.getSamples_per_pixel());
+        head.setBits(info.getBits());
+        head.setChannels(info.getChannels());
+        short[] peaks = copyPeaks(info, length);
+        if (info.getBits() == 8) {
+            byte[] bytes = new byte[peaks.length];
+            for (int i = 0; i < peaks.length; i++) {
+                bytes[i] = (byte) peaks[i];
+            }
+            head.setPeaks(bytes);
+        } else {
+            head.setPeaks(peaks);
+        }
+        return head;
+    }
+
+    // 按存储格式 (每个像素点按声道顺序存放 min/max) 复制前 length 个像素点
+    static short[] copyPeaks(WaveFormInfo info, int length) {
+        int channels = info.getChannels();
+        short[] peaks = new short[length * channels * 2];
+        for (int pixel = 0; pixel < length; pixel++) {
+            for (int channel = 0; channel < channels; channel++) {
+                int offset = (pixel * channels + channel) * 2;
+                peaks[offset] = (short) info.getMin(channel, pixel);
+                peaks[offset + 1] = (short) info.getMax(channel, pixel);
+            }
+        }
+        return peaks;
+    }
+
+    // 独立于 WaveFormGenerator 的解码, 转换到 16 位范围
+    int sample(int frame, int channel) {
+        int bytes = bits / 8;
+        int position = (frame * channels + channel) * bytes;
+        if (isFloat) {
+            float value = data.getFloat(position) * 32767f;
+            return (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+        }
+        switch (bits) {
+            case 8:
+                return ((data.get(position) & 0xff) - 128) * 256;
+            case 16:
+                return data.getShort(position);
+            default: {
+                int value = (data.get(position) & 0xff) | (data.get(position + 1) & 0xff) << 8
+                        | data.get(position + 2) << 16;
+                return value >> 8;
+            }
+        }
+    }
+}
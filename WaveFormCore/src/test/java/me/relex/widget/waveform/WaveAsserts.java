@@ -0,0 +1,21 @@
+package me.relex.widget.waveform;
+
+import static org.junit.Assert.assertEquals;
+
+final class WaveAsserts {
+
+    private WaveAsserts() {
+    }
+
+    static void assertSamePeaks(WaveFormInfo expected, WaveFormInfo actual) {
+        assertEquals(expected.getLength(), actual.getLength());
+        assertEquals(expected.getChannels(), actual.getChannels());
+        assertEquals(expected.getBits(), actual.getBits());
+        for (int pixel = 0; pixel < expected.getLength(); pixel++) {
+            for (int channel = 0; channel < expected.getChannels(); channel++) {
+                assertEquals(expected.getMin(channel, pixel), actual.getMin(channel, pixel));
+                assertEquals(expected.getMax(channel, pixel), actual.getMax(channel, pixel));
+            }
+        }
+    }
+}
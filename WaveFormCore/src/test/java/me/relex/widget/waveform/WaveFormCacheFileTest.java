@@ -0,0 +1,130 @@
+package me.relex.widget.waveform;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static me.relex.widget.waveform.WaveAsserts.assertSamePeaks;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+
+public class WaveFormCacheFileTest {
+
+    private File mFile;
+
+    @Before public void setUp() throws IOException {
+        mFile = File.createTempFile("wfc", ".wfc");
+    }
+
+    @After public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test public void roundTripWithLevels() throws Exception {
+        for (String name : new String[] { "pcm8_mono.wav", "pcm16_stereo.wav" }) {
+            for (int bits : new int[] { 8, 16 }) {
+                WaveFormInfo wave = WavFixture.peaks(name, 1, bits);
+                // 空波形, 只有一层, 奇数长度的末尾半个点, 以及完整的 1050 点
+                for (int length : new int[] { 0, 1, 2, 3, wave.getLength() }) {
+                    WaveFormInfo info = WavFixture.head(wave, length);
+                    WaveFormCacheFile.write(info, mFile, true);
+                    MappedWaveFormInfo mapped = WaveFormCacheFile.read(mFile, true);
+                    assertFalse(mapped.isInMemory());
+                    assertEquals(info.getSample_rate(), mapped.getSample_rate());
+                    assertEquals(info.getSamples_per_pixel(), mapped.getSamples_per_pixel());
+                    // 文件中的各层与堆中生成的层级一致
+                    for (int level = 0; level < 16; level++) {
+                        WaveFormInfo expected = info.getLevel(level);
+                        WaveFormInfo actual = mapped.getLevel(level);
+                        assertEquals(expected.getSamples_per_pixel(),
+                                actual.getSamples_per_pixel());
+                        assertSamePeaks(expected, actual);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test public void withoutLevels() throws Exception {
+        WaveFormInfo info = WavFixture.peaks("float_mono.wav", 4, 16);
+        WaveFormCacheFile.write(info, mFile, false);
+        MappedWaveFormInfo mapped = WaveFormCacheFile.read(mFile);
+        assertSamePeaks(info, mapped);
+        // 文件中没有层级时从映射数据生成, 与堆中数据生成的层级一致
+        for (int level = 1; info.getLevel(level - 1).getLength() > 1; level++) {
+            WaveFormInfo coarse = mapped.getLevel(level);
+            assertNotSame(mapped, coarse);
+            assertEquals(info.getSamples_per_pixel() << level, coarse.getSamples_per_pixel());
+            assertSamePeaks(info.getLevel(level), coarse);
+        }
+    }
+
+    @Test public void mapWithLevels() throws Exception {
+        WaveFormInfo info = WavFixture.peaks("pcm16_stereo.wav", 1, 8);
+        WaveFormCacheFile.write(info, mFile, false);
+        MappedWaveFormInfo flat = WaveFormCacheFile.read(mFile);
+
+        File levels = File.createTempFile("wfc", ".wfc");
+        try {
+            MappedWaveFormInfo mapped = WaveFormCacheFile.mapWithLevels(flat, levels);
+            for (int level = 0; level < 13; level++) {
+                assertSamePeaks(info.getLevel(level), mapped.getLevel(level));
+            }
+        } finally {
+            levels.delete();
+        }
+    }
+
+    @Test public void detectsCorruptPeaks() throws Exception {
+        WaveFormCacheFile.write(WavFixture.peaks("pcm24_mono.wav", 1, 16), mFile, true);
+        // 第 0 层原始峰值的中间
+        flipByte(WaveFormCacheFile.HEADER_SIZE + 1000);
+        // 打开时只检查文件头
+        WaveFormCacheFile.read(mFile);
+        try {
+            WaveFormCacheFile.read(mFile, true);
+            fail("corrupt peaks not detected");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test public void detectsCorruptHeader() throws Exception {
+        WaveFormCacheFile.write(WavFixture.peaks("pcm24_mono.wav", 1, 16), mFile, true);
+        flipByte(20);
+        try {
+            WaveFormCacheFile.read(mFile);
+            fail("corrupt header not detected");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test(expected = IOException.class) public void rejectsTruncated() throws Exception {
+        WaveFormCacheFile.write(WavFixture.peaks("pcm8_mono.wav", 1, 8), mFile, true);
+        byte[] bytes = new byte[(int) mFile.length() - 8];
+        RandomAccessFile file = new RandomAccessFile(mFile, "r");
+        try {
+            file.readFully(bytes);
+        } finally {
+            file.close();
+        }
+        WaveFormCacheFile.read(ByteBuffer.wrap(bytes));
+    }
+
+    private void flipByte(long position) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0x55);
+        } finally {
+            file.close();
+        }
+    }
+}
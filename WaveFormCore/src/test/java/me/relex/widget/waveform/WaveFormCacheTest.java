@@ -0,0 +1,132 @@
+package me.relex.widget.waveform;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static me.relex.widget.waveform.WaveAsserts.assertSamePeaks;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class WaveFormCacheTest {
+
+    private static final String URI = "file:///sdcard/test.wav";
+
+    private File mDirectory;
+
+    @Before public void setUp() throws IOException {
+        mDirectory = File.createTempFile("wfcache", "");
+        mDirectory.delete();
+        mDirectory.mkdirs();
+    }
+
+    @After public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test public void concurrentLoadsShareOneLoad() throws Exception {
+        final WaveFormInfo wave = WavFixture.peaks("pcm16_stereo.wav", 1, 16);
+        final WaveFormCache cache = new WaveFormCache(mDirectory, 1 << 20, 1 << 20);
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final WaveFormCache.Loader loader = new WaveFormCache.Loader() {
+            @Override public WaveFormInfo load() throws IOException {
+                loads.incrementAndGet();
+                loading.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return wave;
+            }
+        };
+        final WaveFormInfo[] results = new WaveFormInfo[2];
+        Thread[] threads = new Thread[2];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override public void run() {
+                    try {
+                        results[index] = cache.get(URI, 1L, loader);
+                    } catch (IOException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+            });
+        }
+        threads[0].start();
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        threads[1].start();
+        // 第二个线程进入等待后再让加载完成
+        Thread.sleep(100);
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        assertEquals(1, loads.get());
+        assertNotNull(results[0]);
+        assertSame(results[0], results[1]);
+        assertSamePeaks(wave, results[0]);
+        assertSame(results[0], cache.get(URI, 1L));
+    }
+
+    @Test public void firstOpenVerifiesPeaks() throws Exception {
+        WaveFormInfo wave = WavFixture.peaks("pcm8_mono.wav", 1, 8);
+        WaveFormCache cache = new WaveFormCache(mDirectory, 1 << 20, 1 << 20);
+        cache.put(URI, 1L, wave);
+        File[] files = mDirectory.listFiles();
+        assertEquals(1, files.length);
+        // 峰值损坏, 文件头和层级表完好
+        flipByte(files[0], files[0].length() / 2);
+
+        // 重启后第一次打开时发现损坏, 删除文件
+        WaveFormCache reopened = new WaveFormCache(mDirectory, 1 << 20, 1 << 20);
+        assertNull(reopened.get(URI, 1L));
+        assertEquals(0, mDirectory.listFiles().length);
+    }
+
+    @Test public void leastRecentlyUsedIsTrimmed() throws Exception {
+        WaveFormInfo wave = WavFixture.peaks("pcm8_mono.wav", 1, 8);
+        WaveFormCache cache = new WaveFormCache(mDirectory, Long.MAX_VALUE, 0);
+        cache.put(URI, 1L, wave);
+        long size = mDirectory.listFiles()[0].length();
+        cache = new WaveFormCache(mDirectory, size * 2, 0);
+        cache.put(URI, 2L, wave);
+        // 1 最近使用过, 写入 3 时淘汰 2
+        assertNotNull(cache.get(URI, 1L));
+        cache.put(URI, 3L, wave);
+        assertNotNull(cache.get(URI, 1L));
+        assertNull(cache.get(URI, 2L));
+        assertNotNull(cache.get(URI, 3L));
+    }
+
+    private static void flipByte(File target, long position) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(target, "rw");
+        try {
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0x55);
+        } finally {
+            file.close();
+        }
+    }
+}
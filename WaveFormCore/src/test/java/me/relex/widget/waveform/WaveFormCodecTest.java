@@ -0,0 +1,163 @@
+package me.relex.widget.waveform;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static me.relex.widget.waveform.WaveAsserts.assertSamePeaks;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+
+public class WaveFormCodecTest {
+
+    @Test public void roundTrip() throws Exception {
+        // 测试音频开头的正负满刻度会产生超出半字节的差值
+        for (String name : new String[] { "pcm8_mono.wav", "pcm16_stereo.wav", "float_mono.wav" }) {
+            for (int bits : new int[] { 8, 16 }) {
+                WaveFormInfo info = WavFixture.peaks(name, 1, bits);
+                byte[] encoded = WaveFormCodec.encode(info);
+                WaveFormInfo decoded = WaveFormCodec.decode(new ByteArrayInputStream(encoded));
+                assertEquals(info.getSample_rate(), decoded.getSample_rate());
+                assertEquals(info.getSamples_per_pixel(), decoded.getSamples_per_pixel());
+                assertSamePeaks(info, decoded);
+                assertSamePeaks(info, new EncodedWaveFormInfo(ByteBuffer.wrap(encoded)));
+            }
+        }
+    }
+
+    @Test public void chunkBoundaries() throws Exception {
+        WaveFormInfo wave = WavFixture.peaks("pcm16_stereo.wav", 1, 16);
+        // 1050 = 7 * 150: 末块刚好填满, 以及末块不满、只有一块、空波形
+        for (int chunkPixels : new int[] { 1, 7, 150, 64, 4096 }) {
+            for (int length : new int[] { 0, 1, wave.getLength() }) {
+                WaveFormInfo info = WavFixture.head(wave, length);
+                byte[] encoded = encode(info, chunkPixels);
+                assertSamePeaks(info, WaveFormCodec.decode(new ByteArrayInputStream(encoded)));
+                assertSamePeaks(info, new EncodedWaveFormInfo(ByteBuffer.wrap(encoded)));
+            }
+        }
+    }
+
+    @Test public void extremeDeltas() throws Exception {
+        // min 在正负满刻度之间跳变, 每个差值都需要转义
+        for (int bits : new int[] { 8, 16 }) {
+            int low = bits == 8 ? Byte.MIN_VALUE : Short.MIN_VALUE;
+            int high = bits == 8 ? Byte.MAX_VALUE : Short.MAX_VALUE;
+            WaveFormInfo info = new WaveFormInfo();
+            info.setSample_rate(8000);
+            info.setSamples_per_pixel(1);
+            info.setBits(bits);
+            if (bits == 8) {
+                byte[] peaks = new byte[200];
+                for (int i = 0; i < peaks.length; i += 2) {
+                    peaks[i] = (byte) (i % 4 == 0 ? low : high);
+                    peaks[i + 1] = (byte) high;
+                }
+                info.setPeaks(peaks);
+            } else {
+                short[] peaks = new short[200];
+                for (int i = 0; i < peaks.length; i += 2) {
+                    peaks[i] = (short) (i % 4 == 0 ? low : high);
+                    peaks[i + 1] = (short) high;
+                }
+                info.setPeaks(peaks);
+            }
+            byte[] encoded = encode(info, 16);
+            assertSamePeaks(info, WaveFormCodec.decode(new ByteArrayInputStream(encoded)));
+            assertSamePeaks(info, new EncodedWaveFormInfo(ByteBuffer.wrap(encoded)));
+        }
+    }
+
+    @Test public void randomAccessAcrossChunks() throws Exception {
+        WaveFormInfo info = WavFixture.peaks("pcm16_stereo.wav", 1, 8);
+        EncodedWaveFormInfo chunked = new EncodedWaveFormInfo(ByteBuffer.wrap(encode(info, 7)));
+        // 倒序访问, 每次都落在不同的块
+        for (int pixel = info.getLength() - 1; pixel >= 0; pixel--) {
+            assertEquals(info.getMin(1, pixel), chunked.getMin(1, pixel));
+            assertEquals(info.getMax(1, pixel), chunked.getMax(1, pixel));
+        }
+    }
+
+    @Test public void levelsFromChunks() throws Exception {
+        WaveFormInfo info = WavFixture.peaks("pcm16_stereo.wav", 1, 16);
+        EncodedWaveFormInfo encoded = new EncodedWaveFormInfo(
+                ByteBuffer.wrap(WaveFormCodec.encode(info)));
+        // 没有缓存文件时层级从各块依次解码生成
+        encoded.buildLevels();
+        WaveFormInfo coarse = encoded.getLevel(3);
+        assertNotSame(encoded, coarse);
+        assertEquals(8, coarse.getSamples_per_pixel());
+        assertSamePeaks(info.getLevel(3), coarse);
+    }
+
+    @Test public void rejectsTruncated() throws Exception {
+        byte[] encoded = WaveFormCodec.encode(WavFixture.peaks("pcm24_mono.wav", 1, 16));
+        byte[] truncated = new byte[encoded.length / 2];
+        System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+        try {
+            WaveFormCodec.decode(new ByteArrayInputStream(truncated));
+            fail("truncated data decoded");
+        } catch (IOException expected) {
+        }
+        try {
+            new EncodedWaveFormInfo(ByteBuffer.wrap(truncated));
+            fail("truncated data mapped");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test public void rejectsInvalidChunkIndex() throws Exception {
+        byte[] encoded = encode(WavFixture.peaks("pcm16_stereo.wav", 1, 16), 100);
+        // 块偏移表从头部之后开始, 第 2 项改为比第 1 项小, 以及超出数据范围
+        int entry = WaveFormCodec.HEADER_SIZE + 2 * 4;
+        for (int offset : new int[] { -1, encoded.length }) {
+            byte[] corrupt = encoded.clone();
+            ByteBuffer.wrap(corrupt).order(ByteOrder.LITTLE_ENDIAN).putInt(entry, offset);
+            try {
+                new EncodedWaveFormInfo(ByteBuffer.wrap(corrupt));
+                fail("invalid chunk offset " + offset + " accepted");
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    @Test public void concurrentReaders() throws Exception {
+        final WaveFormInfo info = WavFixture.peaks("pcm16_stereo.wav", 1, 16);
+        final EncodedWaveFormInfo encoded =
+                new EncodedWaveFormInfo(ByteBuffer.wrap(encode(info, 7)));
+        // 每个线程按不同步长跨块读取, 各自的缓存槽位互不覆盖
+        final AtomicInteger mismatches = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final int stride = 2 * i + 1;
+            threads[i] = new Thread(new Runnable() {
+                @Override public void run() {
+                    for (int round = 0; round < 20; round++) {
+                        for (int pixel = round; pixel < info.getLength(); pixel += stride) {
+                            if (encoded.getMin(0, pixel) != info.getMin(0, pixel)
+                                    || encoded.getMax(1, pixel) != info.getMax(1, pixel)) {
+                                mismatches.incrementAndGet();
+                            }
+                        }
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, mismatches.get());
+    }
+
+    private static byte[] encode(WaveFormInfo info, int chunkPixels) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        WaveFormCodec.encode(info, chunkPixels, outputStream);
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,124 @@
+package me.relex.widget.waveform;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+
+import static me.relex.widget.waveform.WaveAsserts.assertSamePeaks;
+import static org.junit.Assert.assertEquals;
+
+public class WaveFormGeneratorTest {
+
+    private static final int SAMPLES_PER_PIXEL = 100;
+
+    @Test public void pcm8() throws Exception {
+        WaveFormInfo info = generate("pcm8_mono.wav", 8);
+        assertEquals(8, info.getBits());
+        assertEquals(-128, info.getMin(0));
+        assertEquals(127, info.getMax(0));
+    }
+
+    @Test public void pcm16() throws Exception {
+        WaveFormInfo info = generate("pcm16_stereo.wav", 16);
+        assertEquals(2, info.getChannels());
+        assertEquals(Short.MIN_VALUE, info.getMin(0, 0));
+        assertEquals(Short.MAX_VALUE, info.getMax(0, 0));
+        assertEquals(1000, info.getMin(1, 0));
+        assertEquals(1000, info.getMax(1, 0));
+    }
+
+    @Test public void pcm24() throws Exception {
+        WaveFormInfo info = generate("pcm24_mono.wav", 16);
+        assertEquals(Short.MIN_VALUE, info.getMin(0));
+        assertEquals(Short.MAX_VALUE, info.getMax(0));
+    }
+
+    @Test public void pcmFloat() throws Exception {
+        WaveFormInfo info = generate("float_mono.wav", 16);
+        // 2.0 截断到满刻度
+        assertEquals(Short.MAX_VALUE, info.getMax(0));
+        assertEquals(-16383, info.getMin(0));
+    }
+
+    @Test public void outputBits8() throws Exception {
+        WavFixture wav = WavFixture.load("pcm16_stereo.wav");
+        WaveFormInfo info = generator(wav, 8).generate(wav.data);
+        assertEquals(-128, info.getMin(0, 0));
+        assertEquals(127, info.getMax(0, 0));
+        assertEquals(1000 >> 8, info.getMax(1, 0));
+    }
+
+    @Test public void streamMatchesBuffer() throws Exception {
+        for (String name : new String[] {
+                "pcm8_mono.wav", "pcm16_stereo.wav", "pcm24_mono.wav", "float_mono.wav"
+        }) {
+            WavFixture wav = WavFixture.load(name);
+            WaveFormGenerator generator = generator(wav, 16);
+            byte[] bytes = new byte[wav.data.remaining()];
+            wav.data.duplicate().get(bytes);
+            assertSamePeaks(generator.generate(wav.data),
+                    generator.generate(new ByteArrayInputStream(bytes)));
+        }
+    }
+
+    @Test public void parallelMatchesSequential() throws Exception {
+        // 足够长, 切分为多个任务, 且最后一个像素不满
+        int channels = 2;
+        int frames = 64 * 4096 * 3 + 17;
+        ByteBuffer buffer = ByteBuffer.allocate(frames * channels * 2)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        Random random = new Random(1);
+        while (buffer.hasRemaining()) {
+            buffer.putShort((short) random.nextInt());
+        }
+        buffer.flip();
+
+        WaveFormGenerator generator =
+                new WaveFormGenerator(44100, channels, WaveFormGenerator.FORMAT_PCM_16, 64, 16);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertSamePeaks(generator.generate(buffer), generator.generate(buffer, executor));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static WaveFormInfo generate(String name, int outputBits) throws IOException {
+        WavFixture wav = WavFixture.load(name);
+        WaveFormInfo info = generator(wav, outputBits).generate(wav.data);
+        assertEquals(wav.sampleRate, info.getSample_rate());
+        assertEquals(SAMPLES_PER_PIXEL, info.getSamples_per_pixel());
+        assertMatchesSamples(wav, info, outputBits);
+        return info;
+    }
+
+    private static WaveFormGenerator generator(WavFixture wav, int outputBits) {
+        return new WaveFormGenerator(wav.sampleRate, wav.channels, wav.format(),
+                SAMPLES_PER_PIXEL, outputBits);
+    }
+
+    // 每个像素点的 min/max 与逐个采样计算的结果一致, 最后一个像素点不满
+    private static void assertMatchesSamples(WavFixture wav, WaveFormInfo info, int outputBits) {
+        int frames = wav.frames();
+        assertEquals((frames + SAMPLES_PER_PIXEL - 1) / SAMPLES_PER_PIXEL, info.getLength());
+        int shift = outputBits == 8 ? 8 : 0;
+        for (int pixel = 0; pixel < info.getLength(); pixel++) {
+            for (int channel = 0; channel < wav.channels; channel++) {
+                int min = Integer.MAX_VALUE;
+                int max = Integer.MIN_VALUE;
+                int end = Math.min((pixel + 1) * SAMPLES_PER_PIXEL, frames);
+                for (int frame = pixel * SAMPLES_PER_PIXEL; frame < end; frame++) {
+                    min = Math.min(min, wav.sample(frame, channel));
+                    max = Math.max(max, wav.sample(frame, channel));
+                }
+                assertEquals(min >> shift, info.getMin(channel, pixel));
+                assertEquals(max >> shift, info.getMax(channel, pixel));
+            }
+        }
+    }
+}
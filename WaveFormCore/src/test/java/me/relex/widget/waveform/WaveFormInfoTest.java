@@ -0,0 +1,79 @@
+package me.relex.widget.waveform;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+import static me.relex.widget.waveform.WaveAsserts.assertSamePeaks;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WaveFormInfoTest {
+
+    @Test public void peekLevelDoesNotBuild() throws Exception {
+        WaveFormInfo info = WavFixture.peaks("pcm16_stereo.wav", 1, 16);
+        assertFalse(info.hasAllLevels());
+        assertSame(info, info.peekLevel(0, 2));
+        assertNull(info.peekLevel(1, 2));
+        // peekLevel 之后仍未生成
+        assertNull(info.peekLevel(1, 2));
+
+        WaveFormInfo level1 = info.getLevel(1);
+        assertSame(level1, info.peekLevel(1, 3));
+        assertNull(info.peekLevel(2, 3));
+
+        info.buildLevels();
+        assertTrue(info.hasAllLevels());
+        assertSame(info.getLevel(3), info.peekLevel(1, 3));
+        // 1050 个点共 12 层, 超出时返回最粗层级
+        WaveFormInfo coarsest = info.peekLevel(20, 30);
+        assertEquals(1, coarsest.getLength());
+        assertSame(info.getLevel(11), coarsest);
+    }
+
+    @Test public void appendKeepsAllLevels() throws Exception {
+        WaveFormInfo wave = WavFixture.peaks("pcm16_stereo.wav", 1, 16);
+        WaveFormInfo info = WavFixture.head(wave, 3);
+        info.buildLevels();
+        assertTrue(info.hasAllLevels());
+
+        short[] peaks = WavFixture.copyPeaks(wave, wave.getLength());
+        int channels = wave.getChannels();
+        for (int length = 3; length < wave.getLength(); ) {
+            int pixels = Math.min(97, wave.getLength() - length);
+            info.appendPeaks(peaks, length * channels * 2, pixels);
+            length += pixels;
+            assertTrue(info.hasAllLevels());
+        }
+
+        wave.buildLevels();
+        for (int level = 0; wave.getLevel(level).getLength() > 1; level++) {
+            assertSamePeaks(wave.getLevel(level + 1), info.peekLevel(level + 1, level + 1));
+        }
+    }
+
+    @Test public void encodedIsReadOnly() throws Exception {
+        WaveFormInfo wave = WavFixture.peaks("pcm8_mono.wav", 1, 8);
+        assertFalse(wave.isReadOnly());
+        WaveFormInfo encoded =
+                new EncodedWaveFormInfo(ByteBuffer.wrap(WaveFormCodec.encode(wave)));
+        assertTrue(encoded.isReadOnly());
+        try {
+            encoded.appendPeaks(new short[2], 0, 1);
+            fail("appended to a read-only waveform");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(wave.getLength(), encoded.getLength());
+        // 由只读数据生成的层级在堆中, 本身不是只读的
+        assertFalse(encoded.getLevel(1).isReadOnly());
+    }
+
+    @Test public void emptyWave() {
+        WaveFormInfo info = new WaveFormInfo();
+        assertTrue(info.hasAllLevels());
+        assertSame(info, info.peekLevel(2, 4));
+    }
+}
@@ -0,0 +1,125 @@
+package me.relex.widget.waveform;
+
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class WaveRangeIndexTest {
+
+    @Test public void matchesBruteForce() throws Exception {
+        Random random = new Random(11);
+        for (String name : new String[] { "pcm8_mono.wav", "pcm16_stereo.wav" }) {
+            WaveFormInfo wave = WavFixture.peaks(name, 1, 16);
+            // 空, 单点, 块边界前后, 以及末块不满的完整波形
+            for (int length : new int[] { 0, 1, 63, 64, 65, wave.getLength() }) {
+                WaveFormInfo info = WavFixture.head(wave, length);
+                WaveRangeIndex index = WaveRangeIndex.build(info);
+                assertEquals(length, index.getLength());
+                for (int query = 0; query < 300; query++) {
+                    int from = random.nextInt(length + 20) - 10;
+                    int to = from + random.nextInt(random.nextBoolean() ? 50 : length + 1);
+                    assertRange(info, index, from, to);
+                }
+                assertRange(info, index, 0, length);
+            }
+        }
+    }
+
+    @Test public void updateAfterAppend() throws Exception {
+        Random random = new Random(14);
+        WaveFormInfo wave = WavFixture.peaks("pcm16_stereo.wav", 1, 16);
+        int total = wave.getLength();
+        short[] peaks = WavFixture.copyPeaks(wave, total);
+        WaveFormInfo info = WavFixture.head(wave, 0);
+        WaveRangeIndex index = WaveRangeIndex.build(info);
+        // 追加的长度不与块对齐, 块数跨过 2 的幂
+        int length = 0;
+        int step = 1;
+        while (length < total) {
+            int pixels = Math.min(step, total - length);
+            info.appendPeaks(peaks, length * 4, pixels);
+            length += pixels;
+            step = step * 2 + 5;
+            index.update();
+            assertEquals(length, index.getLength());
+            for (int query = 0; query < 20; query++) {
+                int from = random.nextInt(length);
+                assertRange(info, index, from, from + random.nextInt(length - from + 1));
+            }
+            assertRange(info, index, 0, length);
+            assertEquals(WaveRangeIndex.build(info).nextAbove(0, 20000),
+                    index.nextAbove(0, 20000));
+            assertEquals(WaveRangeIndex.build(info).nextBelow(0, 100),
+                    index.nextBelow(0, 100));
+        }
+    }
+
+    @Test public void nextAboveAndBelow() throws Exception {
+        // 开头两个满刻度点, 之后是第二声道为 1000 的静音, 再之后是正弦波
+        WaveFormInfo info = WavFixture.peaks("pcm16_stereo.wav", 1, 16);
+        int length = info.getLength();
+        WaveRangeIndex index = WaveRangeIndex.build(info);
+        for (int threshold : new int[] { 0, 1, 999, 1000, 1001, 20000, 32767, 32768 }) {
+            for (int from = 0; from < length; from += 7) {
+                int above = -1;
+                for (int i = from; i < length && above < 0; i++) {
+                    if (amplitude(info, i) >= threshold) {
+                        above = i;
+                    }
+                }
+                int below = length;
+                for (int i = from; i < length && below == length; i++) {
+                    if (amplitude(info, i) < threshold) {
+                        below = i;
+                    }
+                }
+                assertEquals(above, index.nextAbove(from, threshold));
+                assertEquals(below, index.nextBelow(from, threshold));
+            }
+        }
+    }
+
+    @Test public void pixelAtSecondAt() throws Exception {
+        WaveFormInfo info = WavFixture.peaks("pcm8_mono.wav", 100, 8);
+        int length = info.getLength();
+        WaveRangeIndex index = WaveRangeIndex.build(info);
+        for (int pixel = 0; pixel <= length; pixel++) {
+            assertEquals(pixel, index.pixelAt(index.secondAt(pixel)));
+        }
+        assertEquals(0, index.pixelAt(-1));
+        assertEquals(length, index.pixelAt(1e9));
+    }
+
+    private static void assertRange(WaveFormInfo info, WaveRangeIndex index, int from, int to) {
+        int start = Math.max(from, 0);
+        int end = Math.min(to, info.getLength());
+        int min = 0;
+        int max = 0;
+        long sum = 0;
+        if (start < end) {
+            min = Integer.MAX_VALUE;
+            max = Integer.MIN_VALUE;
+            for (int i = start; i < end; i++) {
+                for (int channel = 0; channel < info.getChannels(); channel++) {
+                    min = Math.min(min, info.getMin(channel, i));
+                    max = Math.max(max, info.getMax(channel, i));
+                }
+                sum += amplitude(info, i);
+            }
+        }
+        String range = "[" + from + ", " + to + ")";
+        assertEquals(range, min, index.getMin(from, to));
+        assertEquals(range, max, index.getMax(from, to));
+        assertEquals(range, sum, index.getSum(from, to));
+    }
+
+    private static int amplitude(WaveFormInfo info, int pixel) {
+        int amplitude = Integer.MIN_VALUE;
+        for (int channel = 0; channel < info.getChannels(); channel++) {
+            amplitude = Math.max(amplitude,
+                    Math.max(-info.getMin(channel, pixel), info.getMax(channel, pixel)));
+        }
+        return amplitude;
+    }
+}
@@ -0,0 +1,129 @@
+package me.relex.widget.waveform;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class WaveRegionStoreTest {
+
+    @Test public void queryMatchesBruteForce() {
+        Random random = new Random(21);
+        for (int round = 0; round < 50; round++) {
+            WaveRegionStore store = new WaveRegionStore();
+            List<WaveRegion> regions = new ArrayList<>();
+            for (int op = 0; op < 300; op++) {
+                int action = random.nextInt(10);
+                if (action < 3 || regions.isEmpty()) {
+                    WaveRegion region = randomRegion(random);
+                    regions.add(region);
+                    store.add(region);
+                } else if (action < 4) {
+                    store.remove(regions.remove(random.nextInt(regions.size())));
+                } else if (action < 8) {
+                    // 拖动: 起点小幅移动, 可能越过相邻区域
+                    WaveRegion region = regions.get(random.nextInt(regions.size()));
+                    double start = region.getStart() + random.nextInt(7) - 3;
+                    store.setRange(region, start, start + random.nextInt(20));
+                } else if (action < 9) {
+                    List<WaveRegion> batch = new ArrayList<>();
+                    for (int i = 0; i < 3; i++) {
+                        batch.add(randomRegion(random));
+                    }
+                    regions.addAll(batch);
+                    store.addAll(batch);
+                } else {
+                    double start = random.nextInt(120) - 10;
+                    assertQuery(store, regions, start, start + random.nextInt(30));
+                }
+                assertEquals(regions.size(), store.size());
+            }
+            assertQuery(store, regions, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+        }
+    }
+
+    @Test public void touchingEndpointsIntersect() {
+        WaveRegionStore store = new WaveRegionStore();
+        WaveRegion region = new WaveRegion(1, 2, 0, null);
+        WaveRegion marker = WaveRegion.marker(5, 0, null);
+        store.add(region);
+        store.add(marker);
+        List<WaveRegion> out = new ArrayList<>();
+        assertEquals(1, store.query(2, 3, out));
+        assertSame(region, out.get(0));
+        out.clear();
+        assertEquals(1, store.query(5, 5, out));
+        assertSame(marker, out.get(0));
+        out.clear();
+        assertEquals(0, store.query(2.5, 4.5, out));
+    }
+
+    @Test public void findAt() {
+        WaveRegionStore store = new WaveRegionStore();
+        WaveRegion outer = new WaveRegion(0, 10, 0, null);
+        WaveRegion inner = new WaveRegion(4, 6, 0, null);
+        WaveRegion marker = WaveRegion.marker(8, 0, null);
+        store.add(outer);
+        store.add(inner);
+        store.add(marker);
+        // 包含该位置的最短区域
+        assertSame(inner, store.findAt(5, 0.1));
+        // 边缘优先
+        assertSame(marker, store.findAt(8.05, 0.1));
+        assertSame(outer, store.findAt(2, 0.1));
+        assertNull(store.findAt(20, 0.1));
+        assertEquals(WaveRegionStore.EDGE_END, WaveRegionStore.edgeAt(inner, 5.95, 0.1));
+    }
+
+    @Test public void batchNotifiesOnce() {
+        WaveRegionStore store = new WaveRegionStore();
+        final int[] count = new int[1];
+        store.addListener(new WaveRegionStore.Listener() {
+            @Override public void onRegionsChanged(WaveRegionStore store) {
+                count[0]++;
+            }
+        });
+        store.beginBatch();
+        for (int i = 0; i < 10; i++) {
+            store.add(new WaveRegion(i, i + 1, 0, null));
+        }
+        store.endBatch();
+        assertEquals(1, count[0]);
+    }
+
+    private static WaveRegion randomRegion(Random random) {
+        double start = random.nextInt(100);
+        return new WaveRegion(start, start + random.nextInt(20), 0, null);
+    }
+
+    private static void assertQuery(WaveRegionStore store, List<WaveRegion> regions,
+            double start, double end) {
+        List<WaveRegion> out = new ArrayList<>();
+        int count = store.query(start, end, out);
+        assertEquals(out.size(), count);
+
+        Set<WaveRegion> expected =
+                Collections.newSetFromMap(new IdentityHashMap<WaveRegion, Boolean>());
+        for (WaveRegion region : regions) {
+            if (region.getStart() <= end && region.getEnd() >= start) {
+                expected.add(region);
+            }
+        }
+        Set<WaveRegion> actual =
+                Collections.newSetFromMap(new IdentityHashMap<WaveRegion, Boolean>());
+        actual.addAll(out);
+        assertEquals(expected.size(), out.size());
+        assertEquals(expected, actual);
+        for (int i = 1; i < out.size(); i++) {
+            assertTrue(out.get(i - 1).getStart() <= out.get(i).getStart());
+        }
+    }
+}
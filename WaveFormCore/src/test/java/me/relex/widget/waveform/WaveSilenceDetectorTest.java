@@ -0,0 +1,193 @@
+package me.relex.widget.waveform;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class WaveSilenceDetectorTest {
+
+    private static final int CHUNK = WaveSilenceDetector.CHUNK_PIXELS;
+    private static final int LENGTH = CHUNK * 3 + 100;
+    private static final float THRESHOLD = 0.01f;
+
+    // 静音段 [start, end), 包括跨越分段边界、覆盖整段、位于开头和末尾的情况
+    private static final int[] SILENCES = {
+            0, 300,
+            5000, 5050,
+            CHUNK - 500, CHUNK + 700,
+            CHUNK * 2 - 10, CHUNK * 3 + 10,
+            LENGTH - 200, LENGTH
+    };
+
+    private ExecutorService mExecutor;
+
+    @Before public void setUp() {
+        mExecutor = Executors.newFixedThreadPool(3);
+    }
+
+    @After public void tearDown() {
+        mExecutor.shutdown();
+    }
+
+    @Test public void stitchesAcrossChunks() throws Exception {
+        short[] peaks = createPeaks(2);
+        WaveFormInfo info = createInfo(2, peaks);
+        for (double minSeconds : new double[] { 0, 0.5, 1, 10 }) {
+            int[] expected = bruteForce(info, THRESHOLD, minSeconds);
+            assertRuns(expected, new WaveSilenceDetector(info).detect(THRESHOLD, minSeconds,
+                    mExecutor));
+            assertRuns(expected, new WaveSilenceDetector(info).detect(THRESHOLD, minSeconds,
+                    null));
+        }
+    }
+
+    @Test public void reusesAndRescans() throws Exception {
+        WaveFormInfo info = createInfo(1, createPeaks(1));
+        WaveSilenceDetector detector = new WaveSilenceDetector(info);
+        for (float threshold : new float[] { 0.01f, 0.2f, 0.01f, 0.5f, 1f }) {
+            for (double minSeconds : new double[] { 1, 0.1 }) {
+                assertRuns(bruteForce(info, threshold, minSeconds),
+                        detector.detect(threshold, minSeconds, mExecutor));
+            }
+        }
+    }
+
+    @Test public void appendedData() throws Exception {
+        short[] peaks = createPeaks(1);
+        WaveFormInfo info = createInfo(1, new short[0]);
+        WaveSilenceDetector detector = new WaveSilenceDetector(info);
+        // 每次追加的长度不与块或分段对齐
+        int pixels = 0;
+        int step = 1;
+        while (pixels < LENGTH) {
+            int count = Math.min(step, LENGTH - pixels);
+            info.appendPeaks(peaks, pixels * 2, count);
+            pixels += count;
+            step = step * 3 + 7;
+            assertRuns(bruteForce(info, THRESHOLD, 0.5),
+                    detector.detect(THRESHOLD, 0.5, mExecutor));
+        }
+    }
+
+    @Test public void fixtureSilence() throws Exception {
+        // 第 2 帧到第 100 帧静音; 正弦波的过零点短于最短时长 (40 帧), 不计入
+        for (String name : new String[] { "pcm8_mono.wav", "pcm24_mono.wav", "float_mono.wav" }) {
+            WaveFormInfo info = WavFixture.peaks(name, 1, 16);
+            WaveSilenceDetector.Result result =
+                    new WaveSilenceDetector(info).detect(THRESHOLD, 0.005, null);
+            assertRuns(new int[] { 2, 101 }, result);
+            assertEquals(2 / 8000.0, result.getStart(0), 1e-9);
+        }
+        // 立体声取各声道的最大振幅: 第二声道的 1000 高于 1% 满刻度, 低于 5%; 第 100 帧第二声道已是正弦波
+        WaveFormInfo stereo = WavFixture.peaks("pcm16_stereo.wav", 1, 16);
+        assertRuns(new int[0], new WaveSilenceDetector(stereo).detect(THRESHOLD, 0.005, null));
+        assertRuns(new int[] { 2, 100 },
+                new WaveSilenceDetector(stereo).detect(0.05f, 0.005, null));
+    }
+
+    @Test public void resultTimes() throws Exception {
+        WaveFormInfo info = createInfo(1, createPeaks(1));
+        WaveSilenceDetector.Result result = new WaveSilenceDetector(info).detect(THRESHOLD, 1,
+                null);
+        double pixelSeconds = (double) info.getSamples_per_pixel() / info.getSample_rate();
+        double total = 0;
+        List<WaveRegion> regions = result.toRegions(0x22000000, "silence");
+        assertEquals(result.size(), regions.size());
+        for (int i = 0; i < result.size(); i++) {
+            assertEquals(result.getStartPixel(i) * pixelSeconds, result.getStart(i), 1e-6);
+            assertEquals(result.getEndPixel(i) * pixelSeconds, result.getEnd(i), 1e-6);
+            assertEquals(result.getStart(i), regions.get(i).getStart(), 1e-9);
+            assertEquals("silence", regions.get(i).getTag());
+            total += result.getEnd(i) - result.getStart(i);
+        }
+        assertEquals(total, result.getTotalSeconds(), 1e-3);
+    }
+
+    private static short[] createPeaks(int channels) {
+        Random random = new Random(31);
+        short[] peaks = new short[LENGTH * channels * 2];
+        for (int pixel = 0; pixel < LENGTH; pixel++) {
+            boolean silent = isSilent(pixel);
+            for (int channel = 0; channel < channels; channel++) {
+                int amplitude = silent ? random.nextInt(100)
+                        : 2000 + random.nextInt(30000);
+                int offset = (pixel * channels + channel) * 2;
+                // 有声的点只在一个声道、一侧超过阈值
+                boolean loudChannel = channel == pixel % channels;
+                peaks[offset] = (short) (silent || !loudChannel || pixel % 2 == 0
+                        ? -random.nextInt(100) : -amplitude);
+                peaks[offset + 1] = (short) (silent || !loudChannel || pixel % 2 == 1
+                        ? random.nextInt(100) : amplitude);
+            }
+        }
+        return peaks;
+    }
+
+    private static boolean isSilent(int pixel) {
+        for (int i = 0; i < SILENCES.length; i += 2) {
+            if (pixel >= SILENCES[i] && pixel < SILENCES[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static WaveFormInfo createInfo(int channels, short[] peaks) {
+        WaveFormInfo info = new WaveFormInfo();
+        info.setSample_rate(44100);
+        info.setSamples_per_pixel(256);
+        info.setBits(16);
+        info.setChannels(channels);
+        info.setPeaks(peaks);
+        return info;
+    }
+
+    private static int[] bruteForce(WaveFormInfo info, float threshold, double minSeconds) {
+        int level = (int) Math.ceil(threshold * 32768);
+        int minPixels = Math.max(1, (int) Math.ceil(
+                minSeconds * info.getSample_rate() / info.getSamples_per_pixel()));
+        List<Integer> runs = new ArrayList<>();
+        int start = -1;
+        for (int pixel = 0; pixel <= info.getLength(); pixel++) {
+            boolean silent = pixel < info.getLength() && amplitude(info, pixel) < level;
+            if (silent && start < 0) {
+                start = pixel;
+            } else if (!silent && start >= 0) {
+                if (pixel - start >= minPixels) {
+                    runs.add(start);
+                    runs.add(pixel);
+                }
+                start = -1;
+            }
+        }
+        int[] result = new int[runs.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = runs.get(i);
+        }
+        return result;
+    }
+
+    private static int amplitude(WaveFormInfo info, int pixel) {
+        int amplitude = 0;
+        for (int channel = 0; channel < info.getChannels(); channel++) {
+            amplitude = Math.max(amplitude,
+                    Math.max(-info.getMin(channel, pixel), info.getMax(channel, pixel)));
+        }
+        return amplitude;
+    }
+
+    private static void assertRuns(int[] expected, WaveSilenceDetector.Result result) {
+        assertEquals(expected.length / 2, result.size());
+        for (int i = 0; i < result.size(); i++) {
+            assertEquals(expected[i * 2], result.getStartPixel(i));
+            assertEquals(expected[i * 2 + 1], result.getEndPixel(i));
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package me.relex.widget.waveform;
+
+import java.io.IOException;
+
+/**
+ * setWaveAsync 的结果, 在主线程回调; 加载被新的 setWave / setWaveAsync 取代时不回调
+ */
+public interface WaveFormLoadListener {
+    // 数据已交给视图
+    void onWaveLoaded(WaveFormInfo info);
+
+    void onWaveLoadFailed(IOException e);
+}
@@ -0,0 +1,100 @@
+package me.relex.widget.waveform;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LongSparseArray;
+
+/**
+ * 多个视图共享的波形: 峰值数据、降采样层级、区间统计索引和分块位图缓存
+ *
+ * 视图通过 setModel 使用, 显示在窗口上期间持有一个引用; 引用数降为 0 时释放块位图,
+ * 波形数据、降采样层级和区间统计索引保留, 再次显示时不需要重新生成。
+ * 块缓存按绘制参数 (高度、颜色、绘制方式、声道模式) 区分, 参数相同的视图共用。
+ * 只能在主线程使用。
+ */
+public final class WaveFormModel {
+
+    private static final int DEFAULT_TILE_CACHE_SIZE = 8 * 1024 * 1024;
+
+    private final WaveFormInfo mInfo;
+    private final LongSparseArray<WaveTileCache> mTileCaches = new LongSparseArray<>();
+    @Nullable private WaveRangeIndex mRangeIndex;
+    private int mTileCacheSize = DEFAULT_TILE_CACHE_SIZE;
+    private int mRefCount;
+
+    public WaveFormModel(@NonNull WaveFormInfo info) {
+        mInfo = info;
+    }
+
+    public WaveFormInfo getInfo() {
+        return mInfo;
+    }
+
+    // 区间统计索引, 第一次调用时建立, 共享本模型的视图共用; 数据追加后只更新新增部分
+    public WaveRangeIndex getRangeIndex() {
+        if (mRangeIndex == null) {
+            mRangeIndex = WaveRangeIndex.build(mInfo);
+        } else {
+            mRangeIndex.update();
+        }
+        return mRangeIndex;
+    }
+
+    // 已建立时随数据追加更新, 未建立时不处理
+    void updateRangeIndex() {
+        if (mRangeIndex != null) {
+            mRangeIndex.update();
+        }
+    }
+
+    // 每个块缓存的字节上限, 只影响之后创建的缓存
+    public void setTileCacheSize(int maxBytes) {
+        mTileCacheSize = maxBytes;
+    }
+
+    public void acquire() {
+        mRefCount++;
+    }
+
+    public void release() {
+        if (mRefCount <= 0) {
+            throw new IllegalStateException("WaveFormModel released more than acquired");
+        }
+        if (--mRefCount == 0) {
+            clearTileCaches();
+        }
+    }
+
+    public int getRefCount() {
+        return mRefCount;
+    }
+
+    // 调用 WaveFormInfo.appendPeaks 之后, 丢弃所有缓存中覆盖旧末尾 dataLength 的块
+    void removeTilesFrom(int dataLength) {
+        for (int i = 0; i < mTileCaches.size(); i++) {
+            mTileCaches.valueAt(i).removeFrom(dataLength);
+        }
+    }
+
+    // 按绘制参数取块缓存, 不存在时创建
+    WaveTileCache getTileCache(long style) {
+        WaveTileCache cache = mTileCaches.get(style);
+        if (cache == null) {
+            cache = new WaveTileCache(mTileCacheSize, true);
+            mTileCaches.put(style, cache);
+        }
+        return cache;
+    }
+
+    static long tileStyle(int height, int color, int renderMode, int channelMode) {
+        return ((long) color << 32) | ((height & 0x3fffffffL) << 2) | (renderMode << 1)
+                | channelMode;
+    }
+
+    private void clearTileCaches() {
+        for (int i = 0; i < mTileCaches.size(); i++) {
+            mTileCaches.valueAt(i).clear();
+        }
+        mTileCaches.clear();
+    }
+}
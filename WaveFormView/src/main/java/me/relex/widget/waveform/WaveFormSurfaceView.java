@@ -0,0 +1,364 @@
+package me.relex.widget.waveform;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.Build;
+import android.support.annotation.Nullable;
+import android.support.v4.view.GestureDetectorCompat;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.SurfaceView;
+import android.view.ViewParent;
+import me.relex.waveformview.R;
+import me.relex.widget.waveform.gesture.OnScaleDragGestureListener;
+import me.relex.widget.waveform.gesture.ScaleDragDetector;
+
+/**
+ * 在独立渲染线程中绘制的 WaveFormView, 手势与 WaveFormView 相同 (拖动、惯性滑动、双指缩放、双击缩放)
+ *
+ * UI 线程只处理触摸事件并把视口发布给 {@link WaveSurfaceRenderer}, 绘制不占用主线程;
+ * 惯性滑动和缩放动画在渲染线程中进行, 主线程卡顿时不受影响。
+ * 每帧直接从降采样层级绘制, 不使用分块位图缓存; 不支持播放头和区域。
+ */
+public class WaveFormSurfaceView extends SurfaceView
+        implements OnScaleDragGestureListener, WaveSurfaceRenderer.Callback {
+
+    @Nullable private WaveFormInfo mWaveFormInfo;
+    private final WaveFormViewport mViewport = new WaveFormViewport();
+    // 每次发布视口加一, 用于判断渲染线程回报的视口是否基于最新的状态
+    private long mGeneration;
+    private int mRenderMode = WaveFormView.RENDER_MODE_LINES;
+    private int mChannelMode = WaveFormView.CHANNEL_MODE_MERGED;
+    private WaveSurfaceRenderer mRenderer;
+
+    @Nullable private WaveFormListener mWaveFormListener;
+    private ScaleDragDetector mScaleDragDetector;
+    private GestureDetectorCompat mGestureDetector;
+
+    public WaveFormSurfaceView(Context context) {
+        super(context);
+        init(context, null);
+    }
+
+    public WaveFormSurfaceView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init(context, attrs);
+    }
+
+    public WaveFormSurfaceView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init(context, attrs);
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    public WaveFormSurfaceView(Context context, AttributeSet attrs, int defStyleAttr,
+            int defStyleRes) {
+        super(context, attrs, defStyleAttr, defStyleRes);
+        init(context, attrs);
+    }
+
+    private void init(Context context, @Nullable AttributeSet attrs) {
+        int backgroundColor = Color.WHITE;
+        int waveformColor = Color.BLACK;
+        int textColor = Color.BLACK;
+        int textSize = 24;
+        int labelColor = Color.BLACK;
+        int labelWidth = 2;
+        int labelHeight = 24;
+        int labelMinSpace = 72;
+
+        if (attrs != null) {
+            TypedArray typedArray =
+                    context.obtainStyledAttributes(attrs, R.styleable.WaveFormSurfaceView);
+            backgroundColor = typedArray.getColor(
+                    R.styleable.WaveFormSurfaceView_wf_background_color, Color.WHITE);
+            mViewport.setMaxScale(
+                    typedArray.getFloat(R.styleable.WaveFormSurfaceView_wf_waveform_max_scale,
+                            3f));
+            waveformColor = typedArray.getColor(R.styleable.WaveFormSurfaceView_wf_waveform_color,
+                    Color.BLACK);
+            textColor = typedArray.getColor(R.styleable.WaveFormSurfaceView_wf_time_text_color,
+                    Color.BLACK);
+            textSize = typedArray.getDimensionPixelSize(
+                    R.styleable.WaveFormSurfaceView_wf_time_text_size, 24);
+            labelColor = typedArray.getColor(R.styleable.WaveFormSurfaceView_wf_time_label_color,
+                    Color.BLACK);
+            labelWidth = typedArray.getDimensionPixelSize(
+                    R.styleable.WaveFormSurfaceView_wf_time_label_width, 2);
+            labelHeight = typedArray.getDimensionPixelSize(
+                    R.styleable.WaveFormSurfaceView_wf_time_label_height, 24);
+            labelMinSpace = typedArray.getDimensionPixelSize(
+                    R.styleable.WaveFormSurfaceView_wf_time_label_min_space, 72);
+            mRenderMode = typedArray.getInt(R.styleable.WaveFormSurfaceView_wf_render_mode,
+                    WaveFormView.RENDER_MODE_LINES);
+            mChannelMode = typedArray.getInt(R.styleable.WaveFormSurfaceView_wf_channel_mode,
+                    WaveFormView.CHANNEL_MODE_MERGED);
+            typedArray.recycle();
+        }
+
+        // 画笔和刻度交给渲染线程后, UI 线程不再使用
+        Paint waveFormPaint = new Paint();
+        waveFormPaint.setColor(waveformColor);
+        waveFormPaint.setStyle(Paint.Style.FILL_AND_STROKE);
+        waveFormPaint.setStrokeWidth(0);
+        WaveTimeAxis timeAxis = new WaveTimeAxis(textColor, textSize, labelColor, labelWidth,
+                labelHeight, labelMinSpace);
+        mRenderer = new WaveSurfaceRenderer(context, getHolder(), waveFormPaint, timeAxis,
+                backgroundColor, this);
+        getHolder().addCallback(mRenderer);
+
+        mScaleDragDetector = new ScaleDragDetector(context, this);
+        mGestureDetector =
+                new GestureDetectorCompat(context, new GestureDetector.SimpleOnGestureListener());
+        mGestureDetector.setOnDoubleTapListener(new GestureDetector.OnDoubleTapListener() {
+            @Override public boolean onSingleTapConfirmed(MotionEvent e) {
+                return false;
+            }
+
+            @Override public boolean onDoubleTap(MotionEvent e) {
+                float x = e.getX();
+                float scale = mViewport.getScale();
+                float maxScale = mViewport.getMaxScale();
+                float minScale = 1;
+                float mediumScale = (maxScale + minScale) / 2;
+                if (scale < mediumScale) {
+                    setScale(mediumScale, x, true);
+                } else if (scale >= mediumScale && scale < maxScale) {
+                    setScale(maxScale, x, true);
+                } else {
+                    setScale(minScale, x, true);
+                }
+                return true;
+            }
+
+            @Override public boolean onDoubleTapEvent(MotionEvent e) {
+                return false;
+            }
+        });
+    }
+
+    public void setWave(WaveFormInfo info) {
+        if (info == null) {
+            return;
+        }
+        mWaveFormInfo = info;
+        mViewport.setWave(info);
+
+        if (getMeasuredWidth() > 0) {
+            dispatchScrollChanged();
+        }
+        publishViewport();
+    }
+
+    // 调用 WaveFormInfo.appendPeaks 之后通知
+    public void notifyWaveAppended() {
+        if (mWaveFormInfo == null || mWaveFormInfo.isReadOnly()) {
+            return;
+        }
+        adoptRenderedViewport();
+        mViewport.notifyLengthChanged();
+        publishViewport();
+    }
+
+    @Override protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        adoptRenderedViewport();
+        mViewport.setWidth(w);
+        publishViewport();
+
+        if (w > 0 && mWaveFormInfo != null) {
+            dispatchScrollChanged();
+        }
+    }
+
+    @Override protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mRenderer.start();
+        publishViewport();
+    }
+
+    @Override protected void onDetachedFromWindow() {
+        // 渲染线程结束后再取它最后回报的视口, 不会漏掉停止前的最后一帧
+        mRenderer.quit();
+        adoptRenderedViewport();
+        super.onDetachedFromWindow();
+    }
+
+    private void dispatchScrollChanged() {
+        if (mWaveFormListener != null) {
+            mWaveFormListener.onScrollChanged(mViewport.getStartSecond(),
+                    mViewport.getEndSecond());
+        }
+    }
+
+    private void publishViewport() {
+        publishViewport(WaveViewportState.COMMAND_NONE, 0, 0);
+    }
+
+    // 发布新的视口, 同时停止渲染线程中正在进行的动画
+    private void publishViewport(int command, float x, float value) {
+        mGeneration++;
+        mRenderer.publish(new WaveViewportState(mGeneration, mWaveFormInfo, getWidth(), getHeight(),
+                mViewport.getMaxScale(), mRenderMode, mChannelMode, mViewport, command, x, value));
+    }
+
+    // 渲染线程的动画基于最新发布的状态时, 以渲染线程的视口为准
+    private void adoptRenderedViewport() {
+        WaveViewportState rendered = mRenderer.getRendered();
+        if (rendered != null && rendered.generation == mGeneration) {
+            mViewport.setScale(rendered.scale);
+            mViewport.setStartSecond(rendered.startSecond);
+        }
+    }
+
+    @Override public void onRenderedViewportChanged(WaveViewportState state) {
+        if (state == null || state.generation != mGeneration) {
+            return;
+        }
+        if (mWaveFormListener != null) {
+            mWaveFormListener.onScrollChanged(state.startSecond, state.endSecond);
+        }
+    }
+
+    @Override public void onDrag(float dx, float dy) {
+        if (mWaveFormInfo == null || mScaleDragDetector.isScaling()) {
+            return;
+        }
+
+        if (mViewport.scrollBy(-dx)) {
+            dispatchScrollChanged();
+            publishViewport();
+        }
+    }
+
+    @Override public void onFling(float startX, float startY, float velocityX, float velocityY) {
+        if (mWaveFormInfo == null) {
+            return;
+        }
+        publishViewport(WaveViewportState.COMMAND_FLING, startX, velocityX);
+    }
+
+    @Override public void onScaleBegin() {
+        mViewport.beginScale();
+    }
+
+    @Override public void onScale(float scaleFactor, float focusX, float focusY) {
+        if (mWaveFormInfo == null) {
+            return;
+        }
+        if (mViewport.scaleBy(scaleFactor, focusX)) {
+            dispatchScrollChanged();
+            publishViewport();
+        }
+    }
+
+    @Override public void onScaleEnd() {
+        if (mWaveFormInfo == null) {
+            return;
+        }
+        mViewport.endScale();
+        publishViewport();
+    }
+
+    public void setScale(float scale) {
+        if (mWaveFormInfo == null) {
+            return;
+        }
+        adoptRenderedViewport();
+        if (mViewport.setScale(scale)) {
+            dispatchScrollChanged();
+            publishViewport();
+        }
+    }
+
+    public void setScale(float scale, float focusX, boolean animate) {
+        if (mWaveFormInfo == null) {
+            return;
+        }
+
+        if (animate) {
+            adoptRenderedViewport();
+            publishViewport(WaveViewportState.COMMAND_ZOOM, focusX, mViewport.clampScale(scale));
+        } else {
+            setScale(scale);
+        }
+    }
+
+    public void setStartTime(double startSecond) {
+        adoptRenderedViewport();
+        if (mViewport.setStartSecond(startSecond) && mWaveFormInfo != null) {
+            dispatchScrollChanged();
+            publishViewport();
+        }
+    }
+
+    // 当前显示的起始时间, 惯性滑动或缩放动画进行中时为渲染线程最近回报的值
+    public double getStartTime() {
+        adoptRenderedViewport();
+        return mViewport.getStartSecond();
+    }
+
+    @Override public boolean onTouchEvent(MotionEvent event) {
+        int action = event.getActionMasked();
+        switch (action) {
+            case MotionEvent.ACTION_DOWN: {
+                ViewParent parent = getParent();
+                if (parent != null) {
+                    parent.requestDisallowInterceptTouchEvent(true);
+                }
+                // 停在渲染线程当前的位置
+                adoptRenderedViewport();
+                publishViewport();
+            }
+            break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL: {
+                ViewParent parent = getParent();
+                if (parent != null) {
+                    parent.requestDisallowInterceptTouchEvent(false);
+                }
+            }
+            break;
+        }
+
+        boolean handled = mScaleDragDetector.onTouchEvent(event);
+        if (mGestureDetector.onTouchEvent(event)) {
+            handled = true;
+        }
+        return handled;
+    }
+
+    // RENDER_MODE_LINES 或 RENDER_MODE_PATH
+    public void setRenderMode(int renderMode) {
+        if (mRenderMode != renderMode) {
+            mRenderMode = renderMode;
+            adoptRenderedViewport();
+            publishViewport();
+        }
+    }
+
+    public int getRenderMode() {
+        return mRenderMode;
+    }
+
+    // CHANNEL_MODE_MERGED 或 CHANNEL_MODE_LANES
+    public void setChannelMode(int channelMode) {
+        if (mChannelMode != channelMode) {
+            mChannelMode = channelMode;
+            adoptRenderedViewport();
+            publishViewport();
+        }
+    }
+
+    public int getChannelMode() {
+        return mChannelMode;
+    }
+
+    public void setWaveFormListener(@Nullable WaveFormListener waveFormListener) {
+        mWaveFormListener = waveFormListener;
+    }
+}
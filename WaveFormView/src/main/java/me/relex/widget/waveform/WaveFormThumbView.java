@@ -3,6 +3,7 @@ package me.relex.widget.waveform;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
@@ -13,7 +14,6 @@ import android.util.AttributeSet;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewParent;
-import java.util.List;
 import me.relex.waveformview.R;
 import me.relex.widget.waveform.gesture.DragDetector;
 import me.relex.widget.waveform.gesture.OnDragGestureListener;
@@ -21,16 +21,31 @@ import me.relex.widget.waveform.gesture.OnDragGestureListener;
 public class WaveFormThumbView extends View implements OnDragGestureListener {
     private Paint mWaveFormPaint;
     private Paint mWaveFormHighLightPaint;
+    // 缩略图多声道时总是合并显示 (WaveLineBatch 默认 CHANNEL_MODE_MERGED)
+    private final WaveLineBatch mLineBatch = new WaveLineBatch();
+    // 整条波形只绘制一次, 普通色和高亮色各一张, 高亮区域通过裁剪叠加
+    @Nullable private Bitmap mWaveBitmap;
+    @Nullable private Bitmap mHighLightBitmap;
+    // 绘制缩略图位图用的画布, 每次 setBitmap 切换目标
+    private final Canvas mBitmapCanvas = new Canvas();
+    private boolean mWaveBitmapsValid;
     @Nullable private WaveFormInfo mBean;
-    private double mTotalSecond = 0d;
-    private float mThumbScale;
+    @Nullable private WaveLoadTask mLoadTask;
+    @Nullable private WaveFormModel mModel;
+    private WavePlayhead mPlayhead;
+    private WaveRegionLayer mRegionLayer;
+    private boolean mAttached;
+    // 整个波形铺满宽度, 缩放比例固定为最小比例
+    private final WaveFormViewport mViewport = new WaveFormViewport();
     private double mThumbStartSecond = 0d;
     private double mThumbDuration = 0d;
     private DragDetector mDragDetector;
-    private int mThumbStartTimePixel;
-    private int mThumbEndTimePixel;
+    private float mThumbRectLeft;
+    private float mThumbRectRight;
 
     private OnDragThumbListener mOnDragThumbListener;
+    @Nullable private WaveFrameMetricsListener mFrameMetricsListener;
+    private final WaveFrameMetrics mFrameMetrics = new WaveFrameMetrics();
 
     public WaveFormThumbView(Context context) {
         super(context);
@@ -57,6 +72,9 @@ public class WaveFormThumbView extends View implements OnDragGestureListener {
     private void init(Context context, @Nullable AttributeSet attrs) {
         int waveformColor = Color.BLACK;
         int highlightColor = Color.GRAY;
+        int playheadColor = Color.RED;
+        int playheadWidth = 2;
+        int playedColor = waveformColor;
 
         if (attrs != null) {
             TypedArray typedArray =
@@ -66,6 +84,14 @@ public class WaveFormThumbView extends View implements OnDragGestureListener {
             highlightColor =
                     typedArray.getColor(R.styleable.WaveFormThumbView_wf_waveform_highlight_color,
                             Color.GRAY);
+            setRenderMode(typedArray.getInt(R.styleable.WaveFormThumbView_wf_render_mode,
+                    WaveFormView.RENDER_MODE_LINES));
+            playheadColor = typedArray.getColor(R.styleable.WaveFormThumbView_wf_playhead_color,
+                    playheadColor);
+            playheadWidth = typedArray.getDimensionPixelSize(
+                    R.styleable.WaveFormThumbView_wf_playhead_width, playheadWidth);
+            playedColor = typedArray.getColor(R.styleable.WaveFormThumbView_wf_played_color,
+                    waveformColor);
             typedArray.recycle();
         }
 
@@ -79,6 +105,10 @@ public class WaveFormThumbView extends View implements OnDragGestureListener {
         mWaveFormHighLightPaint.setStyle(Paint.Style.FILL_AND_STROKE);
         mWaveFormHighLightPaint.setStrokeWidth(0);
 
+        mPlayhead = new WavePlayhead(this, mViewport, mWaveFormPaint, playheadColor,
+                playheadWidth, playedColor);
+        mRegionLayer = new WaveRegionLayer(this, mViewport, 1);
+
         mDragDetector = new DragDetector(context, this);
     }
 
@@ -87,32 +117,128 @@ public class WaveFormThumbView extends View implements OnDragGestureListener {
             return;
         }
 
+        releaseLoadTask();
+        releaseModel();
         mBean = bean;
+        recycleWaveBitmaps();
         initWave(bean);
+        buildLevels(bean);
         invalidate();
     }
 
+    // 降采样层级在后台生成, 完成后重绘缩略图位图
+    private void buildLevels(final WaveFormInfo bean) {
+        if (bean.hasAllLevels()) {
+            return;
+        }
+        WaveLoadTask.buildLevels(bean, new Runnable() {
+            @Override public void run() {
+                if (mBean == bean) {
+                    mWaveBitmapsValid = false;
+                    invalidate();
+                }
+            }
+        });
+    }
+
+    // 使用共享的波形及其降采样层级, 显示在窗口上期间持有模型的引用; 缩略图位图与尺寸相关, 不共享
+    public void setModel(@Nullable WaveFormModel model) {
+        if (model == mModel) {
+            return;
+        }
+        if (model == null) {
+            releaseModel();
+            return;
+        }
+        setWave(model.getInfo());
+        mModel = model;
+        if (mAttached) {
+            model.acquire();
+        }
+    }
+
+    @Nullable public WaveFormModel getModel() {
+        return mModel;
+    }
+
+    private void releaseModel() {
+        if (mModel == null) {
+            return;
+        }
+        if (mAttached) {
+            mModel.release();
+        }
+        mModel = null;
+    }
+
+    // 在后台线程读取波形, 加载期间显示加载状态; 需要与 WaveFormView 同时显示时,
+    // 使用 WaveFormView.setWaveAsync(loader, thumbView, listener)
+    public void setWaveAsync(WaveFormCache.Loader loader) {
+        WaveLoadTask.start(loader, null, this, null);
+    }
+
+    public boolean isLoading() {
+        return mLoadTask != null;
+    }
+
+    void onWaveLoadStarted(WaveLoadTask task) {
+        releaseLoadTask();
+        releaseModel();
+        mLoadTask = task;
+        mBean = null;
+        mWaveBitmapsValid = false;
+        invalidate();
+    }
+
+    // info 为 null 表示加载失败
+    void onWaveLoadFinished(WaveLoadTask task, @Nullable WaveFormInfo info) {
+        if (mLoadTask != task) {
+            return;
+        }
+        mLoadTask = null;
+        if (info != null) {
+            setWave(info);
+        } else {
+            invalidate();
+        }
+    }
+
+    private void releaseLoadTask() {
+        if (mLoadTask != null) {
+            mLoadTask.release(this);
+            mLoadTask = null;
+        }
+    }
+
     public void initWave(@NonNull WaveFormInfo bean) {
-        int sampleRate = bean.getSample_rate();
-        int samplesPerPixel = bean.getSamples_per_pixel();
-        int length = bean.getLength();
-        mTotalSecond = WaveUtil.dataPixelsToSecond(length, sampleRate, samplesPerPixel);
+        mViewport.setWave(bean);
         computerMinScaleFactor();
     }
 
+    // 调用 WaveFormInfo.appendPeaks 之后通知, 缩略图比例随总长度变化, 需要整体重绘
+    public void notifyWaveAppended() {
+        if (mBean == null || mBean.isReadOnly()) {
+            return;
+        }
+        mWaveBitmapsValid = false;
+        initWave(mBean);
+        updateThumb(mThumbStartSecond, mThumbStartSecond + mThumbDuration);
+    }
+
     @Override protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        mLineBatch.begin(w);
+        recycleWaveBitmaps();
+        mViewport.setWidth(w);
         computerMinScaleFactor();
     }
 
     private void computerMinScaleFactor() {
-        int width = getMeasuredWidth();
-
-        if (mBean == null || width <= 0) {
+        if (mBean == null || mViewport.getWidth() <= 0 || mBean.getLength() <= 0) {
             return;
         }
 
-        mThumbScale = (float) width / mBean.getLength();
-        configScalePaint(mThumbScale);
+        mViewport.setScale(mViewport.getMinScale());
+        configScalePaint(mViewport.getScale());
     }
 
     private void configScalePaint(float scale) {
@@ -146,52 +272,114 @@ public class WaveFormThumbView extends View implements OnDragGestureListener {
         return mDragDetector.onTouchEvent(event);
     }
 
+    @Override protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mAttached = true;
+        if (mModel != null) {
+            mModel.acquire();
+        }
+        mPlayhead.onAttachedToWindow();
+        mRegionLayer.onAttachedToWindow();
+        mFrameMetrics.updateFrameInterval(this);
+    }
+
+    @Override protected void onDetachedFromWindow() {
+        // 加载任务不随离开窗口取消, 同 WaveFormView
+        recycleWaveBitmaps();
+        mPlayhead.onDetachedFromWindow();
+        mRegionLayer.onDetachedFromWindow();
+        mAttached = false;
+        if (mModel != null) {
+            mModel.release();
+        }
+        super.onDetachedFromWindow();
+    }
+
     @Override protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
 
         if (mBean == null) {
+            if (mLoadTask != null) {
+                // 加载中: 在中线画一条线
+                float centerY = getMeasuredHeight() / 2f;
+                canvas.drawLine(0, centerY, getMeasuredWidth(), centerY, mWaveFormPaint);
+            }
             return;
         }
-        drawWave(canvas, mBean);
-    }
-
-    private void drawWave(Canvas canvas, @NonNull WaveFormInfo bean) {
-
         int width = getMeasuredWidth();
         int height = getMeasuredHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        WaveFrameMetricsListener metricsListener = mFrameMetricsListener;
+        if (metricsListener != null) {
+            // 缩略图没有惯性滑动和动画, 不统计掉帧
+            mFrameMetrics.begin(false, false);
+            mLineBatch.resetCounters();
+            mFrameMetrics.setCacheCounts(mWaveBitmapsValid ? 1 : 0, mWaveBitmapsValid ? 0 : 1);
+        }
+        if (!mWaveBitmapsValid) {
+            drawWaveBitmaps(mBean, width, height);
+        }
 
-        List<Integer> data = bean.getData();
-        int dataLength = bean.getLength();
-        boolean is8Bit = bean.getBits() == 8;
-
-        int dataPixel = 0;
-        float axisX = 0;
-        int finalAxisX = -1;
-        int low;
-        int high;
-        int lowY;
-        int highY;
-
-        while (axisX < width) {
-            if (dataPixel < 0 || dataPixel >= dataLength) {
-                break;
-            }
+        mRegionLayer.drawRegions(canvas, height);
+        canvas.drawBitmap(mWaveBitmap, 0, 0, null);
+        // 已播放部分: 同一张位图裁剪到播放头左侧, 用颜色滤镜着色
+        int playheadX = mPlayhead.getX();
+        if (mPlayhead.hasPlayedColor() && playheadX > 0) {
+            int playedSaveCount = canvas.save();
+            canvas.clipRect(0, 0, playheadX, height);
+            canvas.drawBitmap(mWaveBitmap, 0, 0, mPlayhead.getPlayedBitmapPaint());
+            canvas.restoreToCount(playedSaveCount);
+        }
+        int saveCount = canvas.save();
+        canvas.clipRect(mThumbRectLeft, 0, mThumbRectRight, height);
+        canvas.drawBitmap(mHighLightBitmap, 0, 0, null);
+        canvas.restoreToCount(saveCount);
+        mRegionLayer.drawMarkers(canvas, height);
+        mPlayhead.draw(canvas, height);
+
+        if (metricsListener != null) {
+            mFrameMetrics.setLines(mLineBatch.getDrawnColumns(), mLineBatch.getDrawnLines());
+            mFrameMetrics.end();
+            metricsListener.onFrameMetrics(this, mFrameMetrics);
+        }
+    }
 
-            int nearestAxisX = (int) axisX;
-            if (nearestAxisX != finalAxisX) {
-                finalAxisX = nearestAxisX;
-
-                low = (is8Bit ? data.get(dataPixel * 2) * 256 : data.get(dataPixel * 2)) + 32768;
-                high = (is8Bit ? data.get(dataPixel * 2 + 1) * 256 : data.get(dataPixel * 2 + 1))
-                        + 32768;
-                lowY = height - low * height / 65536;
-                highY = height - high * height / 65536;
-                canvas.drawLine(finalAxisX, lowY, finalAxisX, highY,
-                        dataPixel >= mThumbStartTimePixel && dataPixel <= mThumbEndTimePixel
-                                ? mWaveFormHighLightPaint : mWaveFormPaint);
-            }
-            axisX += mThumbScale;
-            dataPixel++;
+    private void drawWaveBitmaps(@NonNull WaveFormInfo bean, int width, int height) {
+        if (mWaveBitmap == null || mHighLightBitmap == null) {
+            mWaveBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mHighLightBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        } else {
+            // 尺寸未变时复用位图, 如录音时追加数据
+            mWaveBitmap.eraseColor(Color.TRANSPARENT);
+            mHighLightBitmap.eraseColor(Color.TRANSPARENT);
+        }
+        // 缩略图通常远小于数据长度, 会使用降采样层级; 层级生成完成前位图留空, 完成后再画
+        float scale = mViewport.getScale();
+        int level = WaveFormInfo.levelForScale(scale);
+        WaveFormInfo data = bean.peekLevel(level, level);
+        mWaveBitmapsValid = data != null;
+        if (data == null) {
+            return;
+        }
+        mLineBatch.addWave(bean, data, scale, 0, width, height);
+        mBitmapCanvas.setBitmap(mWaveBitmap);
+        mLineBatch.draw(mBitmapCanvas, mWaveFormPaint);
+        mBitmapCanvas.setBitmap(mHighLightBitmap);
+        mLineBatch.draw(mBitmapCanvas, mWaveFormHighLightPaint);
+        mBitmapCanvas.setBitmap(null);
+    }
+
+    private void recycleWaveBitmaps() {
+        mWaveBitmapsValid = false;
+        if (mWaveBitmap != null) {
+            mWaveBitmap.recycle();
+            mWaveBitmap = null;
+        }
+        if (mHighLightBitmap != null) {
+            mHighLightBitmap.recycle();
+            mHighLightBitmap = null;
         }
     }
 
@@ -201,17 +389,27 @@ public class WaveFormThumbView extends View implements OnDragGestureListener {
         }
         mThumbStartSecond = thumbStartSecond;
         mThumbDuration = thumbEndSecond - thumbStartSecond;
-        int sampleRate = mBean.getSample_rate();
-        int samplesPerPixel = mBean.getSamples_per_pixel();
-        mThumbStartTimePixel =
-                WaveUtil.secondsToPixels(thumbStartSecond, sampleRate, samplesPerPixel, 1f);
-        mThumbEndTimePixel =
-                WaveUtil.secondsToPixels(thumbEndSecond, sampleRate, samplesPerPixel, 1f);
-        float thumbRectLeft = mThumbStartTimePixel * mThumbScale;
-        float thumbRectRight = mThumbEndTimePixel * mThumbScale;
+        float thumbRectLeft = mViewport.secondToX(thumbStartSecond);
+        float thumbRectRight = mViewport.secondToX(thumbEndSecond);
         mDragDetector.setEnableRect(thumbRectLeft, 0, thumbRectRight, getHeight());
 
-        invalidate();
+        // 高亮区域包含结束点所在的列
+        int left = (int) thumbRectLeft;
+        int right = (int) thumbRectRight + 1;
+        if (mWaveBitmapsValid && left == mThumbRectLeft && right == mThumbRectRight) {
+            // 不足 1 像素的变化不重绘
+            return;
+        }
+        // 只重绘新旧高亮区域
+        int dirtyLeft = (int) Math.min(left, mThumbRectLeft);
+        int dirtyRight = (int) Math.max(right, mThumbRectRight);
+        mThumbRectLeft = left;
+        mThumbRectRight = right;
+        if (mWaveBitmapsValid) {
+            invalidate(dirtyLeft, 0, dirtyRight, getHeight());
+        } else {
+            invalidate();
+        }
     }
 
     @Override public void onDrag(float dx, float dy) {
@@ -219,26 +417,54 @@ public class WaveFormThumbView extends View implements OnDragGestureListener {
             return;
         }
 
-        int sampleRate = mBean.getSample_rate();
-        int samplesPerPixel = mBean.getSamples_per_pixel();
-
-        mThumbStartSecond += WaveUtil.pixelsToSeconds(dx, sampleRate, samplesPerPixel, mThumbScale);
-
-        // 右边界
-        if (mThumbStartSecond + mThumbDuration > mTotalSecond) {
-            mThumbStartSecond = mTotalSecond - mThumbDuration;
-        }
-
-        // 左边界
-        if (mThumbStartSecond < 0) {
-            mThumbStartSecond = 0d;
-        }
+        // 缩略图的视口不滚动, 列坐标差即时间差; 高亮区域限制在波形范围内
+        double startSecond = mThumbStartSecond + mViewport.xToSecond(dx);
+        mThumbStartSecond = mViewport.clampStartSecond(startSecond, mThumbDuration);
 
         if (mOnDragThumbListener != null) {
             mOnDragThumbListener.onDrag(mThumbStartSecond);
         }
     }
 
+    // WaveFormView.RENDER_MODE_LINES 或 WaveFormView.RENDER_MODE_PATH
+    public void setRenderMode(int renderMode) {
+        mLineBatch.setRenderMode(renderMode);
+        recycleWaveBitmaps();
+        invalidate();
+    }
+
+    public int getRenderMode() {
+        return mLineBatch.getRenderMode();
+    }
+
+    // 显示的区域和标记, 通常与 WaveFormView 共用同一个 store
+    public void setRegionStore(@Nullable WaveRegionStore store) {
+        mRegionLayer.setStore(store);
+    }
+
+    @Nullable public WaveRegionStore getRegionStore() {
+        return mRegionLayer.getStore();
+    }
+
+    // 播放位置的来源, 设置后每个 vsync 读取一次, 只重绘播放头移动经过的竖条; null 停止读取
+    public void setPlaybackPositionProvider(@Nullable WavePositionProvider provider) {
+        mPlayhead.setProvider(provider);
+    }
+
+    // 直接设置播放位置; NaN 隐藏播放头
+    public void setPlaybackPosition(double second) {
+        mPlayhead.setPosition(second);
+    }
+
+    public double getPlaybackPosition() {
+        return mPlayhead.getPosition();
+    }
+
+    // 每帧绘制的统计, 默认关闭; 为 null 时不计时
+    public void setFrameMetricsListener(@Nullable WaveFrameMetricsListener listener) {
+        mFrameMetricsListener = listener;
+    }
+
     public void setOnDragThumbListener(OnDragThumbListener onDragThumbListener) {
         mOnDragThumbListener = onDragThumbListener;
     }
@@ -3,47 +3,96 @@ package me.relex.widget.waveform;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.os.Build;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.v4.util.LongSparseArray;
 import android.support.v4.view.GestureDetectorCompat;
 import android.support.v4.widget.ScrollerCompat;
-import android.text.TextPaint;
 import android.util.AttributeSet;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewConfiguration;
 import android.view.ViewParent;
 import android.view.animation.AccelerateDecelerateInterpolator;
 import android.view.animation.Interpolator;
-import java.util.List;
 import me.relex.waveformview.R;
 import me.relex.widget.waveform.gesture.OnScaleDragGestureListener;
 import me.relex.widget.waveform.gesture.ScaleDragDetector;
 
-public class WaveFormView extends View implements OnScaleDragGestureListener {
-    private final static int[] SECOND_STEPS = { 1, 2, 5, 10, 20, 30 }; //  秒数间隔区间
+public class WaveFormView extends View
+        implements OnScaleDragGestureListener, WaveTileTask.Callback {
+    // 绘制方式: 所有列收集到 float[] 后一次 drawLines, 或合并为一个 Path 后 drawPath
+    public final static int RENDER_MODE_LINES = 0;
+    public final static int RENDER_MODE_PATH = 1;
 
-    private float mMaxScale = 3f;
-    private float mMinScale = 1f;
+    // 多声道: 合并为一条 (各声道的最小 / 最大值), 或每个声道一条分道
+    public final static int CHANNEL_MODE_MERGED = WaveColumnRenderer.CHANNEL_MODE_MERGED;
+    public final static int CHANNEL_MODE_LANES = WaveColumnRenderer.CHANNEL_MODE_LANES;
+
+    private final static int DEFAULT_TILE_CACHE_SIZE = 8 * 1024 * 1024;
+    // 块未绘制完成时, 用比当前层级粗 4 倍的数据直接绘制占位
+    private final static int PLACEHOLDER_LEVEL_BIAS = 2;
 
     @Nullable private WaveFormInfo mWaveFormInfo;
+    @Nullable private WaveLoadTask mLoadTask;
+    @Nullable private WaveRangeIndex mRangeIndex;
+    private Paint mLoadingPaint;
+    private WavePlayhead mPlayhead;
+    private WaveRegionLayer mRegionLayer;
+    @Nullable private WaveRegionListener mRegionListener;
+    private boolean mRegionsEditable;
+    // 拖动调整中的区域及其端点
+    @Nullable private WaveRegion mResizeRegion;
+    private int mResizeEdge;
+    private int mRegionEdgeSlop;
     private Paint mWaveFormPaint;
-    private Paint mTimeLabelPaint;
-    private TextPaint mTimeTextPaint;
-    private float mTimeTextHeight;
-
-    private int mTimeLabelHeight = 24;
-    private int mTimeLabelMinSpace = 72;
-
-    private double mTotalSecond = 0d;
-    private double mStartSecond = 0d;
-    private float mScale = 1f;
+    private final WaveLineBatch mLineBatch = new WaveLineBatch();
+    // 当前使用的块缓存: 未设置 WaveFormModel 时为 mOwnTileCache, 否则为模型中按绘制参数选择的缓存
+    @Nullable private WaveTileCache mTileCache;
+    @Nullable private WaveTileCache mOwnTileCache;
+    @Nullable private WaveFormModel mModel;
+    private long mTileStyle;
+    private boolean mAttached;
+    private final LongSparseArray<WaveTileTask> mTileTasks = new LongSparseArray<>();
+    private final RectF mTileRect = new RectF();
+    private Paint mTilePaint;
+    private Paint mPlaceholderPaint;
+    // 最近一帧可见的块, [mVisibleFirstTile, mVisibleLastTile)
+    private int mVisibleStep;
+    private int mVisibleFirstTile;
+    private int mVisibleLastTile;
+    private final Rect mClipRect = new Rect();
+    private WaveTimeAxis mTimeAxis;
+    // 只有播放头移动时, 静态内容 (区域、波形、时间轴、标记) 从位图层合成, 不重新绘制:
+    // mStaticLayer 为未播放时的样子, mPlayedLayer 为全部已播放时的样子, 播放头左侧取后者
+    @Nullable private Bitmap mStaticLayer;
+    @Nullable private Bitmap mPlayedLayer;
+    // 绘制位图层用的画布, 每次 setBitmap 切换目标, 不在 onDraw 中创建
+    private final Canvas mLayerCanvas = new Canvas();
+    private boolean mLayersValid;
+    // 上一帧之后是否有播放头以外的重绘
+    private boolean mStaticChanged = true;
+
+    private final WaveFormViewport mViewport = new WaveFormViewport();
+    // 最近一帧绘制时的视口, 用于合并不足 1 像素的变化
+    private double mDrawnStartSecond = Double.NaN;
+    private float mDrawnScale;
+    // 已显示的像素点数, 追加数据时用于计算新增的列
+    private int mWaveLength;
+    // 追加数据时保持显示末尾
+    private boolean mAutoFollow;
 
     @Nullable private WaveFormListener mWaveFormListener;
+    @Nullable private WaveFrameMetricsListener mFrameMetricsListener;
+    private final WaveFrameMetrics mFrameMetrics = new WaveFrameMetrics();
     private ScaleDragDetector mScaleDragDetector;
     private GestureDetectorCompat mGestureDetector;
     private FlingRunnable mCurrentFlingRunnable;
@@ -76,10 +125,17 @@ public class WaveFormView extends View implements OnScaleDragGestureListener {
         int textSize = 24;
         int labelColor = Color.BLACK;
         int labelWidth = 2;
+        int labelHeight = 24;
+        int labelMinSpace = 72;
+        int tileCacheSize = DEFAULT_TILE_CACHE_SIZE;
+        int playheadColor = Color.RED;
+        int playheadWidth = 2;
+        int playedColor = waveformColor;
 
         if (attrs != null) {
             TypedArray typedArray = context.obtainStyledAttributes(attrs, R.styleable.WaveFormView);
-            mMaxScale = typedArray.getFloat(R.styleable.WaveFormView_wf_waveform_max_scale, 3f);
+            mViewport.setMaxScale(
+                    typedArray.getFloat(R.styleable.WaveFormView_wf_waveform_max_scale, 3f));
             waveformColor =
                     typedArray.getColor(R.styleable.WaveFormView_wf_waveform_color, Color.BLACK);
             textColor =
@@ -91,11 +147,23 @@ public class WaveFormView extends View implements OnScaleDragGestureListener {
             labelWidth =
                     typedArray.getDimensionPixelSize(R.styleable.WaveFormView_wf_time_label_width,
                             2);
-            mTimeLabelHeight =
+            labelHeight =
                     typedArray.getDimensionPixelSize(R.styleable.WaveFormView_wf_time_label_height,
                             24);
-            mTimeLabelMinSpace = typedArray.getDimensionPixelSize(
+            labelMinSpace = typedArray.getDimensionPixelSize(
                     R.styleable.WaveFormView_wf_time_label_min_space, 72);
+            mLineBatch.setRenderMode(
+                    typedArray.getInt(R.styleable.WaveFormView_wf_render_mode, RENDER_MODE_LINES));
+            mLineBatch.setChannelMode(typedArray.getInt(R.styleable.WaveFormView_wf_channel_mode,
+                    CHANNEL_MODE_MERGED));
+            tileCacheSize = typedArray.getInt(R.styleable.WaveFormView_wf_tile_cache_size,
+                    DEFAULT_TILE_CACHE_SIZE);
+            playheadColor =
+                    typedArray.getColor(R.styleable.WaveFormView_wf_playhead_color, playheadColor);
+            playheadWidth = typedArray.getDimensionPixelSize(
+                    R.styleable.WaveFormView_wf_playhead_width, playheadWidth);
+            playedColor =
+                    typedArray.getColor(R.styleable.WaveFormView_wf_played_color, waveformColor);
             typedArray.recycle();
         }
 
@@ -104,32 +172,48 @@ public class WaveFormView extends View implements OnScaleDragGestureListener {
         mWaveFormPaint.setStyle(Paint.Style.FILL_AND_STROKE);
         mWaveFormPaint.setStrokeWidth(0);
 
-        mTimeTextPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
-        mTimeTextPaint.setColor(textColor);
-        mTimeTextPaint.setTextSize(textSize);
-        mTimeTextHeight = Math.abs(mTimeTextPaint.descent() - mTimeTextPaint.ascent());
+        mTilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        mPlaceholderPaint = new Paint(mWaveFormPaint);
+        mPlayhead = new WavePlayhead(this, mViewport, mWaveFormPaint, playheadColor,
+                playheadWidth, playedColor);
+        mPlayhead.setHost(new WavePlayhead.Host() {
+            @Override public void invalidatePlayhead(int left, int top, int right, int bottom) {
+                // 不标记静态内容变化, 下一帧从位图层合成
+                WaveFormView.super.invalidate(left, top, right, bottom);
+            }
+        });
+        // 标记与播放头同宽
+        mRegionLayer = new WaveRegionLayer(this, mViewport, playheadWidth);
+        mRegionEdgeSlop = ViewConfiguration.get(context).getScaledTouchSlop();
+        mLoadingPaint = new Paint(mWaveFormPaint);
+        mLoadingPaint.setAlpha(0x60);
+        setTileCacheSize(tileCacheSize);
 
-        mTimeLabelPaint = new Paint();
-        mTimeLabelPaint.setColor(labelColor);
-        mTimeLabelPaint.setStyle(Paint.Style.FILL_AND_STROKE);
-        mTimeLabelPaint.setStrokeWidth(labelWidth);
+        mTimeAxis = new WaveTimeAxis(textColor, textSize, labelColor, labelWidth, labelHeight,
+                labelMinSpace);
 
         mScaleDragDetector = new ScaleDragDetector(context, this);
         mGestureDetector =
                 new GestureDetectorCompat(context, new GestureDetector.SimpleOnGestureListener());
         mGestureDetector.setOnDoubleTapListener(new GestureDetector.OnDoubleTapListener() {
             @Override public boolean onSingleTapConfirmed(MotionEvent e) {
+                WaveRegion region = findRegionAt(e.getX());
+                if (region != null && mRegionListener != null) {
+                    mRegionListener.onRegionClick(region);
+                    return true;
+                }
                 return false;
             }
 
             @Override public boolean onDoubleTap(MotionEvent e) {
                 float x = e.getX();
-                float maxScale = mMaxScale;
+                float scale = mViewport.getScale();
+                float maxScale = mViewport.getMaxScale();
                 float minScale = 1;
                 float mediumScale = (maxScale + minScale) / 2;
-                if (mScale < mediumScale) {
+                if (scale < mediumScale) {
                     setScale(mediumScale, x, true);
-                } else if (mScale >= mediumScale && mScale < maxScale) {
+                } else if (scale >= mediumScale && scale < maxScale) {
                     setScale(maxScale, x, true);
                 } else {
                     setScale(minScale, x, true);
@@ -147,97 +231,206 @@ public class WaveFormView extends View implements OnScaleDragGestureListener {
         if (info == null) {
             return;
         }
+        releaseLoadTask();
+        releaseModel();
         mWaveFormInfo = info;
+        mRangeIndex = null;
+        clearTileCache();
         initWave(info);
+        buildLevels(info);
 
-        int width = getMeasuredWidth();
-        if (mWaveFormListener != null && width > 0) {
-            double viewSeconds = WaveUtil.pixelsToSeconds(width, info.getSample_rate(),
-                    info.getSamples_per_pixel(), mScale);
-            mWaveFormListener.onScrollChanged(mStartSecond, mStartSecond + viewSeconds);
+        if (getMeasuredWidth() > 0) {
+            dispatchScrollChanged();
         }
 
         invalidate();
     }
 
-    public void initWave(@NonNull WaveFormInfo info) {
-        int sampleRate = info.getSample_rate();
-        int samplesPerPixel = info.getSamples_per_pixel();
-        int length = info.getLength();
-        mTotalSecond = WaveUtil.dataPixelsToSecond(length, sampleRate, samplesPerPixel);
-        computerMinScaleFactor();
+    /**
+     * 使用共享的波形, 与其他视图 (如列表中的其他项、缩略图) 共用降采样层级和块位图;
+     * 显示在窗口上期间持有模型的引用
+     */
+    public void setModel(@Nullable WaveFormModel model) {
+        if (model == mModel) {
+            return;
+        }
+        if (model == null) {
+            releaseModel();
+            return;
+        }
+        setWave(model.getInfo());
+        mModel = model;
+        if (mAttached) {
+            model.acquire();
+        }
+        // 下一帧按绘制参数选择模型中的块缓存
+        cancelTileTasks();
+        mTileCache = null;
     }
 
-    @Override protected void onSizeChanged(int w, int h, int oldw, int oldh) {
-        computerMinScaleFactor();
+    @Nullable public WaveFormModel getModel() {
+        return mModel;
+    }
 
-        if (mWaveFormListener != null && w > 0 && mWaveFormInfo != null) {
-            double viewSeconds =
-                    WaveUtil.pixelsToSeconds(getMeasuredWidth(), mWaveFormInfo.getSample_rate(),
-                            mWaveFormInfo.getSamples_per_pixel(), mScale);
-            mWaveFormListener.onScrollChanged(mStartSecond, mStartSecond + viewSeconds);
+    private void releaseModel() {
+        if (mModel == null) {
+            return;
+        }
+        cancelTileTasks();
+        if (mAttached) {
+            mModel.release();
         }
+        mModel = null;
+        mTileCache = mOwnTileCache;
     }
 
-    private void computerMinScaleFactor() {
-        int width = getMeasuredWidth();
+    public void setWaveAsync(WaveFormCache.Loader loader) {
+        setWaveAsync(loader, null, null);
+    }
+
+    /**
+     * 在后台线程读取波形并生成降采样层级, 加载期间显示加载状态;
+     * 完成后在主线程把同一份数据同时交给本视图和 thumbView
+     */
+    public void setWaveAsync(WaveFormCache.Loader loader, @Nullable WaveFormThumbView thumbView,
+            @Nullable WaveFormLoadListener listener) {
+        WaveLoadTask.start(loader, this, thumbView, listener);
+    }
+
+    public boolean isLoading() {
+        return mLoadTask != null;
+    }
+
+    void onWaveLoadStarted(WaveLoadTask task) {
+        releaseLoadTask();
+        releaseModel();
+        mLoadTask = task;
+        mWaveFormInfo = null;
+        mRangeIndex = null;
+        cancelFling();
+        cancelAnimation();
+        clearTileCache();
+        invalidate();
+    }
+
+    // info 为 null 表示加载失败; index 为后台建立的区间统计索引
+    void onWaveLoadFinished(WaveLoadTask task, @Nullable WaveFormInfo info,
+            @Nullable WaveRangeIndex index) {
+        if (mLoadTask != task) {
+            return;
+        }
+        mLoadTask = null;
+        if (info != null) {
+            setWave(info);
+            mRangeIndex = index;
+        } else {
+            invalidate();
+        }
+    }
 
-        if (mWaveFormInfo == null || width <= 0) {
+    // 降采样层级在后台生成, 完成前 drawWave / drawPlaceholder 只用已有的层级
+    private void buildLevels(final WaveFormInfo info) {
+        if (info.hasAllLevels()) {
             return;
         }
-        mMinScale = (float) width / mWaveFormInfo.getLength();
-        mScale = verifyScale(mScale);
-    }
-
-    // 计算 缩放的时间间距。 根据 sampleRate 和 samplesPerPixel 计算合适的区间内，选择最小秒(1s ,2s,5s,10s,20s,30s)
-    private int getSecondScale(int sampleRate, int samplesPerPixel) {
-        int baseSecs = 1; // seconds
-        int index = 0;
-        int second;
-        while (true) {
-            second = baseSecs * SECOND_STEPS[index];
-            int pixels = WaveUtil.secondsToPixels(second, sampleRate, samplesPerPixel, mScale);
-            if (pixels < mTimeLabelMinSpace) {
-                if (index++ == SECOND_STEPS.length) {
-                    baseSecs *= 60; // seconds -> minutes -> hours
-                    index = 0;
+        WaveLoadTask.buildLevels(info, new Runnable() {
+            @Override public void run() {
+                if (mWaveFormInfo == info) {
+                    invalidate();
                 }
-            } else {
-                // Spacing OK
-                break;
             }
+        });
+    }
+
+    private void releaseLoadTask() {
+        if (mLoadTask != null) {
+            mLoadTask.release(this);
+            mLoadTask = null;
         }
-        return second;
     }
 
-    @Override public void onDrag(float dx, float dy) {
-        if (mWaveFormInfo == null || mScaleDragDetector.isScaling()) {
+    public void initWave(@NonNull WaveFormInfo info) {
+        mWaveLength = info.getLength();
+        mViewport.setWave(info);
+        mTimeAxis.reset();
+    }
+
+    // 调用 WaveFormInfo.appendPeaks 之后通知, 只重绘新增的列; 跟随模式下滚动到末尾。
+    // 只读的波形 (映射或按块解码) 不会变化, 直接忽略
+    public void notifyWaveAppended() {
+        WaveFormInfo info = mWaveFormInfo;
+        if (info == null || info.isReadOnly() || info.getLength() == mWaveLength) {
             return;
         }
+        int oldLength = mWaveLength;
+        int newLength = info.getLength();
+
+        mWaveLength = newLength;
+        mViewport.notifyLengthChanged();
+        invalidateTilesFrom(oldLength);
+        if (mModel != null) {
+            mModel.updateRangeIndex();
+        } else if (mRangeIndex != null) {
+            mRangeIndex.update();
+        }
 
-        int sampleRate = mWaveFormInfo.getSample_rate();
-        int samplesPerPixel = mWaveFormInfo.getSamples_per_pixel();
-
-        if (dx == 0) {
+        if (mAutoFollow && mViewport.setStartSecond(mViewport.getTotalSecond())) {
+            dispatchScrollChanged();
+            invalidate();
             return;
         }
 
-        double dxSeconds = WaveUtil.pixelsToSeconds(-dx, sampleRate, samplesPerPixel, mScale);
-        double viewSeconds =
-                WaveUtil.pixelsToSeconds(getMeasuredWidth(), sampleRate, samplesPerPixel, mScale);
-        mStartSecond += dxSeconds;
-        if (mStartSecond + viewSeconds > mTotalSecond) {
-            mStartSecond = mTotalSecond - viewSeconds;
+        float scale = mViewport.getScale();
+        double startX = mViewport.getStartX();
+        float left = (float) (oldLength * scale - startX);
+        float right = (float) (newLength * scale - startX);
+        int strokeWidth = (int) Math.ceil(scale);
+        if (right >= 0 && left < getMeasuredWidth()) {
+            invalidate((int) left - strokeWidth, 0, (int) Math.ceil(right) + strokeWidth,
+                    getMeasuredHeight());
         }
-        if (mStartSecond < 0) {
-            mStartSecond = 0d;
+    }
+
+    public void setAutoFollow(boolean autoFollow) {
+        mAutoFollow = autoFollow;
+        if (autoFollow && mWaveFormInfo != null) {
+            setStartTime(mViewport.clampStartSecond(mViewport.getTotalSecond()));
         }
+    }
+
+    public boolean isAutoFollow() {
+        return mAutoFollow;
+    }
+
+    @Override protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        releaseStaticLayers();
+        mLineBatch.begin(w);
+        if (h != oldh) {
+            clearTileCache();
+        }
+        mViewport.setWidth(w);
+
+        if (w > 0 && mWaveFormInfo != null) {
+            dispatchScrollChanged();
+        }
+    }
 
+    private void dispatchScrollChanged() {
         if (mWaveFormListener != null) {
-            mWaveFormListener.onScrollChanged(mStartSecond, mStartSecond + viewSeconds);
+            mWaveFormListener.onScrollChanged(mViewport.getStartSecond(),
+                    mViewport.getEndSecond());
         }
+    }
 
-        invalidate();
+    @Override public void onDrag(float dx, float dy) {
+        if (mWaveFormInfo == null || mScaleDragDetector.isScaling()) {
+            return;
+        }
+
+        if (mViewport.scrollBy(-dx)) {
+            dispatchScrollChanged();
+            invalidateViewport();
+        }
     }
 
     @Override public void onFling(float startX, float startY, float velocityX, float velocityY) {
@@ -246,41 +439,17 @@ public class WaveFormView extends View implements OnScaleDragGestureListener {
         post(mCurrentFlingRunnable);
     }
 
-    private double mLastStartSecond;
-    private boolean mResetScaleStartSecond;
-
     @Override public void onScaleBegin() {
-        mResetScaleStartSecond = true;
+        mViewport.beginScale();
     }
 
     @Override public void onScale(float scaleFactor, float focusX, float focusY) {
-
         if (mWaveFormInfo == null) {
             return;
         }
-        float tempScale = verifyScale(mScale * scaleFactor);
-
-        if (tempScale != mScale) {
-            mScale = tempScale;
-            int sampleRate = mWaveFormInfo.getSample_rate();
-            int samplesPerPixel = mWaveFormInfo.getSamples_per_pixel();
-            float dx = focusX - (focusX - 0) * mScale;
-            double ds = WaveUtil.pixelsToSeconds(dx, sampleRate, samplesPerPixel, mScale);
-            if (mResetScaleStartSecond) {
-                mLastStartSecond = mStartSecond + ds;
-                mResetScaleStartSecond = false;
-            }
-
-            mStartSecond = verifyStartSecond(mLastStartSecond - ds, sampleRate, samplesPerPixel);
-
-            if (mWaveFormListener != null) {
-                double viewSeconds =
-                        WaveUtil.pixelsToSeconds(getMeasuredWidth(), sampleRate, samplesPerPixel,
-                                mScale);
-                mWaveFormListener.onScrollChanged(mStartSecond, mStartSecond + viewSeconds);
-            }
-
-            invalidate();
+        if (mViewport.scaleBy(scaleFactor, focusX)) {
+            dispatchScrollChanged();
+            invalidateViewport();
         }
     }
 
@@ -288,29 +457,17 @@ public class WaveFormView extends View implements OnScaleDragGestureListener {
         if (mWaveFormInfo == null) {
             return;
         }
-        mStartSecond = verifyStartSecond(mStartSecond, mWaveFormInfo.getSample_rate(),
-                mWaveFormInfo.getSamples_per_pixel());
-        invalidate();
+        mViewport.endScale();
+        flushViewport();
     }
 
     public void setScale(float scale) {
         if (mWaveFormInfo == null) {
             return;
         }
-        int sampleRate = mWaveFormInfo.getSample_rate();
-        int samplesPerPixel = mWaveFormInfo.getSamples_per_pixel();
-
-        float tempScale = verifyScale(scale);
-        if (mScale != tempScale) {
-            mScale = tempScale;
-            mStartSecond = verifyStartSecond(mStartSecond, sampleRate, samplesPerPixel);
-            if (mWaveFormListener != null) {
-                double viewSeconds =
-                        WaveUtil.pixelsToSeconds(getMeasuredWidth(), sampleRate, samplesPerPixel,
-                                mScale);
-                mWaveFormListener.onScrollChanged(mStartSecond, mStartSecond + viewSeconds);
-            }
-            invalidate();
+        if (mViewport.setScale(scale)) {
+            dispatchScrollChanged();
+            invalidateViewport();
         }
     }
 
@@ -320,40 +477,17 @@ public class WaveFormView extends View implements OnScaleDragGestureListener {
         }
 
         if (animate) {
-            mAnimatedZoomRunnable = new AnimatedZoomRunnable(mScale, scale, focusX);
+            mAnimatedZoomRunnable = new AnimatedZoomRunnable(mViewport.getScale(), scale, focusX);
             post(mAnimatedZoomRunnable);
         } else {
             setScale(scale);
         }
     }
 
-    private double verifyStartSecond(double startSecond, int sampleRate, int samplesPerPixel) {
-        double viewSeconds =
-                WaveUtil.pixelsToSeconds(getMeasuredWidth(), sampleRate, samplesPerPixel, mScale);
-        if (startSecond + viewSeconds > mTotalSecond) {
-            startSecond = mTotalSecond - viewSeconds;
-        }
-        if (startSecond < 0) {
-            startSecond = 0d;
-        }
-
-        return startSecond;
-    }
-
-    private float verifyScale(float scale) {
-        if (scale < mMinScale) {
-            scale = mMinScale;
-        } else if (scale > mMaxScale) {
-            scale = mMaxScale;
-        }
-
-        float smokeWidth = (int) Math.ceil(scale);
-        smokeWidth = smokeWidth < 0 ? 0 : smokeWidth;
-        mWaveFormPaint.setStrokeWidth(smokeWidth);
-        return scale;
-    }
-
     @Override public boolean onTouchEvent(MotionEvent event) {
+        if (onRegionResizeEvent(event)) {
+            return true;
+        }
 
         int action = event.getActionMasked();
         switch (action) {
@@ -383,109 +517,391 @@ public class WaveFormView extends View implements OnScaleDragGestureListener {
         return handled;
     }
 
+    @Override protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mAttached = true;
+        if (mModel != null) {
+            mModel.acquire();
+        }
+        mPlayhead.onAttachedToWindow();
+        mRegionLayer.onAttachedToWindow();
+        mFrameMetrics.updateFrameInterval(this);
+    }
+
     @Override protected void onDetachedFromWindow() {
+        // 加载任务不随离开窗口取消: 结果照常交给视图, 重新 attach 后直接显示
         cancelFling();
         cancelAnimation();
+        clearTileCache();
+        mPlayhead.onDetachedFromWindow();
+        mRegionLayer.onDetachedFromWindow();
+        releaseStaticLayers();
+        mAttached = false;
+        if (mModel != null) {
+            mModel.release();
+        }
         super.onDetachedFromWindow();
     }
 
+    // 播放头以外的重绘都视为静态内容变化, 位图层失效; 可能在构造完成前被调用
+    @Override public void invalidate() {
+        onStaticChanged();
+        super.invalidate();
+    }
+
+    @Override public void invalidate(Rect dirty) {
+        onStaticChanged();
+        super.invalidate(dirty);
+    }
+
+    @Override public void invalidate(int l, int t, int r, int b) {
+        onStaticChanged();
+        super.invalidate(l, t, r, b);
+    }
+
+    private void onStaticChanged() {
+        mStaticChanged = true;
+        mLayersValid = false;
+    }
+
     @Override protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
 
         if (mWaveFormInfo == null) {
+            if (mLoadTask != null) {
+                drawLoading(canvas);
+            }
             return;
         }
-        drawWave(canvas, mWaveFormInfo);
-        drawTimeLabel(canvas, mWaveFormInfo);
+        WaveFrameMetricsListener metricsListener = mFrameMetricsListener;
+        if (metricsListener != null) {
+            mFrameMetrics.begin(mCurrentFlingRunnable != null,
+                    mCurrentFlingRunnable != null || mAnimatedZoomRunnable != null);
+            mLineBatch.resetCounters();
+        }
+        mDrawnStartSecond = mViewport.getStartSecond();
+        mDrawnScale = mViewport.getScale();
+        int playheadX = mPlayhead.getX();
+        if (!mStaticChanged && playheadX != WavePlayhead.NO_POSITION && prepareStaticLayers()) {
+            // 上一帧之后只有播放头移动
+            drawStaticLayers(canvas, playheadX);
+        } else {
+            canvas.getClipBounds(mClipRect);
+            drawStatic(canvas, playheadX);
+        }
+        mStaticChanged = false;
+        mPlayhead.draw(canvas, getMeasuredHeight());
+
+        if (metricsListener != null) {
+            mFrameMetrics.setLines(mLineBatch.getDrawnColumns(), mLineBatch.getDrawnLines());
+            mFrameMetrics.end();
+            metricsListener.onFrameMetrics(this, mFrameMetrics);
+        }
     }
 
-    private void drawWave(Canvas canvas, @NonNull WaveFormInfo info) {
+    // 区域、波形、已播放部分 ([0, playedRight) 再画一遍)、时间轴和标记; mClipRect 为当前裁剪范围
+    private void drawStatic(Canvas canvas, int playedRight) {
+        float scale = mViewport.getScale();
+        int strokeWidth = (int) Math.ceil(scale);
+        mWaveFormPaint.setStrokeWidth(strokeWidth);
 
-        int width = getMeasuredWidth();
-        int height = getMeasuredHeight();
+        mRegionLayer.drawRegions(canvas, getMeasuredHeight());
+        selectTileCache();
+        if (mTileCache != null) {
+            drawWaveTiles(canvas, mWaveFormInfo, false);
+        } else {
+            drawWave(canvas, mWaveFormInfo, scale, mViewport.getStartX(), getMeasuredWidth(),
+                    getMeasuredHeight(), mWaveFormPaint);
+        }
+        // 已播放部分: 裁剪到播放头左侧, 用已播放的颜色再画一遍
+        if (mPlayhead.hasPlayedColor() && playedRight > mClipRect.left) {
+            int saveCount = canvas.save();
+            canvas.clipRect(0, 0, playedRight, getMeasuredHeight());
+            if (mTileCache != null) {
+                // 播放头右侧的块不再绘制
+                int clipRight = mClipRect.right;
+                mClipRect.right = Math.min(clipRight, playedRight);
+                drawWaveTiles(canvas, mWaveFormInfo, true);
+                mClipRect.right = clipRight;
+            } else {
+                Paint playedPaint = mPlayhead.getPlayedPaint();
+                playedPaint.setStrokeWidth(strokeWidth);
+                drawWave(canvas, mWaveFormInfo, scale, mViewport.getStartX(),
+                        Math.min(playedRight + strokeWidth, getMeasuredWidth()),
+                        getMeasuredHeight(), playedPaint);
+            }
+            canvas.restoreToCount(saveCount);
+        }
+        // 只重绘波形局部 (如后台块完成) 时, 时间轴区域可能不在裁剪范围内
+        if (mClipRect.top < mTimeAxis.getHeight()) {
+            mTimeAxis.draw(canvas, mViewport);
+        }
+        mRegionLayer.drawMarkers(canvas, getMeasuredHeight());
+    }
 
-        int sampleRate = info.getSample_rate();
-        int samplesPerPixel = info.getSamples_per_pixel();
-        List<Integer> data = info.getData();
-        int dataLength = info.getLength();
-        boolean is8Bit = info.getBits() == 8;
+    // 静态内容有变化后第一次只有播放头移动时, 把静态内容分别按未播放和已播放绘制到位图层
+    private boolean prepareStaticLayers() {
+        if (mLayersValid) {
+            return true;
+        }
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0) {
+            return false;
+        }
+        mStaticLayer = drawStaticLayer(mStaticLayer, width, height, 0);
+        if (mPlayhead.hasPlayedColor()) {
+            mPlayedLayer = drawStaticLayer(mPlayedLayer, width, height, width);
+        }
+        mLayersValid = true;
+        return true;
+    }
 
-        // 改变 x 的 叠加值，放大或缩小波形
+    private Bitmap drawStaticLayer(@Nullable Bitmap layer, int width, int height,
+            int playedRight) {
+        if (layer == null || layer.getWidth() != width || layer.getHeight() != height) {
+            layer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        } else {
+            layer.eraseColor(Color.TRANSPARENT);
+        }
+        mLayerCanvas.setBitmap(layer);
+        mClipRect.set(0, 0, width, height);
+        drawStatic(mLayerCanvas, playedRight);
+        mLayerCanvas.setBitmap(null);
+        return layer;
+    }
 
-        int startTimePixel = (int) (mStartSecond * sampleRate / samplesPerPixel);
+    // 播放头左侧取已播放的位图层, 右侧取未播放的, 每个像素只来自其中一个
+    private void drawStaticLayers(Canvas canvas, int playheadX) {
+        int width = getWidth();
+        int height = getHeight();
+        int split = mPlayhead.hasPlayedColor() ? Math.max(0, Math.min(playheadX, width)) : 0;
+        if (split > 0) {
+            int saveCount = canvas.save();
+            canvas.clipRect(0, 0, split, height);
+            canvas.drawBitmap(mPlayedLayer, 0, 0, null);
+            canvas.restoreToCount(saveCount);
+        }
+        if (split < width) {
+            int saveCount = canvas.save();
+            canvas.clipRect(split, 0, width, height);
+            canvas.drawBitmap(mStaticLayer, 0, 0, null);
+            canvas.restoreToCount(saveCount);
+        }
+    }
 
-        int dataPixel = startTimePixel;
-        float axisX = 0;
-        int finalAxisX = -1;
-        int low;
-        int high;
-        int lowY;
-        int highY;
+    private void releaseStaticLayers() {
+        mStaticLayer = null;
+        mPlayedLayer = null;
+        mLayersValid = false;
+    }
 
-        while (axisX < width) {
-            if (dataPixel < 0 || dataPixel >= dataLength) {
-                break;
-            }
+    // 加载中: 在中线画一条淡色的线
+    private void drawLoading(Canvas canvas) {
+        float centerY = getMeasuredHeight() / 2f;
+        canvas.drawLine(0, centerY, getMeasuredWidth(), centerY, mLoadingPaint);
+    }
 
-            int nearestAxisX = (int) axisX;
-            if (nearestAxisX != finalAxisX) {
-                finalAxisX = nearestAxisX;
-                low = (is8Bit ? data.get(dataPixel * 2) * 256 : data.get(dataPixel * 2)) + 32768;
-                high = (is8Bit ? data.get(dataPixel * 2 + 1) * 256 : data.get(dataPixel * 2 + 1))
-                        + 32768;
-                lowY = height - low * height / 65536;
-                highY = height - high * height / 65536;
-                canvas.drawLine(finalAxisX, lowY, finalAxisX, highY, mWaveFormPaint);
+    // 视口变化后请求重绘; 与最近一帧相差不足 1 像素时先不重绘, 累积到之后的变化或 flushViewport
+    private void invalidateViewport() {
+        if (mWaveFormInfo != null && mDrawnScale == mViewport.getScale()) {
+            if (Math.abs(mViewport.secondToX(mDrawnStartSecond)) < 1) {
+                return;
             }
+        }
+        invalidate();
+    }
 
-            axisX += mScale;
-            dataPixel++;
+    // 手势或动画结束时, 补画被合并掉的变化
+    private void flushViewport() {
+        if (mDrawnStartSecond != mViewport.getStartSecond()
+                || mDrawnScale != mViewport.getScale()) {
+            invalidate();
         }
     }
 
-    private void drawTimeLabel(Canvas canvas, @NonNull WaveFormInfo info) {
-        int sampleRate = info.getSample_rate();
-        int samplesPerPixel = info.getSamples_per_pixel();
+    // 只重绘某个块当前在屏幕上的区域
+    private void invalidateTile(int step, int tile) {
+        float scale = mViewport.getScale();
+        if (mWaveFormInfo == null || step != WaveTileCache.scaleStep(scale)) {
+            return;
+        }
+        float tileScale = WaveTileCache.stepScale(step);
+        float ratio = scale / tileScale;
+        double startX = mViewport.getStartX(tileScale);
+        double left = (tile * (double) WaveTileCache.TILE_WIDTH - startX) * ratio;
+        double right = left + WaveTileCache.TILE_WIDTH * ratio;
+        if (right >= 0 && left < getMeasuredWidth()) {
+            invalidate((int) Math.floor(left), 0, (int) Math.ceil(right), getMeasuredHeight());
+        }
+    }
 
+    // 使用 WaveFormModel 时, 按当前绘制参数取模型中的块缓存; mOwnTileCache 为 null 表示不缓存
+    private void selectTileCache() {
+        if (mModel == null || mOwnTileCache == null) {
+            return;
+        }
+        long style = WaveFormModel.tileStyle(getMeasuredHeight(), mWaveFormPaint.getColor(),
+                mLineBatch.getRenderMode(), mLineBatch.getChannelMode());
+        if (mTileCache == null || style != mTileStyle) {
+            cancelTileTasks();
+            mTileCache = mModel.getTileCache(style);
+            mTileStyle = style;
+        }
+    }
+
+    // 按量化后的缩放比例取块位图并拉伸到当前缩放比例, 缺失的块交给后台线程绘制, 先显示占位;
+    // played 为 true 时是已播放部分的第二遍, 使用已播放的颜色
+    private void drawWaveTiles(Canvas canvas, @NonNull WaveFormInfo info, boolean played) {
         int width = getMeasuredWidth();
+        int height = getMeasuredHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
 
-        int intervalSecond = getSecondScale(sampleRate, samplesPerPixel);
+        float scale = mViewport.getScale();
+        int step = WaveTileCache.scaleStep(scale);
+        float tileScale = WaveTileCache.stepScale(step);
+        float ratio = scale / tileScale;
+
+        double startX = mViewport.getStartX(tileScale);
+        double endX = Math.min(startX + width / ratio, info.getLength() * (double) tileScale);
+        int firstTile = (int) (startX / WaveTileCache.TILE_WIDTH);
+        int lastTile = (int) Math.ceil(endX / WaveTileCache.TILE_WIDTH);
+
+        mVisibleStep = step;
+        mVisibleFirstTile = firstTile;
+        mVisibleLastTile = lastTile;
+        cancelStaleTileTasks();
+
+        int hits = 0;
+        int misses = 0;
+        for (int tile = firstTile; tile < lastTile; tile++) {
+            float left = (float) ((tile * (double) WaveTileCache.TILE_WIDTH - startX) * ratio);
+            mTileRect.set(left, 0, left + WaveTileCache.TILE_WIDTH * ratio, height);
+
+            Bitmap bitmap = mTileCache.get(step, tile);
+            if (bitmap == null) {
+                requestTile(info, step, tile, height);
+            }
+            // 不在本次重绘区域内的块跳过绘制
+            if (mTileRect.right < mClipRect.left || mTileRect.left >= mClipRect.right) {
+                continue;
+            }
+            if (bitmap != null) {
+                hits++;
+                canvas.drawBitmap(bitmap, null, mTileRect,
+                        played ? mPlayhead.getPlayedBitmapPaint() : mTilePaint);
+            } else {
+                misses++;
+                drawPlaceholder(canvas, info, startX * ratio, mTileRect, height,
+                        played ? mPlayhead.getPlayedPaint() : mPlaceholderPaint);
+            }
+        }
+        if (!played) {
+            mFrameMetrics.setCacheCounts(hits, misses);
+        }
+    }
 
-        //  第一轴标时间戳
-        int firstAxisLabelSecond = WaveUtil.roundUpToNearest(mStartSecond, intervalSecond);
+    private void requestTile(@NonNull WaveFormInfo info, int step, int tile, int height) {
+        long key = WaveTileCache.key(step, tile);
+        if (mTileTasks.get(key) != null) {
+            return;
+        }
+        WaveTileTask task = mTileCache.requestTile(info, step, tile, height, mWaveFormPaint,
+                mLineBatch.getRenderMode(), mLineBatch.getChannelMode(), this);
+        // 绘制失败过的块不再请求, 一直使用占位
+        if (task != null) {
+            mTileTasks.put(key, task);
+        }
+    }
 
-        //  第一轴标时间戳与起始时间戳的时间差
-        double firstAxisLabelOffsetSecond = firstAxisLabelSecond - mStartSecond;
+    @Override public void onTileReady(WaveTileTask task) {
+        long key = WaveTileCache.key(task.step, task.tile);
+        if (mTileTasks.get(key) == task) {
+            mTileTasks.remove(key);
+        }
+        invalidateTile(task.step, task.tile);
+    }
 
-        // 起始点到第一轴标时间戳的距离
-        int firstAxisLabelOffsetWidth =
-                WaveUtil.secondsToPixels(firstAxisLabelOffsetSecond, sampleRate, samplesPerPixel,
-                        mScale);
+    // 取消不在最近一帧可见范围内的块任务, 避免快速滑动或缩放后堆积;
+    // 共享的任务只在没有其他视图需要时取消
+    private void cancelStaleTileTasks() {
+        for (int i = mTileTasks.size() - 1; i >= 0; i--) {
+            WaveTileTask task = mTileTasks.valueAt(i);
+            if (task.step != mVisibleStep
+                    || task.tile < mVisibleFirstTile
+                    || task.tile >= mVisibleLastTile) {
+                mTileTasks.removeAt(i);
+                task.release(this);
+            }
+        }
+    }
 
-        int second = firstAxisLabelSecond;
+    private void cancelTileTasks() {
+        for (int i = mTileTasks.size() - 1; i >= 0; i--) {
+            mTileTasks.valueAt(i).release(this);
+        }
+        mTileTasks.clear();
+    }
 
-        while (true) {
-            int x = firstAxisLabelOffsetWidth + WaveUtil.secondsToPixels(
-                    (second - firstAxisLabelSecond), sampleRate, samplesPerPixel, mScale);
-            if (x >= width) {
-                break;
+    // 末尾追加数据后, 丢弃覆盖旧末尾的块和任务
+    private void invalidateTilesFrom(int dataLength) {
+        for (int i = mTileTasks.size() - 1; i >= 0; i--) {
+            if (WaveTileCache.isAfter(mTileTasks.keyAt(i), dataLength)) {
+                WaveTileTask task = mTileTasks.valueAt(i);
+                mTileTasks.removeAt(i);
+                task.release(this);
             }
+        }
+        if (mModel != null) {
+            mModel.removeTilesFrom(dataLength);
+        } else if (mTileCache != null) {
+            mTileCache.removeFrom(dataLength);
+        }
+    }
 
-            if (second != 0) {
-                canvas.drawLine(x, 0, x, mTimeLabelHeight, mTimeLabelPaint);
-                String timeString = second + "s";
-                float timeWidth = mTimeTextPaint.measureText(timeString);
-                canvas.drawText(timeString, x - timeWidth / 2f, mTimeLabelHeight + mTimeTextHeight,
-                        mTimeTextPaint);
-            }
-            second += intervalSecond;
+    // 用粗层级的数据直接绘制 rect 范围, viewStartX 为当前缩放比例下视图左边缘的绝对横坐标
+    private void drawPlaceholder(Canvas canvas, @NonNull WaveFormInfo info, double viewStartX,
+            RectF rect, int height, Paint paint) {
+        float scale = mViewport.getScale();
+        int level = WaveFormInfo.levelForScale(scale);
+        // 只用已生成的层级, 层级由 setWave 时的后台任务生成, 生成完成前不绘制占位
+        WaveFormInfo data = info.peekLevel(level, level + PLACEHOLDER_LEVEL_BIAS);
+        if (data == null) {
+            return;
         }
+        float dataScale = scale * data.getSamples_per_pixel() / info.getSamples_per_pixel();
+        paint.setStrokeWidth((int) Math.ceil(dataScale));
+
+        int left = (int) Math.floor(rect.left);
+        int width = (int) Math.ceil(rect.right) - left;
+        int saveCount = canvas.save();
+        canvas.clipRect(rect.left, rect.top, rect.right, rect.bottom);
+        canvas.translate(left, 0);
+        mLineBatch.addWave(info, data, scale, viewStartX + left, width, height);
+        mLineBatch.draw(canvas, paint);
+        canvas.restoreToCount(saveCount);
+    }
+
+    // 绘制缩放比例 scale 下, 绝对横坐标 [startX, startX + width) 的波形到 canvas 的 [0, width)
+    private void drawWave(Canvas canvas, @NonNull WaveFormInfo info, float scale, double startX,
+            int width, int height, Paint paint) {
+        int level = WaveFormInfo.levelForScale(scale);
+        WaveFormInfo data = info.peekLevel(level, level);
+        if (data == null) {
+            return;
+        }
+        mLineBatch.addWave(info, data, scale, startX, width, height);
+        mLineBatch.draw(canvas, paint);
     }
 
     private void cancelFling() {
         if (mCurrentFlingRunnable != null) {
             mCurrentFlingRunnable.cancelFling();
             mCurrentFlingRunnable = null;
+            mFrameMetrics.resetAnimation();
+            cancelStaleTileTasks();
         }
     }
 
@@ -493,26 +909,228 @@ public class WaveFormView extends View implements OnScaleDragGestureListener {
         if (mAnimatedZoomRunnable != null) {
             mAnimatedZoomRunnable.cancel();
             mAnimatedZoomRunnable = null;
+            mFrameMetrics.resetAnimation();
+            cancelStaleTileTasks();
         }
     }
 
+    // RENDER_MODE_LINES 或 RENDER_MODE_PATH
+    public void setRenderMode(int renderMode) {
+        if (mLineBatch.getRenderMode() != renderMode) {
+            mLineBatch.setRenderMode(renderMode);
+            clearTileCache();
+            invalidate();
+        }
+    }
+
+    // CHANNEL_MODE_MERGED 或 CHANNEL_MODE_LANES
+    public void setChannelMode(int channelMode) {
+        if (mLineBatch.getChannelMode() != channelMode) {
+            mLineBatch.setChannelMode(channelMode);
+            clearTileCache();
+            invalidate();
+        }
+    }
+
+    public int getChannelMode() {
+        return mLineBatch.getChannelMode();
+    }
+
+    // 分块位图缓存的字节上限, 0 表示不缓存, 每帧直接绘制
+    public void setTileCacheSize(int maxBytes) {
+        clearTileCache();
+        mOwnTileCache = maxBytes > 0 ? new WaveTileCache(maxBytes, false) : null;
+        mTileCache = mModel == null ? mOwnTileCache : null;
+        invalidate();
+    }
+
+    private void clearTileCache() {
+        cancelTileTasks();
+        if (mModel != null) {
+            // 共享的缓存不清空, 下一帧按新的绘制参数重新选择
+            mTileCache = null;
+        } else if (mTileCache != null) {
+            mTileCache.clear();
+        }
+    }
+
+    public int getRenderMode() {
+        return mLineBatch.getRenderMode();
+    }
+
     public void setWaveFormListener(@Nullable WaveFormListener waveFormListener) {
         mWaveFormListener = waveFormListener;
     }
 
+    // 每帧绘制的统计, 默认关闭; 为 null 时不计时
+    public void setFrameMetricsListener(@Nullable WaveFrameMetricsListener listener) {
+        mFrameMetricsListener = listener;
+    }
+
     public void setStartTime(double startSecond) {
-        mStartSecond = startSecond;
-
-        if (mWaveFormInfo != null) {
-            if (mWaveFormListener != null) {
-                double viewSeconds =
-                        WaveUtil.pixelsToSeconds(getMeasuredWidth(), mWaveFormInfo.getSample_rate(),
-                                mWaveFormInfo.getSamples_per_pixel(), mScale);
-                mWaveFormListener.onScrollChanged(mStartSecond, mStartSecond + viewSeconds);
+        if (mViewport.setStartSecond(startSecond) && mWaveFormInfo != null) {
+            dispatchScrollChanged();
+            invalidateViewport();
+        }
+    }
+
+    /**
+     * 播放位置的来源, 设置后每个 vsync 读取一次, 播放头移动时只重绘移动经过的竖条,
+     * 静态波形只在视口变化时重绘; null 停止读取, 播放头停在最后的位置
+     */
+    public void setPlaybackPositionProvider(@Nullable WavePositionProvider provider) {
+        mPlayhead.setProvider(provider);
+    }
+
+    // 直接设置播放位置, 如暂停后拖动进度条; NaN 隐藏播放头
+    public void setPlaybackPosition(double second) {
+        mPlayhead.setPosition(second);
+    }
+
+    public double getPlaybackPosition() {
+        return mPlayhead.getPosition();
+    }
+
+    // 显示的区域和标记, 可与缩略图共用同一个 store
+    public void setRegionStore(@Nullable WaveRegionStore store) {
+        mRegionLayer.setStore(store);
+    }
+
+    @Nullable public WaveRegionStore getRegionStore() {
+        return mRegionLayer.getStore();
+    }
+
+    public void setRegionListener(@Nullable WaveRegionListener listener) {
+        mRegionListener = listener;
+    }
+
+    // 可编辑时, 在区域边缘或标记附近按下后拖动, 调整区域而不是滚动波形
+    public void setRegionsEditable(boolean editable) {
+        mRegionsEditable = editable;
+    }
+
+    @Nullable private WaveRegion findRegionAt(float x) {
+        WaveRegionStore store = mRegionLayer.getStore();
+        if (store == null || mWaveFormInfo == null) {
+            return null;
+        }
+        return store.findAt(mViewport.xToSecond(x), regionEdgeTolerance());
+    }
+
+    // 触摸误差对应的时长
+    private double regionEdgeTolerance() {
+        return mViewport.xToSecond(mRegionEdgeSlop) - mViewport.getStartSecond();
+    }
+
+    // 处理拖动调整区域的触摸事件, 返回 true 表示事件已消费, 不再交给滚动和缩放
+    private boolean onRegionResizeEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN: {
+                mResizeRegion = null;
+                if (!mRegionsEditable) {
+                    return false;
+                }
+                WaveRegion region = findRegionAt(event.getX());
+                if (region == null) {
+                    return false;
+                }
+                int edge = WaveRegionStore.edgeAt(region, mViewport.xToSecond(event.getX()),
+                        regionEdgeTolerance());
+                if (edge == WaveRegionStore.EDGE_NONE) {
+                    return false;
+                }
+                mResizeRegion = region;
+                mResizeEdge = edge;
+                ViewParent parent = getParent();
+                if (parent != null) {
+                    parent.requestDisallowInterceptTouchEvent(true);
+                }
+                cancelFling();
+                cancelAnimation();
+                return true;
+            }
+            case MotionEvent.ACTION_MOVE: {
+                WaveRegion region = mResizeRegion;
+                if (region == null) {
+                    return false;
+                }
+                double second = Math.max(0, Math.min(mViewport.xToSecond(event.getX()),
+                        mViewport.getTotalSecond()));
+                WaveRegionStore store = mRegionLayer.getStore();
+                if (store == null) {
+                    return true;
+                }
+                if (region.isMarker()) {
+                    store.setRange(region, second, second);
+                } else if (mResizeEdge == WaveRegionStore.EDGE_START) {
+                    store.setRange(region, Math.min(second, region.getEnd()), region.getEnd());
+                } else {
+                    store.setRange(region, region.getStart(), Math.max(second, region.getStart()));
+                }
+                return true;
             }
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL: {
+                WaveRegion region = mResizeRegion;
+                if (region == null) {
+                    return false;
+                }
+                mResizeRegion = null;
+                ViewParent parent = getParent();
+                if (parent != null) {
+                    parent.requestDisallowInterceptTouchEvent(false);
+                }
+                if (mRegionListener != null) {
+                    mRegionListener.onRegionResized(region);
+                }
+                return true;
+            }
+        }
+        return mResizeRegion != null;
+    }
 
-            invalidate();
+    // 当前波形的区间统计索引, 用于选区的峰值和平均振幅; setWaveAsync 时在后台建立,
+    // 否则第一次调用时建立; 数据追加后只更新新增部分。使用 WaveFormModel 时取模型中共享的索引
+    @Nullable public WaveRangeIndex getRangeIndex() {
+        WaveFormInfo info = mWaveFormInfo;
+        if (info == null) {
+            return null;
+        }
+        if (mModel != null) {
+            return mModel.getRangeIndex();
+        }
+        if (mRangeIndex == null) {
+            mRangeIndex = WaveRangeIndex.build(info);
+        } else {
+            mRangeIndex.update();
+        }
+        return mRangeIndex;
+    }
+
+    /**
+     * 滚动到当前起点之后下一段振幅不低于 threshold 的区域, 使其从视图左边缘开始;
+     * 起点已处于这样的区域中时, 跳过这一段
+     *
+     * @param threshold 相对满刻度的振幅, 0 ~ 1
+     * @return 是否找到并滚动
+     */
+    public boolean scrollToNextLoud(float threshold) {
+        WaveRangeIndex index = getRangeIndex();
+        if (index == null) {
+            return false;
         }
+        int fullScale = mWaveFormInfo.getBits() == 8 ? 128 : 32768;
+        int level = (int) Math.ceil(threshold * fullScale);
+        int from = index.pixelAt(mViewport.getStartSecond());
+        int next = index.nextAbove(index.nextBelow(from, level), level);
+        if (next < 0) {
+            return false;
+        }
+        cancelFling();
+        cancelAnimation();
+        double startSecond = mViewport.getStartSecond();
+        setStartTime(index.secondAt(next));
+        return mViewport.getStartSecond() != startSecond;
     }
 
     private class FlingRunnable implements Runnable {
@@ -527,9 +1145,7 @@ public class WaveFormView extends View implements OnScaleDragGestureListener {
             if (mWaveFormInfo == null) {
                 return;
             }
-            int sampleRate = mWaveFormInfo.getSample_rate();
-            int samplesPerPixel = mWaveFormInfo.getSamples_per_pixel();
-            int totalPixels = (int) (mWaveFormInfo.getLength() * mScale);
+            int totalPixels = mViewport.getTotalPixels();
 
             int minPixels = startX;
             if (minPixels < 0) {
@@ -542,14 +1158,13 @@ public class WaveFormView extends View implements OnScaleDragGestureListener {
             }
 
             tempStartX = startX;
-            int flingStartX =
-                    WaveUtil.secondsToPixels(mStartSecond, sampleRate, samplesPerPixel, mScale)
-                            + startX;
+            int flingStartX = (int) mViewport.getStartX() + startX;
             scroller.fling(flingStartX, 0, velocityX, 0, minPixels, maxPixels, 0, 0);
         }
 
         @Override public void run() {
             if (scroller.isFinished() || mWaveFormInfo == null) {
+                onFlingFinished();
                 return;
             }
 
@@ -561,26 +1176,26 @@ public class WaveFormView extends View implements OnScaleDragGestureListener {
 
                 double startSecond =
                         WaveUtil.pixelsToSeconds(currentX - tempStartX, sampleRate, samplesPerPixel,
-                                mScale);
-                if (startSecond < 0) {
-                    startSecond = 0;
-                }
-
-                if (mStartSecond != startSecond) {
-                    mStartSecond = startSecond;
-                    if (mWaveFormListener != null) {
-                        double viewSeconds =
-                                WaveUtil.pixelsToSeconds(getMeasuredWidth(), sampleRate,
-                                        samplesPerPixel, mScale);
-                        mWaveFormListener.onScrollChanged(mStartSecond, mStartSecond + viewSeconds);
-                    }
-
-                    invalidate();
+                                mViewport.getScale());
+                if (mViewport.setStartSecond(startSecond)) {
+                    dispatchScrollChanged();
+                    invalidateViewport();
                 }
                 postOnAnimationCompat(this);
+            } else {
+                onFlingFinished();
             }
         }
 
+        // 自然结束或取消后的最后一次回调
+        private void onFlingFinished() {
+            if (mCurrentFlingRunnable == this) {
+                mCurrentFlingRunnable = null;
+                mFrameMetrics.resetAnimation();
+            }
+            flushViewport();
+        }
+
         public void cancelFling() {
             scroller.abortAnimation();
         }
@@ -607,12 +1222,16 @@ public class WaveFormView extends View implements OnScaleDragGestureListener {
         @Override public void run() {
             float t = interpolate();
             float scale = startScale + t * (targetScale - startScale);
-            float deltaScale = scale / mScale;
+            float deltaScale = scale / mViewport.getScale();
 
             onScale(deltaScale, focalX, 0);
             if (t < 1f && !canceled) {
                 postOnAnimationCompat(this);
             } else {
+                if (mAnimatedZoomRunnable == this) {
+                    mAnimatedZoomRunnable = null;
+                    mFrameMetrics.resetAnimation();
+                }
                 onScaleEnd();
             }
         }
@@ -0,0 +1,129 @@
+package me.relex.widget.waveform;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.Display;
+import android.view.View;
+
+/**
+ * 一帧绘制的统计, 由视图复用, 只在设置了 {@link WaveFrameMetricsListener} 时计时
+ *
+ * 掉帧只在惯性滑动或缩放动画期间统计: 此时每个 vsync 都会请求重绘,
+ * 相邻两帧的间隔超过刷新间隔的部分即为掉帧数; 手指拖动时重绘由触摸事件驱动, 不计掉帧
+ */
+public final class WaveFrameMetrics {
+
+    // 取不到屏幕刷新率时按 60Hz 计算
+    private static final long DEFAULT_FRAME_INTERVAL_NANOS = 1000000000L / 60;
+
+    private long mFrameIntervalNanos = DEFAULT_FRAME_INTERVAL_NANOS;
+    private long mFrameStartNanos;
+    private long mLastFrameNanos;
+    private boolean mLastAnimating;
+
+    private long mDrawNanos;
+    private int mColumns;
+    private int mLines;
+    private int mCacheHits;
+    private int mCacheMisses;
+    private boolean mFling;
+    private boolean mAnimating;
+    private int mDroppedFrames;
+
+    // onDraw 的耗时, 包括波形和时间轴
+    public long getDrawNanos() {
+        return mDrawNanos;
+    }
+
+    // 本帧在主线程直接绘制的列数, 不包括后台绘制的块
+    public int getColumns() {
+        return mColumns;
+    }
+
+    // 本帧提交给 Canvas 的竖线数, 分道模式下每列每个声道一条
+    public int getLines() {
+        return mLines;
+    }
+
+    // 本帧绘制时命中的缓存位图数 (WaveFormView 的块, WaveFormThumbView 的整张波形位图)
+    public int getCacheHits() {
+        return mCacheHits;
+    }
+
+    public int getCacheMisses() {
+        return mCacheMisses;
+    }
+
+    // 本帧是否处于惯性滑动中
+    public boolean isFling() {
+        return mFling;
+    }
+
+    // 本帧是否处于惯性滑动或缩放动画中
+    public boolean isAnimating() {
+        return mAnimating;
+    }
+
+    // 与上一帧之间丢掉的帧数
+    public int getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    public long getFrameIntervalNanos() {
+        return mFrameIntervalNanos;
+    }
+
+    // 按视图所在屏幕的刷新率计算帧间隔, API 17 以下使用默认的 60Hz
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    void updateFrameInterval(View view) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            return;
+        }
+        Display display = view.getDisplay();
+        if (display == null) {
+            return;
+        }
+        float refreshRate = display.getRefreshRate();
+        if (refreshRate >= 1) {
+            mFrameIntervalNanos = (long) (1000000000L / refreshRate);
+        }
+    }
+
+    // 动画结束时调用, 下一次动画的第一帧不与这次的最后一帧比较, 不把中间的空闲算作掉帧
+    void resetAnimation() {
+        mLastAnimating = false;
+    }
+
+    // 开始一帧, 清空计数
+    void begin(boolean fling, boolean animating) {
+        long now = System.nanoTime();
+        mDroppedFrames = 0;
+        if (animating && mLastAnimating && mLastFrameNanos != 0) {
+            long frames = (now - mLastFrameNanos + mFrameIntervalNanos / 2) / mFrameIntervalNanos;
+            mDroppedFrames = (int) Math.max(0, frames - 1);
+        }
+        mFrameStartNanos = now;
+        mLastFrameNanos = now;
+        mLastAnimating = animating;
+        mFling = fling;
+        mAnimating = animating;
+        mColumns = 0;
+        mLines = 0;
+        mCacheHits = 0;
+        mCacheMisses = 0;
+    }
+
+    void setLines(int columns, int lines) {
+        mColumns = columns;
+        mLines = lines;
+    }
+
+    void setCacheCounts(int hits, int misses) {
+        mCacheHits = hits;
+        mCacheMisses = misses;
+    }
+
+    void end() {
+        mDrawNanos = System.nanoTime() - mFrameStartNanos;
+    }
+}
@@ -0,0 +1,10 @@
+package me.relex.widget.waveform;
+
+import android.view.View;
+
+/**
+ * 每帧绘制结束后在主线程回调, metrics 只在回调内有效, 需要保存时请复制其中的值
+ */
+public interface WaveFrameMetricsListener {
+    void onFrameMetrics(View view, WaveFrameMetrics metrics);
+}
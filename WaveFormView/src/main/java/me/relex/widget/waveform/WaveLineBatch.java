@@ -0,0 +1,93 @@
+package me.relex.widget.waveform;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+
+/**
+ * 收集每列的竖线, 一次性提交给 Canvas, 代替每列一次 drawLine
+ *
+ * 列的计算在 {@link WaveColumnRenderer} 中, 这里只负责按绘制模式输出到 Android Canvas
+ */
+final class WaveLineBatch implements WaveCanvas {
+
+    private final WaveColumnRenderer mRenderer = new WaveColumnRenderer();
+    private int mRenderMode = WaveFormView.RENDER_MODE_LINES;
+    private final Path mPath = new Path();
+    private Canvas mCanvas;
+    private Paint mPaint;
+    // 自 resetCounters 以来提交的列数和竖线数
+    private int mDrawnColumns;
+    private int mDrawnLines;
+
+    void setRenderMode(int renderMode) {
+        mRenderMode = renderMode;
+    }
+
+    int getRenderMode() {
+        return mRenderMode;
+    }
+
+    void setChannelMode(int channelMode) {
+        mRenderer.setChannelMode(channelMode);
+    }
+
+    int getChannelMode() {
+        return mRenderer.getChannelMode();
+    }
+
+    // 开始新的一帧, columns 为本帧最多的列数
+    void begin(int columns) {
+        mRenderer.begin(columns);
+    }
+
+    // 收集缩放比例 scale 下, 绝对横坐标 [startX, startX + width) 的波形, 列坐标从 0 开始
+    void addWave(WaveFormInfo info, float scale, double startX, int width, int height) {
+        mRenderer.addWave(info, scale, startX, width, height);
+    }
+
+    void addWave(WaveFormInfo info, WaveFormInfo data, float scale, double startX, int width,
+            int height) {
+        mRenderer.addWave(info, data, scale, startX, width, height);
+    }
+
+    void add(float x, float startY, float endY) {
+        mRenderer.add(x, startY, endY);
+    }
+
+    void draw(Canvas canvas, Paint paint) {
+        mDrawnColumns += mRenderer.getColumnCount();
+        mDrawnLines += mRenderer.getCount() / 4;
+        mCanvas = canvas;
+        mPaint = paint;
+        mRenderer.draw(this);
+        mCanvas = null;
+        mPaint = null;
+    }
+
+    void resetCounters() {
+        mDrawnColumns = 0;
+        mDrawnLines = 0;
+    }
+
+    int getDrawnColumns() {
+        return mDrawnColumns;
+    }
+
+    int getDrawnLines() {
+        return mDrawnLines;
+    }
+
+    @Override public void drawLines(float[] lines, int offset, int count) {
+        if (mRenderMode == WaveFormView.RENDER_MODE_PATH) {
+            mPath.rewind();
+            for (int i = offset; i < offset + count; i += 4) {
+                mPath.moveTo(lines[i], lines[i + 1]);
+                mPath.lineTo(lines[i + 2], lines[i + 3]);
+            }
+            mCanvas.drawPath(mPath, mPaint);
+        } else {
+            mCanvas.drawLines(lines, offset, count, mPaint);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package me.relex.widget.waveform;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import android.view.View;
+import java.io.IOException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 在后台线程读取波形并生成全部降采样层级和主视图的区间统计索引, 完成后在主线程把同一份数据交给主视图和缩略图
+ *
+ * mView / mThumbView 只在主线程访问; 两个视图都不再等待 (设置了其他波形) 时任务取消。
+ * 离开窗口的视图仍然等待, 结果交给它后在重新 attach 时显示
+ */
+final class WaveLoadTask implements Runnable {
+
+    private static final ThreadPoolExecutor EXECUTOR = WaveExecutors.create("WaveLoad", 2);
+
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    private final WaveFormCache.Loader mLoader;
+    // 只在主线程访问, 任务取消时清空
+    @Nullable private WaveFormLoadListener mListener;
+    // 有主视图时才建立区间统计索引
+    private final boolean mBuildRangeIndex;
+    @Nullable private WaveFormView mView;
+    @Nullable private WaveFormThumbView mThumbView;
+    private volatile boolean mCancelled;
+
+    private WaveLoadTask(WaveFormCache.Loader loader, @Nullable WaveFormView view,
+            @Nullable WaveFormThumbView thumbView, @Nullable WaveFormLoadListener listener) {
+        mLoader = loader;
+        mView = view;
+        mThumbView = thumbView;
+        mListener = listener;
+        mBuildRangeIndex = view != null;
+    }
+
+    // 主线程调用
+    static void start(WaveFormCache.Loader loader, @Nullable WaveFormView view,
+            @Nullable WaveFormThumbView thumbView, @Nullable WaveFormLoadListener listener) {
+        WaveLoadTask task = new WaveLoadTask(loader, view, thumbView, listener);
+        if (view != null) {
+            view.onWaveLoadStarted(task);
+        }
+        if (thumbView != null) {
+            thumbView.onWaveLoadStarted(task);
+        }
+        EXECUTOR.execute(task);
+    }
+
+    /**
+     * 主线程调用: 在后台线程生成 info 的全部降采样层级, 完成后在主线程回调 onBuilt;
+     * 用于直接 setWave 的波形, 生成完成前视图只用已有的层级绘制
+     */
+    static void buildLevels(final WaveFormInfo info, final Runnable onBuilt) {
+        EXECUTOR.execute(new Runnable() {
+            @Override public void run() {
+                try {
+                    info.buildLevels();
+                } catch (RuntimeException e) {
+                    // 生成失败时仍回调, 绘制时退回已有的层级
+                } catch (OutOfMemoryError e) {
+                    // 同上
+                }
+                MAIN_HANDLER.post(onBuilt);
+            }
+        });
+    }
+
+    // 主线程调用: view 不再等待本任务, 如设置了其他波形
+    void release(View view) {
+        if (view == mView) {
+            mView = null;
+        } else if (view == mThumbView) {
+            mThumbView = null;
+        }
+        if (mView == null && mThumbView == null) {
+            mCancelled = true;
+            mListener = null;
+            EXECUTOR.remove(this);
+        }
+    }
+
+    @Override public void run() {
+        if (mCancelled) {
+            return;
+        }
+        WaveFormInfo info = null;
+        WaveRangeIndex index = null;
+        IOException error = null;
+        try {
+            info = mLoader.load();
+            if (info == null) {
+                throw new IOException("Loader returned null");
+            }
+            // 缓存文件中已有的层级直接使用, 缺少的层级在此生成
+            info.buildLevels();
+            if (mBuildRangeIndex && !mCancelled) {
+                index = WaveRangeIndex.build(info);
+            }
+        } catch (IOException e) {
+            error = e;
+        } catch (RuntimeException e) {
+            // 解析错误等, 同样作为加载失败回调
+            error = new IOException(e);
+        } catch (Error e) {
+            // 如内存不足; 不回调的话两个视图会一直显示加载状态
+            error = new IOException(e);
+        }
+        final WaveFormInfo result = error == null ? info : null;
+        final WaveRangeIndex resultIndex = error == null ? index : null;
+        final IOException failure = error;
+        MAIN_HANDLER.post(new Runnable() {
+            @Override public void run() {
+                deliver(result, resultIndex, failure);
+            }
+        });
+    }
+
+    // 先交给缩略图再交给主视图: 主视图 setWave 时回调的 onScrollChanged 会更新缩略图。
+    // 两者在同一个主线程消息中完成, 之间不会有绘制
+    private void deliver(@Nullable WaveFormInfo info, @Nullable WaveRangeIndex index,
+            @Nullable IOException error) {
+        if (mCancelled) {
+            return;
+        }
+        mCancelled = true;
+        WaveFormThumbView thumbView = mThumbView;
+        WaveFormView view = mView;
+        mThumbView = null;
+        mView = null;
+        if (thumbView != null) {
+            thumbView.onWaveLoadFinished(this, info);
+        }
+        if (view != null) {
+            view.onWaveLoadFinished(this, info, index);
+        }
+        WaveFormLoadListener listener = mListener;
+        mListener = null;
+        if (listener != null) {
+            if (info != null) {
+                listener.onWaveLoaded(info);
+            } else {
+                listener.onWaveLoadFailed(error);
+            }
+        }
+    }
+}
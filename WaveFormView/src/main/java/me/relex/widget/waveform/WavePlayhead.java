@@ -0,0 +1,198 @@
+package me.relex.widget.waveform;
+
+import android.annotation.TargetApi;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.os.Build;
+import android.support.annotation.Nullable;
+import android.view.Choreographer;
+import android.view.View;
+
+/**
+ * 播放头: 每个 vsync 从 {@link WavePositionProvider} 读取播放位置, 只重绘播放头新旧位置之间的竖条
+ *
+ * 已播放部分的颜色不逐列切换 Paint, 而是由视图把波形裁剪到 [0, x) 后用 {@link #getPlayedPaint()}
+ * 再画一遍: 块位图用 SRC_IN 颜色滤镜着色, 直接绘制的竖线换用已播放的颜色
+ */
+final class WavePlayhead implements Runnable {
+
+    static final int NO_POSITION = Integer.MIN_VALUE;
+
+    // 由视图处理播放头引起的重绘, 以便与其他内容的变化区分
+    interface Host {
+        void invalidatePlayhead(int left, int top, int right, int bottom);
+    }
+
+    private final View mView;
+    private final WaveFormViewport mViewport;
+    private final Paint mCursorPaint = new Paint();
+    private final int mCursorWidth;
+    private final boolean mPlayedColorEnabled;
+    private final Paint mPlayedPaint;
+    private final Paint mPlayedBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    @Nullable private Host mHost;
+    @Nullable private WavePositionProvider mProvider;
+    @Nullable private Choreographer.FrameCallback mFrameCallback;
+    private double mPositionSecond = Double.NaN;
+    // 最近一帧绘制的播放头横坐标
+    private int mDrawnX = NO_POSITION;
+    private boolean mAttached;
+    private boolean mScheduled;
+
+    // playedColor 与 waveformPaint 颜色相同时不区分已播放部分
+    WavePlayhead(View view, WaveFormViewport viewport, Paint waveformPaint, int cursorColor,
+            int cursorWidth, int playedColor) {
+        mView = view;
+        mViewport = viewport;
+        mCursorWidth = Math.max(cursorWidth, 1);
+        mCursorPaint.setColor(cursorColor);
+        mCursorPaint.setStyle(Paint.Style.FILL_AND_STROKE);
+        mCursorPaint.setStrokeWidth(mCursorWidth);
+        mPlayedColorEnabled = playedColor != waveformPaint.getColor();
+        mPlayedPaint = new Paint(waveformPaint);
+        mPlayedPaint.setColor(playedColor);
+        mPlayedBitmapPaint.setColorFilter(
+                new PorterDuffColorFilter(playedColor, PorterDuff.Mode.SRC_IN));
+    }
+
+    void setHost(@Nullable Host host) {
+        mHost = host;
+    }
+
+    void setProvider(@Nullable WavePositionProvider provider) {
+        mProvider = provider;
+        if (provider != null) {
+            scheduleFrame();
+        }
+    }
+
+    // NaN 表示隐藏播放头
+    void setPosition(double second) {
+        mPositionSecond = second;
+        int x = getX();
+        if (x == mDrawnX) {
+            return;
+        }
+        int width = mView.getWidth();
+        if (x == NO_POSITION || mDrawnX == NO_POSITION) {
+            invalidate(0, width);
+            return;
+        }
+        int left = Math.min(x, mDrawnX) - mCursorWidth;
+        int right = Math.max(x, mDrawnX) + mCursorWidth + 1;
+        // 新旧位置都在视图外时不需要重绘
+        if (right >= 0 && left < width) {
+            invalidate(left, right);
+        }
+    }
+
+    private void invalidate(int left, int right) {
+        if (mHost != null) {
+            mHost.invalidatePlayhead(left, 0, right, mView.getHeight());
+        } else {
+            mView.invalidate(left, 0, right, mView.getHeight());
+        }
+    }
+
+    double getPosition() {
+        return mPositionSecond;
+    }
+
+    // 当前播放位置在视图中的横坐标, 没有位置时返回 NO_POSITION
+    int getX() {
+        if (Double.isNaN(mPositionSecond)) {
+            return NO_POSITION;
+        }
+        return Math.round(mViewport.secondToX(mPositionSecond));
+    }
+
+    boolean hasPlayedColor() {
+        return mPlayedColorEnabled;
+    }
+
+    // 已播放部分的竖线画笔, 描边宽度由视图设置
+    Paint getPlayedPaint() {
+        return mPlayedPaint;
+    }
+
+    // 已播放部分的块位图画笔
+    Paint getPlayedBitmapPaint() {
+        return mPlayedBitmapPaint;
+    }
+
+    void draw(Canvas canvas, int height) {
+        int x = getX();
+        mDrawnX = x;
+        if (x != NO_POSITION) {
+            canvas.drawLine(x, 0, x, height, mCursorPaint);
+        }
+    }
+
+    void onAttachedToWindow() {
+        mAttached = true;
+        if (mProvider != null) {
+            scheduleFrame();
+        }
+    }
+
+    void onDetachedFromWindow() {
+        mAttached = false;
+        if (!mScheduled) {
+            return;
+        }
+        mScheduled = false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            removeFrameCallback();
+        } else {
+            mView.removeCallbacks(this);
+        }
+    }
+
+    private void scheduleFrame() {
+        if (mScheduled || !mAttached) {
+            return;
+        }
+        mScheduled = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            postFrameCallback();
+        } else {
+            mView.postDelayed(this, 16L);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postFrameCallback() {
+        if (mFrameCallback == null) {
+            mFrameCallback = new Choreographer.FrameCallback() {
+                @Override public void doFrame(long frameTimeNanos) {
+                    onFrame();
+                }
+            };
+        }
+        Choreographer.getInstance().postFrameCallback(mFrameCallback);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void removeFrameCallback() {
+        if (mFrameCallback != null) {
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+        }
+    }
+
+    @Override public void run() {
+        onFrame();
+    }
+
+    private void onFrame() {
+        mScheduled = false;
+        WavePositionProvider provider = mProvider;
+        if (provider == null || !mAttached) {
+            return;
+        }
+        setPosition(provider.getPositionSecond());
+        scheduleFrame();
+    }
+}
@@ -0,0 +1,8 @@
+package me.relex.widget.waveform;
+
+/**
+ * 播放位置的来源, 如 MediaPlayer.getCurrentPosition() / 1000d; 在主线程每个 vsync 调用一次
+ */
+public interface WavePositionProvider {
+    double getPositionSecond();
+}
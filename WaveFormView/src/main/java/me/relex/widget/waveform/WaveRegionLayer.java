@@ -0,0 +1,99 @@
+package me.relex.widget.waveform;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.support.annotation.Nullable;
+import android.view.View;
+import java.util.ArrayList;
+
+/**
+ * 视图中的区域层: 每帧只查询与可见时间段相交的区域, 区域画在波形下面, 标记画在波形上面
+ *
+ * 视图显示在窗口上期间监听 {@link WaveRegionStore} 的变化并重绘
+ */
+final class WaveRegionLayer implements WaveRegionStore.Listener {
+
+    private final View mView;
+    private final WaveFormViewport mViewport;
+    private final Paint mPaint = new Paint();
+    private final int mMarkerWidth;
+    // 本帧可见的区域, drawRegions 查询, drawMarkers 使用后清空
+    private final ArrayList<WaveRegion> mVisible = new ArrayList<>();
+    @Nullable private WaveRegionStore mStore;
+    private boolean mAttached;
+
+    WaveRegionLayer(View view, WaveFormViewport viewport, int markerWidth) {
+        mView = view;
+        mViewport = viewport;
+        mMarkerWidth = Math.max(markerWidth, 1);
+        mPaint.setStyle(Paint.Style.FILL);
+    }
+
+    void setStore(@Nullable WaveRegionStore store) {
+        if (store == mStore) {
+            return;
+        }
+        if (mAttached && mStore != null) {
+            mStore.removeListener(this);
+        }
+        mStore = store;
+        if (mAttached && store != null) {
+            store.addListener(this);
+        }
+        mView.invalidate();
+    }
+
+    @Nullable WaveRegionStore getStore() {
+        return mStore;
+    }
+
+    void onAttachedToWindow() {
+        mAttached = true;
+        if (mStore != null) {
+            mStore.addListener(this);
+        }
+    }
+
+    void onDetachedFromWindow() {
+        mAttached = false;
+        if (mStore != null) {
+            mStore.removeListener(this);
+        }
+    }
+
+    @Override public void onRegionsChanged(WaveRegionStore store) {
+        mView.invalidate();
+    }
+
+    void drawRegions(Canvas canvas, int height) {
+        mVisible.clear();
+        if (mStore == null) {
+            return;
+        }
+        mStore.query(mViewport.getStartSecond(), mViewport.getEndSecond(), mVisible);
+        for (int i = 0, size = mVisible.size(); i < size; i++) {
+            WaveRegion region = mVisible.get(i);
+            if (region.isMarker()) {
+                continue;
+            }
+            float left = mViewport.secondToX(region.getStart());
+            // 不足 1 像素的区域 (如缩略图中) 至少画 1 像素
+            float right = Math.max(mViewport.secondToX(region.getEnd()), left + 1);
+            mPaint.setColor(region.getColor());
+            canvas.drawRect(left, 0, right, height, mPaint);
+        }
+    }
+
+    void drawMarkers(Canvas canvas, int height) {
+        for (int i = 0, size = mVisible.size(); i < size; i++) {
+            WaveRegion region = mVisible.get(i);
+            if (!region.isMarker()) {
+                continue;
+            }
+            float left = mViewport.secondToX(region.getStart()) - mMarkerWidth / 2f;
+            mPaint.setColor(region.getColor());
+            canvas.drawRect(left, 0, left + mMarkerWidth, height, mPaint);
+        }
+        mVisible.clear();
+    }
+}
@@ -0,0 +1,11 @@
+package me.relex.widget.waveform;
+
+/**
+ * WaveFormView 中区域的点击和拖动调整
+ */
+public interface WaveRegionListener {
+    void onRegionClick(WaveRegion region);
+
+    // 拖动区域边缘 (或标记) 结束后回调, 拖动过程中区域已通过 WaveRegionStore.setRange 更新
+    void onRegionResized(WaveRegion region);
+}
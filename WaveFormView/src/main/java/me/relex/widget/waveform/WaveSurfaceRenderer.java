@@ -0,0 +1,367 @@
+package me.relex.widget.waveform;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.Nullable;
+import android.support.v4.widget.ScrollerCompat;
+import android.view.Choreographer;
+import android.view.SurfaceHolder;
+import android.view.animation.AccelerateDecelerateInterpolator;
+import android.view.animation.Interpolator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link WaveFormSurfaceView} 的渲染线程: 在独立的线程中按 vsync 把波形绘制到 Surface
+ *
+ * UI 线程只发布 {@link WaveViewportState}, 渲染线程每帧取最新的一个, 中间来不及绘制的状态直接跳过;
+ * 惯性滑动和双击缩放动画也在渲染线程中计算, UI 线程卡顿时波形仍然继续移动。
+ * 只有 Surface 的创建和销毁与绘制之间加锁, 保证 surfaceDestroyed 返回后不再绘制。
+ */
+final class WaveSurfaceRenderer implements SurfaceHolder.Callback, Runnable {
+
+    interface Callback {
+        // 渲染线程中的惯性滑动或缩放动画改变了视口, 主线程回调, 主线程繁忙时多次变化合并为一次
+        void onRenderedViewportChanged(WaveViewportState state);
+    }
+
+    private static final long FRAME_DELAY = 16L;
+    private static final long ZOOM_DURATION = 200L;
+
+    private final SurfaceHolder mHolder;
+    private final Callback mCallback;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicReference<WaveViewportState> mRequested = new AtomicReference<>();
+    private final AtomicReference<WaveViewportState> mRendered = new AtomicReference<>();
+    private final AtomicBoolean mFrameScheduled = new AtomicBoolean();
+    private final AtomicBoolean mDispatchPending = new AtomicBoolean();
+    private final Runnable mDispatchRunnable = new Runnable() {
+        @Override public void run() {
+            mDispatchPending.set(false);
+            mCallback.onRenderedViewportChanged(mRendered.get());
+        }
+    };
+
+    private final Object mSurfaceLock = new Object();
+    // 以下两个字段由 mSurfaceLock 保护
+    private boolean mSurfaceValid;
+    private boolean mSurfaceDirty;
+
+    @Nullable private HandlerThread mThread;
+    @Nullable private volatile Handler mHandler;
+
+    // 以下只在渲染线程中访问
+    @Nullable private Choreographer.FrameCallback mFrameCallback;
+    private final WaveFormViewport mViewport = new WaveFormViewport();
+    private final WaveLineBatch mLineBatch = new WaveLineBatch();
+    private final WaveTimeAxis mTimeAxis;
+    private final Paint mWaveFormPaint;
+    private final int mBackgroundColor;
+    private final ScrollerCompat mScroller;
+    private final Interpolator mZoomInterpolator = new AccelerateDecelerateInterpolator();
+    @Nullable private WaveFormInfo mInfo;
+    private int mDataLength;
+    private int mHeight;
+    private long mAppliedGeneration = -1;
+    private boolean mFlinging;
+    private int mFlingOffsetX;
+    private boolean mZooming;
+    private long mZoomStartTime;
+    private float mZoomStartScale;
+    private float mZoomTargetScale;
+    private float mZoomFocusX;
+    // 最近一帧绘制时的视口
+    private double mDrawnStartSecond = Double.NaN;
+    private float mDrawnScale;
+
+    WaveSurfaceRenderer(Context context, SurfaceHolder holder, Paint waveFormPaint,
+            WaveTimeAxis timeAxis, int backgroundColor, Callback callback) {
+        mHolder = holder;
+        mWaveFormPaint = waveFormPaint;
+        mTimeAxis = timeAxis;
+        mBackgroundColor = backgroundColor;
+        mCallback = callback;
+        mScroller = ScrollerCompat.create(context);
+    }
+
+    // 视图显示到窗口上时启动渲染线程
+    void start() {
+        if (mThread != null) {
+            return;
+        }
+        mThread = new HandlerThread("WaveRender", Process.THREAD_PRIORITY_DISPLAY);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        mFrameScheduled.set(false);
+        scheduleFrame();
+    }
+
+    // 视图离开窗口时停止渲染线程, 等待正在绘制的一帧结束后返回:
+    // 之后 start 的新线程会使用同样的渲染线程状态, 两个线程不能同时运行
+    void quit() {
+        HandlerThread thread = mThread;
+        if (thread == null) {
+            return;
+        }
+        mHandler = null;
+        mThread = null;
+        thread.quit();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        mMainHandler.removeCallbacks(mDispatchRunnable);
+        mDispatchPending.set(false);
+    }
+
+    // UI 线程发布新的视口, 覆盖渲染线程还未取走的状态
+    void publish(WaveViewportState state) {
+        mRequested.set(state);
+        scheduleFrame();
+    }
+
+    // 渲染线程最近回报的视口, 可能为 null
+    @Nullable WaveViewportState getRendered() {
+        return mRendered.get();
+    }
+
+    private void scheduleFrame() {
+        Handler handler = mHandler;
+        if (handler != null && mFrameScheduled.compareAndSet(false, true)) {
+            handler.post(this);
+        }
+    }
+
+    // 渲染线程: 等待下一个 vsync 后绘制
+    @Override public void run() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            postFrameCallback();
+        } else {
+            doFrame();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postFrameCallback() {
+        if (mFrameCallback == null) {
+            mFrameCallback = new Choreographer.FrameCallback() {
+                @Override public void doFrame(long frameTimeNanos) {
+                    WaveSurfaceRenderer.this.doFrame();
+                }
+            };
+        }
+        // 渲染线程的 Choreographer 在该线程第一次使用时创建
+        Choreographer.getInstance().postFrameCallback(mFrameCallback);
+    }
+
+    private void doFrame() {
+        // 先清除标记再读取状态, 读取之后发布的状态会再安排一帧
+        mFrameScheduled.set(false);
+        boolean changed = false;
+        WaveViewportState state = mRequested.get();
+        if (state != null && state.generation != mAppliedGeneration) {
+            changed = apply(state);
+        }
+
+        // 动画的最后一帧也要回报
+        boolean wasAnimating = mFlinging || mZooming;
+        boolean animating = false;
+        if (mFlinging) {
+            animating = stepFling();
+        }
+        if (mZooming) {
+            animating |= stepZoom();
+        }
+        if (wasAnimating) {
+            publishRendered();
+        }
+
+        draw(changed);
+
+        Handler handler = mHandler;
+        if (animating && handler != null && mFrameScheduled.compareAndSet(false, true)) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                postFrameCallback();
+            } else {
+                handler.postDelayed(this, FRAME_DELAY);
+            }
+        }
+    }
+
+    // 应用 UI 线程发布的视口, 并停止之前的动画; 返回 true 表示需要完整重绘
+    private boolean apply(WaveViewportState state) {
+        mAppliedGeneration = state.generation;
+        boolean changed = false;
+        if (state.info != mInfo) {
+            mInfo = state.info;
+            mDataLength = state.dataLength;
+            if (mInfo != null) {
+                mViewport.setWave(mInfo);
+            }
+            mTimeAxis.reset();
+            changed = true;
+        } else if (state.dataLength != mDataLength) {
+            mDataLength = state.dataLength;
+            mViewport.notifyLengthChanged();
+            changed = true;
+        }
+        if (state.width != mViewport.getWidth() || state.height != mHeight) {
+            mViewport.setWidth(state.width);
+            mLineBatch.begin(state.width);
+            mHeight = state.height;
+            changed = true;
+        }
+        if (state.renderMode != mLineBatch.getRenderMode()
+                || state.channelMode != mLineBatch.getChannelMode()) {
+            mLineBatch.setRenderMode(state.renderMode);
+            mLineBatch.setChannelMode(state.channelMode);
+            changed = true;
+        }
+        mViewport.setMaxScale(state.maxScale);
+        mViewport.setScale(state.scale);
+        mViewport.setStartSecond(state.startSecond);
+
+        mScroller.abortAnimation();
+        mFlinging = false;
+        mZooming = false;
+        if (mInfo == null) {
+            return changed;
+        }
+        if (state.command == WaveViewportState.COMMAND_FLING) {
+            startFling((int) state.flingStartX, (int) state.flingVelocityX);
+        } else if (state.command == WaveViewportState.COMMAND_ZOOM) {
+            mZoomStartTime = System.currentTimeMillis();
+            mZoomStartScale = mViewport.getScale();
+            mZoomTargetScale = state.targetScale;
+            mZoomFocusX = state.focusX;
+            mViewport.beginScale();
+            mZooming = true;
+        }
+        return changed;
+    }
+
+    private void startFling(int startX, int velocityX) {
+        int totalPixels = mViewport.getTotalPixels();
+
+        int minPixels = startX;
+        if (minPixels < 0) {
+            minPixels = 0;
+        }
+
+        int maxPixels = totalPixels - (mViewport.getWidth() - startX);
+        if (maxPixels < 0) {
+            maxPixels = 0;
+        }
+
+        mFlingOffsetX = startX;
+        int flingStartX = (int) mViewport.getStartX() + startX;
+        mScroller.fling(flingStartX, 0, velocityX, 0, minPixels, maxPixels, 0, 0);
+        mFlinging = true;
+    }
+
+    // 返回 true 表示还需要下一帧
+    private boolean stepFling() {
+        if (mScroller.isFinished() || !mScroller.computeScrollOffset()) {
+            mFlinging = false;
+            return false;
+        }
+        mViewport.setStartSecond(WaveUtil.pixelsToSeconds(mScroller.getCurrX() - mFlingOffsetX,
+                mInfo.getSample_rate(), mInfo.getSamples_per_pixel(), mViewport.getScale()));
+        return true;
+    }
+
+    private boolean stepZoom() {
+        float t = Math.min(1f, 1f * (System.currentTimeMillis() - mZoomStartTime) / ZOOM_DURATION);
+        t = mZoomInterpolator.getInterpolation(t);
+        float scale = mZoomStartScale + t * (mZoomTargetScale - mZoomStartScale);
+        mViewport.scaleBy(scale / mViewport.getScale(), mZoomFocusX);
+        if (t < 1f) {
+            return true;
+        }
+        mViewport.endScale();
+        mZooming = false;
+        return false;
+    }
+
+    // 把渲染线程的视口回报给 UI 线程
+    private void publishRendered() {
+        mRendered.set(WaveViewportState.rendered(mAppliedGeneration, mViewport));
+        if (mDispatchPending.compareAndSet(false, true)) {
+            mMainHandler.post(mDispatchRunnable);
+        }
+    }
+
+    // 视口与最近一帧相同且 Surface 没有重建时不绘制
+    private void draw(boolean force) {
+        synchronized (mSurfaceLock) {
+            if (!mSurfaceValid) {
+                return;
+            }
+            if (!force && !mSurfaceDirty && mDrawnScale == mViewport.getScale()
+                    && mDrawnStartSecond == mViewport.getStartSecond()) {
+                return;
+            }
+            Canvas canvas = mHolder.lockCanvas();
+            if (canvas == null) {
+                return;
+            }
+            mSurfaceDirty = false;
+            try {
+                drawFrame(canvas);
+            } finally {
+                mHolder.unlockCanvasAndPost(canvas);
+            }
+        }
+    }
+
+    private void drawFrame(Canvas canvas) {
+        canvas.drawColor(mBackgroundColor);
+        mDrawnStartSecond = mViewport.getStartSecond();
+        mDrawnScale = mViewport.getScale();
+        int width = mViewport.getWidth();
+        if (mInfo == null || width <= 0 || mHeight <= 0) {
+            return;
+        }
+        mWaveFormPaint.setStrokeWidth((int) Math.ceil(mDrawnScale));
+        mLineBatch.addWave(mInfo, mDrawnScale, mViewport.getStartX(), width, mHeight);
+        mLineBatch.draw(canvas, mWaveFormPaint);
+        mTimeAxis.draw(canvas, mViewport);
+    }
+
+    @Override public void surfaceCreated(SurfaceHolder holder) {
+        synchronized (mSurfaceLock) {
+            mSurfaceValid = true;
+            mSurfaceDirty = true;
+        }
+        scheduleFrame();
+    }
+
+    @Override public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        synchronized (mSurfaceLock) {
+            mSurfaceDirty = true;
+        }
+        scheduleFrame();
+    }
+
+    // 等待正在进行的绘制结束, 返回后 Surface 可以被销毁
+    @Override public void surfaceDestroyed(SurfaceHolder holder) {
+        synchronized (mSurfaceLock) {
+            mSurfaceValid = false;
+        }
+    }
+}
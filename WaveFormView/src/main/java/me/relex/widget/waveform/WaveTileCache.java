@@ -0,0 +1,197 @@
+package me.relex.widget.waveform;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LongSparseArray;
+import android.util.LruCache;
+import java.util.ArrayList;
+
+/**
+ * 波形分块位图缓存
+ *
+ * 缩放比例按 1/8 倍频程量化, 每个量化比例下波形切成固定宽度的块。
+ * 按字节数 LRU 淘汰, 淘汰的位图放回复用池。
+ * 正在绘制的块任务也由缓存管理, 同一块只有一个任务, 使用同一缓存的视图共用。
+ * 多个视图共享的缓存 (shared) 不回收也不复用位图, 其他视图可能还在绘制它们, 交给 GC 释放。
+ */
+final class WaveTileCache {
+
+    static final int TILE_WIDTH = 256;
+
+    private static final int SCALE_STEPS_PER_OCTAVE = 8;
+    private static final double LOG_2 = Math.log(2);
+    private static final int MAX_RECYCLED = 4;
+
+    private final LruCache<Long, Bitmap> mCache;
+    private final ArrayList<Bitmap> mRecycled = new ArrayList<>(MAX_RECYCLED);
+    private final boolean mShared;
+    // 未完成的块任务, 键同 key(step, tile)
+    private final LongSparseArray<WaveTileTask> mTasks = new LongSparseArray<>();
+    // 绘制失败的块, 不再重复请求, 视图一直用占位绘制; 数据变化 (removeFrom / clear) 后重试
+    private final LongSparseArray<Boolean> mFailedTiles = new LongSparseArray<>();
+
+    WaveTileCache(int maxBytes, boolean shared) {
+        mShared = shared;
+        mCache = new LruCache<Long, Bitmap>(Math.max(maxBytes, 1)) {
+            @Override protected int sizeOf(Long key, Bitmap value) {
+                return value.getByteCount();
+            }
+
+            @Override protected void entryRemoved(boolean evicted, Long key, Bitmap oldValue,
+                    Bitmap newValue) {
+                if (oldValue != newValue) {
+                    recycle(oldValue);
+                }
+            }
+        };
+    }
+
+    static int scaleStep(float scale) {
+        return (int) Math.round(Math.log(scale) / LOG_2 * SCALE_STEPS_PER_OCTAVE);
+    }
+
+    static float stepScale(int step) {
+        return (float) Math.pow(2, (double) step / SCALE_STEPS_PER_OCTAVE);
+    }
+
+    static long key(int step, int tile) {
+        return ((long) step << 32) | (tile & 0xffffffffL);
+    }
+
+    Bitmap get(int step, int tile) {
+        return mCache.get(key(step, tile));
+    }
+
+    void put(int step, int tile, Bitmap bitmap) {
+        mCache.put(key(step, tile), bitmap);
+    }
+
+    /**
+     * 请求绘制一个块, 已有相同的任务时直接加入; 完成后回调 callback,
+     * 不再需要时调用 {@link WaveTileTask#release}, 没有视图需要的任务会被取消;
+     * 该块绘制失败过时返回 null
+     */
+    @Nullable WaveTileTask requestTile(@NonNull WaveFormInfo info, int step, int tile,
+            int height, Paint paint, int renderMode, int channelMode,
+            WaveTileTask.Callback callback) {
+        long key = key(step, tile);
+        if (mFailedTiles.get(key) != null) {
+            return null;
+        }
+        WaveTileTask task = mTasks.get(key);
+        if (task == null) {
+            task = new WaveTileTask(info, step, tile, obtain(height), paint, renderMode,
+                    channelMode, this);
+            mTasks.put(key, task);
+            task.submit();
+        }
+        task.addCallback(callback);
+        return task;
+    }
+
+    // 主线程, 任务绘制完成、运行中被取消或绘制失败
+    void onTaskFinished(WaveTileTask task) {
+        removeTask(task);
+        if (task.isCancelled()) {
+            recycle(task.bitmap);
+            return;
+        }
+        if (task.isFailed()) {
+            recycle(task.bitmap);
+            mFailedTiles.put(key(task.step, task.tile), Boolean.TRUE);
+            task.dispatchReady();
+            return;
+        }
+        put(task.step, task.tile, task.bitmap);
+        task.dispatchReady();
+    }
+
+    // 主线程, 最后一个视图不再需要该任务
+    void onTaskReleased(WaveTileTask task) {
+        removeTask(task);
+        cancelTask(task);
+    }
+
+    private void removeTask(WaveTileTask task) {
+        long key = key(task.step, task.tile);
+        if (mTasks.get(key) == task) {
+            mTasks.remove(key);
+        }
+    }
+
+    private void cancelTask(WaveTileTask task) {
+        if (task.cancel()) {
+            recycle(task.bitmap);
+        }
+    }
+
+    // 数据在末尾追加后, 移除包含旧末尾 dataLength 及之后的块, 并取消绘制它们的任务;
+    // 任务的视图会收到回调, 重新请求
+    void removeFrom(int dataLength) {
+        for (Long key : mCache.snapshot().keySet()) {
+            if (isAfter(key, dataLength)) {
+                mCache.remove(key);
+            }
+        }
+        for (int i = mTasks.size() - 1; i >= 0; i--) {
+            if (isAfter(mTasks.keyAt(i), dataLength)) {
+                WaveTileTask task = mTasks.valueAt(i);
+                mTasks.removeAt(i);
+                cancelTask(task);
+                task.dispatchReady();
+            }
+        }
+        for (int i = mFailedTiles.size() - 1; i >= 0; i--) {
+            if (isAfter(mFailedTiles.keyAt(i), dataLength)) {
+                mFailedTiles.removeAt(i);
+            }
+        }
+    }
+
+    static boolean isAfter(long key, int dataLength) {
+        int step = (int) (key >> 32);
+        int tile = (int) key;
+        return (tile + 1) * (double) TILE_WIDTH > dataLength * (double) stepScale(step);
+    }
+
+    // 取一张空白的块位图, 优先复用
+    private Bitmap obtain(int height) {
+        for (int i = mRecycled.size() - 1; i >= 0; i--) {
+            Bitmap bitmap = mRecycled.remove(i);
+            if (bitmap.getHeight() == height) {
+                bitmap.eraseColor(Color.TRANSPARENT);
+                return bitmap;
+            }
+            bitmap.recycle();
+        }
+        return Bitmap.createBitmap(TILE_WIDTH, height, Bitmap.Config.ARGB_8888);
+    }
+
+    // 不再使用的块位图放回复用池; 共享的缓存不处理
+    private void recycle(Bitmap bitmap) {
+        if (mShared) {
+            return;
+        }
+        if (mRecycled.size() < MAX_RECYCLED) {
+            mRecycled.add(bitmap);
+        } else {
+            bitmap.recycle();
+        }
+    }
+
+    void clear() {
+        for (int i = mTasks.size() - 1; i >= 0; i--) {
+            cancelTask(mTasks.valueAt(i));
+        }
+        mTasks.clear();
+        mFailedTiles.clear();
+        mCache.evictAll();
+        for (Bitmap bitmap : mRecycled) {
+            bitmap.recycle();
+        }
+        mRecycled.clear();
+    }
+}
@@ -0,0 +1,142 @@
+package me.relex.widget.waveform;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.os.Handler;
+import android.os.Looper;
+import java.util.ArrayList;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 在后台线程把一个波形块绘制到位图, 完成后回到主线程通知
+ *
+ * 任务由 {@link WaveTileCache} 创建和管理, 位图由缓存取出后交给任务, 任务结束前主线程不会再使用它。
+ * 请求同一块的视图共用一个任务, 各自加入回调; 所有视图都 release 后任务被取消
+ */
+final class WaveTileTask implements Runnable {
+
+    interface Callback {
+        // 主线程回调: 块已放入缓存, 或任务被缓存取消 (末尾追加数据) 或绘制失败, 需要时重新请求
+        void onTileReady(WaveTileTask task);
+    }
+
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_RUNNING = 1;
+    private static final int STATE_CANCELLED = 2;
+
+    private static final int THREAD_COUNT =
+            Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1, 3));
+
+    private static final ThreadPoolExecutor EXECUTOR =
+            WaveExecutors.create("WaveTile", THREAD_COUNT);
+
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    final int step;
+    final int tile;
+    final Bitmap bitmap;
+
+    private final WaveFormInfo mInfo;
+    private final float mScale;
+    private final Paint mPaint;
+    private final int mRenderMode;
+    private final int mChannelMode;
+    private final WaveTileCache mCache;
+    // 请求该块的视图, 只在主线程访问
+    private final ArrayList<Callback> mCallbacks = new ArrayList<>(1);
+    private final AtomicInteger mState = new AtomicInteger(STATE_PENDING);
+    private volatile boolean mCancelled;
+    // 绘制时抛出异常或内存不足, 位图内容不完整
+    private volatile boolean mFailed;
+
+    WaveTileTask(WaveFormInfo info, int step, int tile, Bitmap bitmap, Paint paint,
+            int renderMode, int channelMode, WaveTileCache cache) {
+        this.step = step;
+        this.tile = tile;
+        this.bitmap = bitmap;
+        mInfo = info;
+        mScale = WaveTileCache.stepScale(step);
+        mPaint = new Paint(paint);
+        mPaint.setStrokeWidth((int) Math.ceil(mScale));
+        mRenderMode = renderMode;
+        mChannelMode = channelMode;
+        mCache = cache;
+    }
+
+    void submit() {
+        EXECUTOR.execute(this);
+    }
+
+    void addCallback(Callback callback) {
+        if (!mCallbacks.contains(callback)) {
+            mCallbacks.add(callback);
+        }
+    }
+
+    // 视图不再需要该块, 没有视图需要时取消任务
+    void release(Callback callback) {
+        if (mCallbacks.remove(callback) && mCallbacks.isEmpty()) {
+            mCache.onTaskReleased(this);
+        }
+    }
+
+    // 通知请求该块的视图, 每个视图只通知一次
+    void dispatchReady() {
+        if (mCallbacks.isEmpty()) {
+            return;
+        }
+        Callback[] callbacks = mCallbacks.toArray(new Callback[mCallbacks.size()]);
+        mCallbacks.clear();
+        for (Callback callback : callbacks) {
+            callback.onTileReady(this);
+        }
+    }
+
+    // 返回 true 表示任务还未开始, 之后也不会运行, 位图可以立即回收
+    boolean cancel() {
+        mCancelled = true;
+        if (mState.compareAndSet(STATE_PENDING, STATE_CANCELLED)) {
+            EXECUTOR.remove(this);
+            return true;
+        }
+        return false;
+    }
+
+    boolean isCancelled() {
+        return mCancelled;
+    }
+
+    boolean isFailed() {
+        return mFailed;
+    }
+
+    @Override public void run() {
+        if (!mState.compareAndSet(STATE_PENDING, STATE_RUNNING)) {
+            return;
+        }
+        if (!mCancelled) {
+            try {
+                WaveLineBatch batch = new WaveLineBatch();
+                batch.setRenderMode(mRenderMode);
+                batch.setChannelMode(mChannelMode);
+                batch.addWave(mInfo, mScale, (double) tile * WaveTileCache.TILE_WIDTH,
+                        WaveTileCache.TILE_WIDTH, bitmap.getHeight());
+                Canvas canvas = new Canvas(bitmap);
+                batch.draw(canvas, mPaint);
+            } catch (RuntimeException e) {
+                // 如读取映射文件出错, 交给缓存回收位图, 视图退回占位
+                mFailed = true;
+            } catch (OutOfMemoryError e) {
+                mFailed = true;
+            }
+        }
+        // 无论成功与否都要回到主线程, 否则缓存中的任务和视图的等待永远不会结束
+        MAIN_HANDLER.post(new Runnable() {
+            @Override public void run() {
+                mCache.onTaskFinished(WaveTileTask.this);
+            }
+        });
+    }
+}
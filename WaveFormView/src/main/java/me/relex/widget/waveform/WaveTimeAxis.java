@@ -0,0 +1,121 @@
+package me.relex.widget.waveform;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.text.TextPaint;
+import android.util.SparseIntArray;
+
+/**
+ * 视图顶部的时间刻度: 刻度线和时间文字
+ *
+ * 刻度间隔只在缩放比例变化时重新计算, 文字格式化到复用的 char[], 同一秒数的文字宽度只测量一次。
+ * 只在一个线程中使用
+ */
+final class WaveTimeAxis {
+
+    // 刻度文字宽度缓存的上限, 超过后清空重新测量
+    private final static int MAX_TIME_LABEL_WIDTHS = 256;
+
+    private final Paint mLabelPaint = new Paint();
+    private final TextPaint mTextPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final float mTextHeight;
+    private final int mLabelHeight;
+    private final int mMinSpace;
+
+    private float mScale = Float.NaN;
+    private int mInterval;
+    private int mFormat = -1;
+    private final char[] mChars = new char[WaveTimeLabels.MAX_LENGTH];
+    // 刻度秒数 -> 文字宽度 (Float.floatToIntBits)
+    private final SparseIntArray mWidths = new SparseIntArray();
+
+    WaveTimeAxis(int textColor, int textSize, int labelColor, int labelWidth, int labelHeight,
+            int minSpace) {
+        mTextPaint.setColor(textColor);
+        mTextPaint.setTextSize(textSize);
+        mTextHeight = Math.abs(mTextPaint.descent() - mTextPaint.ascent());
+
+        mLabelPaint.setColor(labelColor);
+        mLabelPaint.setStyle(Paint.Style.FILL_AND_STROKE);
+        mLabelPaint.setStrokeWidth(labelWidth);
+
+        mLabelHeight = labelHeight;
+        mMinSpace = minSpace;
+    }
+
+    // 刻度线和文字占用的高度
+    float getHeight() {
+        return mLabelHeight + mTextHeight;
+    }
+
+    // 更换数据后重新计算刻度间隔
+    void reset() {
+        mScale = Float.NaN;
+    }
+
+    void draw(Canvas canvas, WaveFormViewport viewport) {
+        WaveFormInfo info = viewport.getWave();
+        int sampleRate = info.getSample_rate();
+        int samplesPerPixel = info.getSamples_per_pixel();
+
+        int width = viewport.getWidth();
+        double startSecond = viewport.getStartSecond();
+        float scale = viewport.getScale();
+
+        if (scale != mScale) {
+            mInterval = WaveTimeLabels.intervalSeconds(sampleRate, samplesPerPixel, scale,
+                    mMinSpace);
+            mScale = scale;
+        }
+        int intervalSecond = mInterval;
+        int format = WaveTimeLabels.formatFor(viewport.getTotalSecond());
+        if (format != mFormat) {
+            mWidths.clear();
+            mFormat = format;
+        }
+
+        //  第一轴标时间戳
+        int firstAxisLabelSecond = WaveUtil.roundUpToNearest(startSecond, intervalSecond);
+
+        //  第一轴标时间戳与起始时间戳的时间差
+        double firstAxisLabelOffsetSecond = firstAxisLabelSecond - startSecond;
+
+        // 起始点到第一轴标时间戳的距离
+        int firstAxisLabelOffsetWidth =
+                WaveUtil.secondsToPixels(firstAxisLabelOffsetSecond, sampleRate, samplesPerPixel,
+                        scale);
+
+        int second = firstAxisLabelSecond;
+
+        while (true) {
+            int x = firstAxisLabelOffsetWidth + WaveUtil.secondsToPixels(
+                    (second - firstAxisLabelSecond), sampleRate, samplesPerPixel, scale);
+            if (x >= width) {
+                break;
+            }
+
+            if (second != 0) {
+                canvas.drawLine(x, 0, x, mLabelHeight, mLabelPaint);
+                int count = WaveTimeLabels.format(second, format, mChars);
+                float timeWidth = measure(second, count);
+                canvas.drawText(mChars, 0, count, x - timeWidth / 2f, mLabelHeight + mTextHeight,
+                        mTextPaint);
+            }
+            second += intervalSecond;
+        }
+    }
+
+    // mChars 中已格式化的刻度文字宽度, 同一秒数只测量一次
+    private float measure(int second, int count) {
+        int index = mWidths.indexOfKey(second);
+        if (index >= 0) {
+            return Float.intBitsToFloat(mWidths.valueAt(index));
+        }
+        float width = mTextPaint.measureText(mChars, 0, count);
+        if (mWidths.size() >= MAX_TIME_LABEL_WIDTHS) {
+            mWidths.clear();
+        }
+        mWidths.put(second, Float.floatToIntBits(width));
+        return width;
+    }
+}
@@ -0,0 +1,68 @@
+package me.relex.widget.waveform;
+
+import android.support.annotation.Nullable;
+
+/**
+ * UI 线程交给渲染线程的一帧视口, 创建后不再修改, 通过 AtomicReference 发布, 两个线程之间不加锁
+ *
+ * 渲染线程也用它回报自己当前的视口 (惯性滑动和缩放动画在渲染线程中进行),
+ * 此时只有 generation、startSecond、scale 和 endSecond 有意义
+ */
+final class WaveViewportState {
+
+    static final int COMMAND_NONE = 0;
+    // 从当前视口开始惯性滑动
+    static final int COMMAND_FLING = 1;
+    // 以 focusX 为焦点动画缩放到 targetScale
+    static final int COMMAND_ZOOM = 2;
+
+    // UI 线程每次发布加一; 渲染线程回报时为它已应用的 generation
+    final long generation;
+    @Nullable final WaveFormInfo info;
+    // 数据点数, 录音时追加数据后变化
+    final int dataLength;
+    final int width;
+    final int height;
+    final float maxScale;
+    final int renderMode;
+    final int channelMode;
+
+    final double startSecond;
+    final float scale;
+    final double endSecond;
+
+    final int command;
+    // COMMAND_FLING: 手指离开时的横坐标和速度
+    final float flingStartX;
+    final float flingVelocityX;
+    // COMMAND_ZOOM
+    final float focusX;
+    final float targetScale;
+
+    WaveViewportState(long generation, @Nullable WaveFormInfo info, int width, int height,
+            float maxScale, int renderMode, int channelMode, WaveFormViewport viewport,
+            int command, float x, float value) {
+        this.generation = generation;
+        this.info = info;
+        this.dataLength = info == null ? 0 : info.getLength();
+        this.width = width;
+        this.height = height;
+        this.maxScale = maxScale;
+        this.renderMode = renderMode;
+        this.channelMode = channelMode;
+        this.startSecond = viewport.getStartSecond();
+        this.scale = viewport.getScale();
+        this.endSecond = viewport.getEndSecond();
+        this.command = command;
+        this.flingStartX = command == COMMAND_FLING ? x : 0;
+        this.flingVelocityX = command == COMMAND_FLING ? value : 0;
+        this.focusX = command == COMMAND_ZOOM ? x : 0;
+        this.targetScale = command == COMMAND_ZOOM ? value : 0;
+    }
+
+    // 渲染线程回报的视口
+    static WaveViewportState rendered(long generation, WaveFormViewport viewport) {
+        return new WaveViewportState(generation, null, viewport.getWidth(), 0,
+                viewport.getMaxScale(), 0, 0, viewport, COMMAND_NONE, 0, 0);
+    }
+}
@@ -1,13 +1,14 @@
 package me.relex.waveformdemo;
 
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
-import com.alibaba.fastjson.JSON;
 import java.io.IOException;
 import java.io.InputStream;
+import me.relex.widget.waveform.WaveFormCache;
 import me.relex.widget.waveform.WaveFormInfo;
 import me.relex.widget.waveform.WaveFormListener;
+import me.relex.widget.waveform.WaveFormLoadListener;
+import me.relex.widget.waveform.WaveFormReader;
 import me.relex.widget.waveform.WaveFormThumbView;
 import me.relex.widget.waveform.WaveFormView;
 
@@ -34,35 +35,22 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
-        new ReaderTask() {
-            @Override protected void onPostExecute(WaveFormInfo waveFormInfo) {
-                mWaveFormThumbView.setWave(waveFormInfo); // Must be first.
-                mWaveFormView.setWave(waveFormInfo);
+        mWaveFormView.setWaveAsync(new WaveFormCache.Loader() {
+            @Override public WaveFormInfo load() throws IOException {
+                InputStream inputStream = getResources().openRawResource(R.raw.waveform);
+                try {
+                    return WaveFormReader.read(inputStream);
+                } finally {
+                    inputStream.close();
+                }
+            }
+        }, mWaveFormThumbView, new WaveFormLoadListener() {
+            @Override public void onWaveLoaded(WaveFormInfo info) {
             }
-        }.execute();
-    }
-
-    public class ReaderTask extends AsyncTask<Void, Void, WaveFormInfo> {
 
-        @Override protected WaveFormInfo doInBackground(Void... params) {
-            InputStream inputStream = null;
-            try {
-                inputStream = getResources().openRawResource(R.raw.waveform);
-                byte[] data = new byte[inputStream.available()];
-                inputStream.read(data);
-                return JSON.parseObject(data, WaveFormInfo.class);
-            } catch (Exception e) {
+            @Override public void onWaveLoadFailed(IOException e) {
                 e.printStackTrace();
-            } finally {
-                try {
-                    if (inputStream != null) {
-                        inputStream.close();
-                    }
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
             }
-            return null;
-        }
+        });
     }
 }
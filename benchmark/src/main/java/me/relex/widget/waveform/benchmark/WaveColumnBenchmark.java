@@ -0,0 +1,90 @@
+package me.relex.widget.waveform.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import me.relex.widget.waveform.WaveCanvas;
+import me.relex.widget.waveform.WaveColumnRenderer;
+import me.relex.widget.waveform.WaveFormInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 一帧的列计算: 遍历可见范围的峰值, 合并到列并映射到纵坐标, 与 WaveFormView.onDraw 中直接绘制的路径相同
+ *
+ * 每次调用为一帧, 结果单位 ns/帧; 配合 -prof gc 的 gc.alloc.rate.norm 为每帧分配字节数, 应为 0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WaveColumnBenchmark {
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 400;
+
+    // 1 分钟, 1 小时, 10 小时
+    @Param({ "60", "3600", "36000" })
+    public int seconds;
+
+    @Param({ "8", "16" })
+    public int bits;
+
+    // fit: 整个文件缩放到一屏; 1: 原始比例; 4: 放大
+    @Param({ "fit", "1", "4" })
+    public String zoom;
+
+    private WaveFormInfo mInfo;
+    private final WaveColumnRenderer mRenderer = new WaveColumnRenderer();
+    private final BlackholeCanvas mCanvas = new BlackholeCanvas();
+    private float mScale;
+    private double mStartX;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mInfo = WaveDataSets.create(seconds, bits);
+        mScale = "fit".equals(zoom) ? (float) WIDTH / mInfo.getLength() : Float.parseFloat(zoom);
+        // 从中间开始显示, fit 时从头开始
+        mStartX = Math.max(0, mInfo.getLength() * (double) mScale / 2 - WIDTH);
+
+        // 降采样层级在第一次使用时生成, 不计入每帧耗时
+        mRenderer.addWave(mInfo, mScale, mStartX, WIDTH, HEIGHT);
+    }
+
+    @Benchmark
+    public int frame(Blackhole blackhole) {
+        mCanvas.blackhole = blackhole;
+        mRenderer.addWave(mInfo, mScale, mStartX, WIDTH, HEIGHT);
+        mRenderer.draw(mCanvas);
+        return mRenderer.getCount();
+    }
+
+    @Benchmark
+    public int peakToY() {
+        int sum = 0;
+        for (int peak = -32768; peak < 32768; peak += 64) {
+            sum += WaveColumnRenderer.peakToY(peak, false, HEIGHT);
+        }
+        return sum;
+    }
+
+    private static final class BlackholeCanvas implements WaveCanvas {
+        Blackhole blackhole;
+
+        @Override public void drawLines(float[] lines, int offset, int count) {
+            blackhole.consume(lines);
+            blackhole.consume(count);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package me.relex.widget.waveform.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import me.relex.widget.waveform.WaveFormInfo;
+
+/**
+ * 合成的波形数据, 参数与 audiowaveform 默认输出一致 (44.1kHz, 每像素 256 个采样)
+ */
+final class WaveDataSets {
+
+    static final int SAMPLE_RATE = 44100;
+    static final int SAMPLES_PER_PIXEL = 256;
+
+    private WaveDataSets() {
+    }
+
+    // seconds 秒的单声道波形, 幅度随时间缓慢起伏, 叠加固定种子的噪声
+    static WaveFormInfo create(int seconds, int bits) {
+        return create(seconds, bits, 0);
+    }
+
+    // 同上, 但每 pauseSeconds 秒中有约 1/20 的时间几乎无声, 模拟对白之间的停顿
+    static WaveFormInfo createWithPauses(int seconds, int bits, int pauseSeconds) {
+        return create(seconds, bits, pauseSeconds);
+    }
+
+    private static WaveFormInfo create(int seconds, int bits, int pauseSeconds) {
+        int length = (int) ((long) seconds * SAMPLE_RATE / SAMPLES_PER_PIXEL);
+        int range = bits == 8 ? 127 : 32767;
+        long seed = 42;
+        int pausePeriod = (int) ((long) pauseSeconds * SAMPLE_RATE / SAMPLES_PER_PIXEL);
+
+        WaveFormInfo info = new WaveFormInfo();
+        info.setSample_rate(SAMPLE_RATE);
+        info.setSamples_per_pixel(SAMPLES_PER_PIXEL);
+        info.setBits(bits);
+
+        byte[] bytePeaks = bits == 8 ? new byte[length * 2] : null;
+        short[] shortPeaks = bits == 8 ? null : new short[length * 2];
+        for (int i = 0; i < length; i++) {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            double envelope = 0.5 + 0.4 * Math.sin(i / 2000.0);
+            if (pausePeriod > 0 && i % pausePeriod < pausePeriod / 20) {
+                envelope = 0.005;
+            }
+            double noise = ((seed >>> 33) & 0xffff) / 65536.0;
+            int max = (int) (range * envelope * (0.5 + 0.5 * noise));
+            int min = -(int) (range * envelope * (0.5 + 0.5 * (1 - noise)));
+            if (bytePeaks != null) {
+                bytePeaks[i * 2] = (byte) min;
+                bytePeaks[i * 2 + 1] = (byte) max;
+            } else {
+                shortPeaks[i * 2] = (short) min;
+                shortPeaks[i * 2 + 1] = (short) max;
+            }
+        }
+        if (bytePeaks != null) {
+            info.setPeaks(bytePeaks);
+        } else {
+            info.setPeaks(shortPeaks);
+        }
+        return info;
+    }
+
+    // demo 之前使用的 JSON 数据 (audiowaveform -b 8 输出)
+    static String demoJson() throws IOException {
+        InputStream inputStream = WaveDataSets.class.getResourceAsStream("/waveform.json");
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) > 0) {
+                outputStream.write(buffer, 0, read);
+            }
+            return outputStream.toString("UTF-8");
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    // 与 audiowaveform JSON 输出相同的字段, 用于和合成数据对比
+    static String toJson(WaveFormInfo info) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"sample_rate\":").append(info.getSample_rate())
+                .append(",\"samples_per_pixel\":").append(info.getSamples_per_pixel())
+                .append(",\"bits\":").append(info.getBits())
+                .append(",\"length\":").append(info.getLength())
+                .append(",\"data\":[");
+        for (int i = 0; i < info.getLength(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(info.getMin(i)).append(',').append(info.getMax(i));
+        }
+        return json.append("]}").toString();
+    }
+}
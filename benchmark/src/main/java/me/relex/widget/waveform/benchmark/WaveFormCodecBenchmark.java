@@ -0,0 +1,80 @@
+package me.relex.widget.waveform.benchmark;
+
+import com.alibaba.fastjson.JSON;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import me.relex.widget.waveform.EncodedWaveFormInfo;
+import me.relex.widget.waveform.WaveColumnRenderer;
+import me.relex.widget.waveform.WaveFormCodec;
+import me.relex.widget.waveform.WaveFormInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 加载峰值的耗时: 解析 JSON (demo 原来的方式), 流式解码 {@link WaveFormCodec},
+ * 以及只解码一屏可见范围 ({@link EncodedWaveFormInfo})
+ *
+ * 大小对比见 {@link WaveFormCodecSizes}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WaveFormCodecBenchmark {
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 400;
+
+    // demo: demo 中的 JSON; 其余为合成数据的秒数
+    @Param({ "demo", "3600" })
+    public String dataset;
+
+    private String mJson;
+    private byte[] mEncoded;
+    private double mWindowStartX;
+    private final WaveColumnRenderer mRenderer = new WaveColumnRenderer();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if ("demo".equals(dataset)) {
+            mJson = WaveDataSets.demoJson();
+        } else {
+            mJson = WaveDataSets.toJson(WaveDataSets.create(Integer.parseInt(dataset), 8));
+        }
+        WaveFormInfo info = JSON.parseObject(mJson, WaveFormInfo.class);
+        mEncoded = WaveFormCodec.encode(info);
+        mWindowStartX = Math.max(0, info.getLength() / 2 - WIDTH);
+    }
+
+    @Benchmark
+    public WaveFormInfo parseJson() {
+        return JSON.parseObject(mJson, WaveFormInfo.class);
+    }
+
+    @Benchmark
+    public WaveFormInfo decode() throws IOException {
+        return WaveFormCodec.decode(new ByteArrayInputStream(mEncoded));
+    }
+
+    // 打开编码数据并计算一屏 (原始比例), 只解码可见范围所在的块
+    @Benchmark
+    public int decodeWindow() throws IOException {
+        WaveFormInfo info = new EncodedWaveFormInfo(ByteBuffer.wrap(mEncoded));
+        mRenderer.addWave(info, 0, 1f, mWindowStartX, WIDTH, HEIGHT);
+        return mRenderer.getCount();
+    }
+}
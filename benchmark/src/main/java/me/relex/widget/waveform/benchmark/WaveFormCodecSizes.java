@@ -0,0 +1,43 @@
+package me.relex.widget.waveform.benchmark;
+
+import com.alibaba.fastjson.JSON;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+import me.relex.widget.waveform.WaveFormCodec;
+import me.relex.widget.waveform.WaveFormInfo;
+
+/**
+ * 打印各数据集 JSON、原始 .dat 数据和 {@link WaveFormCodec} 编码后的大小, 以及 gzip 后的大小
+ */
+public class WaveFormCodecSizes {
+
+    public static void main(String[] args) throws IOException {
+        System.out.printf("%-12s %12s %12s %12s %12s %12s%n", "dataset", "json", "json.gz",
+                "raw", "encoded", "encoded.gz");
+        print("demo", WaveDataSets.demoJson());
+        for (int seconds : new int[] { 60, 3600 }) {
+            for (int bits : new int[] { 8, 16 }) {
+                WaveFormInfo info = WaveDataSets.create(seconds, bits);
+                print(seconds + "s/" + bits, WaveDataSets.toJson(info));
+            }
+        }
+    }
+
+    private static void print(String name, String json) throws IOException {
+        WaveFormInfo info = JSON.parseObject(json, WaveFormInfo.class);
+        byte[] jsonBytes = json.getBytes("UTF-8");
+        byte[] encoded = WaveFormCodec.encode(info);
+        int raw = info.getLength() * info.getChannels() * 2 * (info.getBits() == 8 ? 1 : 2);
+        System.out.printf("%-12s %12d %12d %12d %12d %12d%n", name, jsonBytes.length,
+                gzipSize(jsonBytes), raw, encoded.length, gzipSize(encoded));
+    }
+
+    private static int gzipSize(byte[] data) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(outputStream);
+        gzip.write(data);
+        gzip.close();
+        return outputStream.size();
+    }
+}
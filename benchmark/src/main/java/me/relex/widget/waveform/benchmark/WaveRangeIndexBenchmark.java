@@ -0,0 +1,75 @@
+package me.relex.widget.waveform.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import me.relex.widget.waveform.WaveFormInfo;
+import me.relex.widget.waveform.WaveRangeIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 选区统计: 线性扫描与 {@link WaveRangeIndex} 查询对比, 选区为中间一半的数据
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WaveRangeIndexBenchmark {
+
+    @Param({ "60", "3600", "36000" })
+    public int seconds;
+
+    private WaveFormInfo mInfo;
+    private WaveRangeIndex mIndex;
+    private int mFrom;
+    private int mTo;
+    private int mThreshold;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mInfo = WaveDataSets.create(seconds, 16);
+        mIndex = WaveRangeIndex.build(mInfo);
+        mFrom = mInfo.getLength() / 4 + 3;
+        mTo = mInfo.getLength() * 3 / 4 - 5;
+        mThreshold = mIndex.getPeak(mFrom, mTo);
+    }
+
+    @Benchmark
+    public WaveRangeIndex build() {
+        return WaveRangeIndex.build(mInfo);
+    }
+
+    @Benchmark
+    public long scanRange() {
+        int peak = 0;
+        long sum = 0;
+        for (int i = mFrom; i < mTo; i++) {
+            int amplitude = Math.max(-mInfo.getMin(0, i), mInfo.getMax(0, i));
+            peak = Math.max(peak, amplitude);
+            sum += amplitude;
+        }
+        return peak + sum;
+    }
+
+    @Benchmark
+    public long queryRange() {
+        return mIndex.getPeak(mFrom, mTo) + mIndex.getSum(mFrom, mTo);
+    }
+
+    // 选区中最响的点作为阈值, 查找需要跳过大部分数据
+    @Benchmark
+    public int nextAbove() {
+        return mIndex.nextAbove(mFrom, mThreshold);
+    }
+}
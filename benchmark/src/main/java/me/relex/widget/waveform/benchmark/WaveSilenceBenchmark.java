@@ -0,0 +1,103 @@
+package me.relex.widget.waveform.benchmark;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import me.relex.widget.waveform.WaveFormInfo;
+import me.relex.widget.waveform.WaveSilenceDetector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 静音检测: 单线程与多线程, 首次检测 (含振幅计算) 与改变阈值后的重新扫描对比
+ *
+ * 数据每 30 秒有 1.5 秒停顿, threads 为 0 时在当前线程执行
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WaveSilenceBenchmark {
+
+    @Param({ "3600", "36000" })
+    public int seconds;
+
+    @Param({ "0", "4" })
+    public int threads;
+
+    private WaveFormInfo mInfo;
+    private ExecutorService mExecutor;
+    private WaveSilenceDetector mDetector;
+    private boolean mToggle;
+
+    @Setup(Level.Trial)
+    public void setUp() throws InterruptedException {
+        mInfo = WaveDataSets.createWithPauses(seconds, 16, 30);
+        mExecutor = threads > 0 ? Executors.newFixedThreadPool(threads) : null;
+        mDetector = new WaveSilenceDetector(mInfo);
+        mDetector.detect(0.02f, 0.5, mExecutor);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (mExecutor != null) {
+            mExecutor.shutdown();
+        }
+    }
+
+    @Benchmark
+    public WaveSilenceDetector.Result firstDetect() throws InterruptedException {
+        return new WaveSilenceDetector(mInfo).detect(0.02f, 0.5, mExecutor);
+    }
+
+    // 两个阈值交替, 每次都需要重新扫描
+    @Benchmark
+    public WaveSilenceDetector.Result changeThreshold() throws InterruptedException {
+        mToggle = !mToggle;
+        return mDetector.detect(mToggle ? 0.02f : 0.03f, 0.5, mExecutor);
+    }
+
+    // 阈值不变, 只按最短时长重新过滤
+    @Benchmark
+    public WaveSilenceDetector.Result changeMinDuration() throws InterruptedException {
+        mToggle = !mToggle;
+        return mDetector.detect(0.02f, mToggle ? 0.5 : 1.0, mExecutor);
+    }
+
+    // 不使用块统计的逐点扫描, 作为对照
+    @Benchmark
+    public int linearScan() {
+        int level = (int) Math.ceil(0.02f * 32768);
+        int count = 0;
+        int runStart = -1;
+        int minPixels = (int) Math.ceil(0.5 * mInfo.getSample_rate()
+                / mInfo.getSamples_per_pixel());
+        for (int i = 0; i < mInfo.getLength(); i++) {
+            int amplitude = Math.max(-mInfo.getMin(0, i), mInfo.getMax(0, i));
+            if (amplitude < level) {
+                if (runStart < 0) {
+                    runStart = i;
+                }
+            } else if (runStart >= 0) {
+                if (i - runStart >= minPixels) {
+                    count++;
+                }
+                runStart = -1;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,62 @@
+package me.relex.widget.waveform.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import me.relex.widget.waveform.WaveTimeLabels;
+import me.relex.widget.waveform.WaveUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * WaveUtil 中每帧都会调用的换算, 以及时间刻度的计算和格式化
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WaveUtilBenchmark {
+
+    public double seconds = 1234.5;
+    public float pixels = 1080f;
+    public float scale = 0.75f;
+    public int labelSecond = 3725;
+
+    private final char[] mLabelChars = new char[WaveTimeLabels.MAX_LENGTH];
+
+    @Benchmark
+    public int secondsToPixels() {
+        return WaveUtil.secondsToPixels(seconds, WaveDataSets.SAMPLE_RATE,
+                WaveDataSets.SAMPLES_PER_PIXEL, scale);
+    }
+
+    @Benchmark
+    public double pixelsToSeconds() {
+        return WaveUtil.pixelsToSeconds(pixels, WaveDataSets.SAMPLE_RATE,
+                WaveDataSets.SAMPLES_PER_PIXEL, scale);
+    }
+
+    @Benchmark
+    public int roundUpToNearest() {
+        return WaveUtil.roundUpToNearest(seconds, 30);
+    }
+
+    @Benchmark
+    public int timeLabelInterval() {
+        return WaveTimeLabels.intervalSeconds(WaveDataSets.SAMPLE_RATE,
+                WaveDataSets.SAMPLES_PER_PIXEL, scale, 72);
+    }
+
+    @Benchmark
+    public char[] formatTimeLabel() {
+        WaveTimeLabels.format(labelSecond, WaveTimeLabels.FORMAT_HOURS, mLabelChars);
+        return mLabelChars;
+    }
+}
@@ -0,0 +1,91 @@
+package me.relex.widget.waveform.renderer;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import me.relex.widget.waveform.WaveFormInfo;
+import me.relex.widget.waveform.WaveFormReader;
+
+/**
+ * 批量把 .dat 文件渲染成图片, 分配到固定数量的线程上
+ *
+ * 每个线程复用 {@link WaveImageRenderer} 中自己的位图, 线程数即同时占用的位图数。
+ */
+public class WaveImageBatch {
+
+    private final WaveImageRenderer mRenderer;
+    private final ThreadPoolExecutor mExecutor;
+
+    public WaveImageBatch(WaveImageRenderer renderer) {
+        this(renderer, Runtime.getRuntime().availableProcessors());
+    }
+
+    public WaveImageBatch(WaveImageRenderer renderer, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException();
+        }
+        mRenderer = renderer;
+        mExecutor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "WaveImage #" + mCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    // 渲染 input 写入 output, Future 返回 output; 读取或写入失败时 get() 抛出 ExecutionException
+    public Future<File> submit(final File input, final File output, final int format) {
+        return mExecutor.submit(new Callable<File>() {
+            @Override public File call() throws IOException {
+                WaveFormInfo info = WaveFormReader.read(input);
+                OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(output));
+                try {
+                    mRenderer.render(info, format, outputStream);
+                } finally {
+                    outputStream.close();
+                }
+                return output;
+            }
+        });
+    }
+
+    // 输出到 outputDir, 文件名为输入文件名去掉扩展名后加 .png 或 .svg, 结果与 inputs 顺序一致
+    public List<Future<File>> submitAll(List<File> inputs, File outputDir, int format) {
+        String extension = format == WaveImageRenderer.FORMAT_SVG ? ".svg" : ".png";
+        List<Future<File>> futures = new ArrayList<>(inputs.size());
+        for (File input : inputs) {
+            String name = input.getName();
+            int dot = name.lastIndexOf('.');
+            if (dot > 0) {
+                name = name.substring(0, dot);
+            }
+            futures.add(submit(input, new File(outputDir, name + extension), format));
+        }
+        return futures;
+    }
+
+    // 不再接受新任务, 已提交的继续执行
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return mExecutor.awaitTermination(timeout, unit);
+    }
+}
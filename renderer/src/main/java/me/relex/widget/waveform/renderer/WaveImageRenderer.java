@@ -0,0 +1,222 @@
+package me.relex.widget.waveform.renderer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import javax.imageio.ImageIO;
+import me.relex.widget.waveform.WaveCanvas;
+import me.relex.widget.waveform.WaveColumnRenderer;
+import me.relex.widget.waveform.WaveFormInfo;
+import me.relex.widget.waveform.WaveFormViewport;
+
+/**
+ * 不依赖 Android 的波形图片渲染, 输出 PNG 或 SVG
+ *
+ * 与 WaveFormThumbView 一样把整个波形铺满宽度, 列的计算和线宽规则与设备上相同。
+ * 配置在渲染前设置, 之后可以被多个线程同时使用; 每个线程复用自己的位图和缓冲区。
+ */
+public class WaveImageRenderer {
+
+    public static final int FORMAT_PNG = 0;
+    public static final int FORMAT_SVG = 1;
+
+    private final int mWidth;
+    private final int mHeight;
+    private int mWaveColor = 0xff000000;
+    private int mBackgroundColor = 0;
+
+    private final ThreadLocal<Worker> mWorkers = new ThreadLocal<Worker>() {
+        @Override protected Worker initialValue() {
+            return new Worker(mWidth, mHeight);
+        }
+    };
+
+    public WaveImageRenderer(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException();
+        }
+        mWidth = width;
+        mHeight = height;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    // ARGB, 与 android.graphics.Color 相同
+    public void setWaveColor(int waveColor) {
+        mWaveColor = waveColor;
+    }
+
+    // ARGB, 默认透明
+    public void setBackgroundColor(int backgroundColor) {
+        mBackgroundColor = backgroundColor;
+    }
+
+    public void render(WaveFormInfo info, int format, OutputStream outputStream)
+            throws IOException {
+        Worker worker = mWorkers.get();
+        if (format == FORMAT_PNG) {
+            BufferedImage image = worker.rasterize(info, mWaveColor, mBackgroundColor);
+            if (!ImageIO.write(image, "png", outputStream)) {
+                throw new IOException("No PNG writer");
+            }
+        } else if (format == FORMAT_SVG) {
+            Writer writer = new OutputStreamWriter(outputStream, "UTF-8");
+            writer.append(worker.toSvg(info, mWaveColor, mBackgroundColor));
+            writer.flush();
+        } else {
+            throw new IllegalArgumentException("Unsupported format: " + format);
+        }
+    }
+
+    /**
+     * 渲染到当前线程复用的位图, 下次在同一线程渲染前有效
+     */
+    public BufferedImage renderImage(WaveFormInfo info) {
+        return mWorkers.get().rasterize(info, mWaveColor, mBackgroundColor);
+    }
+
+    // 每个线程一份, 尺寸固定, 渲染之间复用
+    private static final class Worker {
+        private final WaveFormViewport mViewport = new WaveFormViewport();
+        private final WaveColumnRenderer mColumns = new WaveColumnRenderer();
+        private final BufferedImage mImage;
+        private final int[] mPixels;
+        private final int mHeight;
+        private final RasterCanvas mRasterCanvas = new RasterCanvas();
+        private final SvgCanvas mSvgCanvas = new SvgCanvas();
+        private final StringBuilder mSvg = new StringBuilder();
+
+        Worker(int width, int height) {
+            mImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            mPixels = ((DataBufferInt) mImage.getRaster().getDataBuffer()).getData();
+            mHeight = height;
+            mViewport.setWidth(width);
+            mColumns.begin(width);
+        }
+
+        // 与设备上相同: 整个波形铺满宽度, 线宽为 ceil(scale)
+        private int layout(WaveFormInfo info) {
+            mViewport.setWave(info);
+            mViewport.setScale(mViewport.getMinScale());
+            return (int) Math.ceil(mViewport.getScale());
+        }
+
+        BufferedImage rasterize(WaveFormInfo info, int waveColor, int backgroundColor) {
+            Arrays.fill(mPixels, backgroundColor);
+            mRasterCanvas.color = waveColor;
+            mRasterCanvas.strokeWidth = layout(info);
+            mViewport.draw(mColumns, mHeight, mRasterCanvas);
+            mViewport.setWave(null);
+            return mImage;
+        }
+
+        CharSequence toSvg(WaveFormInfo info, int waveColor, int backgroundColor) {
+            int strokeWidth = layout(info);
+            int width = mViewport.getWidth();
+            StringBuilder svg = mSvg;
+            svg.setLength(0);
+            svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(width)
+                    .append("\" height=\"").append(mHeight)
+                    .append("\" viewBox=\"0 0 ").append(width).append(' ').append(mHeight)
+                    .append("\" shape-rendering=\"crispEdges\">\n");
+            if ((backgroundColor >>> 24) != 0) {
+                svg.append("<rect width=\"100%\" height=\"100%\"");
+                appendColor(svg, "fill", backgroundColor);
+                svg.append("/>\n");
+            }
+            svg.append("<path fill=\"none\" stroke-width=\"").append(strokeWidth).append('"');
+            appendColor(svg, "stroke", waveColor);
+            svg.append(" d=\"");
+            mSvgCanvas.out = svg;
+            mSvgCanvas.offset = strokeWidth % 2 == 1 ? 0.5f : 0f;
+            mViewport.draw(mColumns, mHeight, mSvgCanvas);
+            mSvgCanvas.out = null;
+            mViewport.setWave(null);
+            svg.append("\"/>\n</svg>\n");
+            return svg;
+        }
+
+        private static void appendColor(StringBuilder svg, String name, int color) {
+            svg.append(' ').append(name).append("=\"#");
+            String rgb = Integer.toHexString(color & 0xffffff);
+            for (int i = rgb.length(); i < 6; i++) {
+                svg.append('0');
+            }
+            svg.append(rgb).append('"');
+            int alpha = color >>> 24;
+            if (alpha != 0xff) {
+                svg.append(' ').append(name).append("-opacity=\"")
+                        .append(Math.round(alpha / 255f * 1000) / 1000f).append('"');
+            }
+        }
+
+        // 竖线直接写入像素, 规则同 Skia 非抗锯齿的 BUTT 线: 以 x 为中心宽 strokeWidth, 纵向 [top, bottom)
+        // 不透明颜色直接覆盖, 半透明颜色按 src-over 与背景混合, 与 Paint 默认的混合模式相同
+        private final class RasterCanvas implements WaveCanvas {
+            int color;
+            int strokeWidth;
+
+            @Override public void drawLines(float[] lines, int offset, int count) {
+                int alpha = color >>> 24;
+                if (alpha == 0) {
+                    return;
+                }
+                boolean opaque = alpha == 0xff;
+                int width = mImage.getWidth();
+                int[] pixels = mPixels;
+                for (int i = offset; i < offset + count; i += 4) {
+                    int left = (int) Math.floor(lines[i] - strokeWidth / 2f + 0.5f);
+                    int right = Math.min(left + strokeWidth, width);
+                    left = Math.max(left, 0);
+                    int top = Math.max(Math.round(Math.min(lines[i + 1], lines[i + 3])), 0);
+                    int bottom =
+                            Math.min(Math.round(Math.max(lines[i + 1], lines[i + 3])), mHeight);
+                    for (int y = top; y < bottom; y++) {
+                        int row = y * width;
+                        for (int x = left; x < right; x++) {
+                            pixels[row + x] =
+                                    opaque ? color : blend(color, alpha, pixels[row + x]);
+                        }
+                    }
+                }
+            }
+
+            // 非预乘 ARGB 的 src-over: outA = sa + da * (1 - sa), outC = (sc * sa + dc * da * (1 - sa)) / outA
+            private int blend(int src, int srcAlpha, int dst) {
+                int dstAlpha = ((dst >>> 24) * (0xff - srcAlpha) + 127) / 0xff;
+                int outAlpha = srcAlpha + dstAlpha;
+                int half = outAlpha >> 1;
+                int r = (((src >> 16) & 0xff) * srcAlpha + ((dst >> 16) & 0xff) * dstAlpha + half)
+                        / outAlpha;
+                int g = (((src >> 8) & 0xff) * srcAlpha + ((dst >> 8) & 0xff) * dstAlpha + half)
+                        / outAlpha;
+                int b = ((src & 0xff) * srcAlpha + (dst & 0xff) * dstAlpha + half) / outAlpha;
+                return outAlpha << 24 | r << 16 | g << 8 | b;
+            }
+        }
+
+        // 每列一段 "Mx y1Vy2", 与 RENDER_MODE_PATH 相同; 奇数线宽时右移半像素, 与位图覆盖相同的列
+        private static final class SvgCanvas implements WaveCanvas {
+            StringBuilder out;
+            float offset;
+
+            @Override public void drawLines(float[] lines, int offset, int count) {
+                for (int i = offset; i < offset + count; i += 4) {
+                    out.append('M').append(lines[i] + this.offset).append(' ')
+                            .append((int) lines[i + 1])
+                            .append('V').append((int) lines[i + 3]);
+                }
+            }
+        }
+    }
+}